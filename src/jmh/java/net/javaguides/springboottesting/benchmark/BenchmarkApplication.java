@@ -0,0 +1,50 @@
+package net.javaguides.springboottesting.benchmark;
+
+import net.javaguides.springboottesting.SpringBootTestingApplication;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// boots the application against its own embedded H2 database and seeds the employees table
+final class BenchmarkApplication {
+
+    private static final int SEED_CHUNK_SIZE = 1000;
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(int tableSize, String... properties) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringBootTestingApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties("spring.jpa.show-sql=false", "logging.level.root=WARN")
+                .properties(properties)
+                .run();
+
+        EmployeeService employeeService = context.getBean(EmployeeService.class);
+        List<Employee> chunk = new ArrayList<>(SEED_CHUNK_SIZE);
+        for (int i = 1; i <= tableSize; i++) {
+            chunk.add(employee(i));
+            if (chunk.size() == SEED_CHUNK_SIZE || i == tableSize) {
+                employeeService.saveEmployees(chunk);
+                chunk = new ArrayList<>(SEED_CHUNK_SIZE);
+            }
+        }
+        return context;
+    }
+
+    // first and last names are unique per row so the single-result name queries never see duplicates
+    static Employee employee(long n) {
+        return Employee.builder()
+                .firstName("First" + n)
+                .lastName("Last" + n)
+                .email("employee" + n + "@benchmark.net")
+                .build();
+    }
+
+}
@@ -0,0 +1,67 @@
+package net.javaguides.springboottesting.benchmark;
+
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// JPQL vs native SQL for the first/last name lookups
+// mvn -Pbenchmark test-compile exec:exec -Djmh.args="EmployeeQueryBenchmark -prof gc"
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmployeeQueryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int tableSize;
+
+    private ConfigurableApplicationContext context;
+
+    private EmployeeRepository employeeRepository;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkApplication.start(tableSize);
+        employeeRepository = context.getBean(EmployeeRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Employee findByJPQLIndexParams() {
+        long n = randomEmployee();
+        return employeeRepository.findByJPQLIndexParams("First" + n, "Last" + n);
+    }
+
+    @Benchmark
+    public Employee findByJPQLNamedParams() {
+        long n = randomEmployee();
+        return employeeRepository.findByJPQLNamedParams("First" + n, "Last" + n);
+    }
+
+    @Benchmark
+    public Employee findByNativeSqlIndexParams() {
+        long n = randomEmployee();
+        return employeeRepository.findByNativeSqlIndexParams("First" + n, "Last" + n);
+    }
+
+    @Benchmark
+    public Employee findByNativeSqlNamedParams() {
+        long n = randomEmployee();
+        return employeeRepository.findByNativeSqlNamedParams("First" + n, "Last" + n);
+    }
+
+    private long randomEmployee() {
+        return ThreadLocalRandom.current().nextLong(1, tableSize + 1);
+    }
+
+}
@@ -0,0 +1,95 @@
+package net.javaguides.springboottesting.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// the same page and single row read as managed entities and as EmployeeView projections, both
+// serialized to JSON the way the controller does; compare gc.alloc.rate.norm (bytes per request)
+// mvn -Pbenchmark test-compile exec:exec -Djmh.args="EmployeeReadBenchmark -prof gc"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmployeeReadBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"10000"})
+    private int tableSize;
+
+    private ConfigurableApplicationContext context;
+
+    private EmployeeRepository employeeRepository;
+
+    private ObjectMapper objectMapper;
+
+    // read-write like the service methods before they were marked readOnly
+    private TransactionTemplate readWrite;
+
+    private TransactionTemplate readOnly;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkApplication.start(tableSize);
+        employeeRepository = context.getBean(EmployeeRepository.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] pageOfEntities() {
+        long afterId = randomId();
+        return readWrite.execute(status -> json(employeeRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, PAGE_SIZE))));
+    }
+
+    @Benchmark
+    public byte[] pageOfViews() {
+        long afterId = randomId();
+        return readOnly.execute(status -> json(employeeRepository.findViewsByIdGreaterThan(afterId, PageRequest.of(0, PAGE_SIZE))));
+    }
+
+    @Benchmark
+    public byte[] entityById() {
+        long id = randomId();
+        return readWrite.execute(status -> json(employeeRepository.findById(id)));
+    }
+
+    @Benchmark
+    public byte[] viewById() {
+        long id = randomId();
+        return readOnly.execute(status -> json(employeeRepository.findViewById(id)));
+    }
+
+    private byte[] json(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long randomId() {
+        // leave room for a full page after the id
+        return ThreadLocalRandom.current().nextLong(1, tableSize - PAGE_SIZE);
+    }
+
+}
@@ -0,0 +1,92 @@
+package net.javaguides.springboottesting.benchmark;
+
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.search.EmployeeSearchIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// type-ahead queries against the in-memory search index, no Spring context or database involved
+// mvn -Pbenchmark test-compile exec:exec -Djmh.args="EmployeeSearchBenchmark -p indexSize=1000000"
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class EmployeeSearchBenchmark {
+
+    private static final String[] SYLLABLES = {"an", "bru", "car", "da", "el", "fer", "gu", "hel", "is", "jo",
+            "ka", "lu", "ma", "no", "ol", "pe", "ra", "si", "ta", "vi"};
+
+    @Param({"100000", "1000000"})
+    private int indexSize;
+
+    private EmployeeSearchIndex searchIndex;
+
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        searchIndex = new EmployeeSearchIndex(null, null);
+        Random random = new Random(42);
+        names = new String[20000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = name(random);
+        }
+        for (long id = 1; id <= indexSize; id++) {
+            String firstName = names[random.nextInt(2000)];
+            String lastName = names[random.nextInt(names.length)];
+            searchIndex.index(Employee.builder()
+                    .id(id)
+                    .firstName(firstName)
+                    .lastName(lastName)
+                    .email(firstName.toLowerCase() + "." + lastName.toLowerCase() + id + "@example.com")
+                    .version(0L)
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public List<EmployeeView> prefix() {
+        String name = randomName();
+        return searchIndex.search(name.substring(0, Math.min(3, name.length())), 10);
+    }
+
+    @Benchmark
+    public List<EmployeeView> exact() {
+        return searchIndex.search(randomName(), 10);
+    }
+
+    @Benchmark
+    public List<EmployeeView> typo() {
+        String name = randomName();
+        // drop one character, the way a fast typist would
+        int i = ThreadLocalRandom.current().nextInt(name.length());
+        return searchIndex.search(name.substring(0, i) + name.substring(i + 1), 10);
+    }
+
+    @Benchmark
+    public List<EmployeeView> fullName() {
+        return searchIndex.search(names[ThreadLocalRandom.current().nextInt(2000)] + " " + randomName().substring(0, 2), 10);
+    }
+
+    private String randomName() {
+        return names[ThreadLocalRandom.current().nextInt(names.length)];
+    }
+
+    private static String name(Random random) {
+        StringBuilder name = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++) {
+            name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+        return name.toString();
+    }
+
+}
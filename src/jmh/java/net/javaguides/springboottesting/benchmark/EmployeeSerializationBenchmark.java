@@ -0,0 +1,100 @@
+package net.javaguides.springboottesting.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.luben.zstd.ZstdOutputStream;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// one export of 10k employees per operation, written the way EmployeeController streams them and
+// encoded the way ResponseCompressionFilter does; the bytes on the wire are printed after each trial
+// mvn -Pbenchmark test-compile exec:exec -Djmh.args="EmployeeSerializationBenchmark -prof gc"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmployeeSerializationBenchmark {
+
+    private static final int EMPLOYEES = 10_000;
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"identity", "gzip", "zstd"})
+    private String encoding;
+
+    private List<EmployeeView> employees;
+
+    private ObjectWriter writer;
+
+    private final CountingOutputStream wire = new CountingOutputStream();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        employees = new ArrayList<>(EMPLOYEES);
+        for (long id = 1; id <= EMPLOYEES; id++) {
+            String firstName = "First" + random.nextInt(2000);
+            String lastName = "Last" + random.nextInt(20000);
+            employees.add(new EmployeeView(id, firstName, lastName,
+                    firstName.toLowerCase() + "." + lastName.toLowerCase() + id + "@example.com", (long) random.nextInt(5)));
+        }
+
+        JsonFactory factory = "smile".equals(format) ? new SmileFactory() : "cbor".equals(format) ? new CBORFactory() : new JsonFactory();
+        ObjectWriter objectWriter = new ObjectMapper(factory).writerFor(EmployeeView.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        writer = "json".equals(format) ? objectWriter.withRootValueSeparator("\n") : objectWriter;
+    }
+
+    @TearDown(Level.Trial)
+    public void printBytes() {
+        System.out.printf("%n[wire] %s/%s: %d bytes per %d employees%n", format, encoding, wire.lastOperation, EMPLOYEES);
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        wire.count = 0;
+        OutputStream out = "gzip".equals(encoding) ? new GZIPOutputStream(wire, 8192, true)
+                : "zstd".equals(encoding) ? new ZstdOutputStream(wire) : wire;
+        try (SequenceWriter values = writer.writeValues(out)) {
+            for (EmployeeView employee : employees) {
+                values.write(employee);
+            }
+        }
+        wire.lastOperation = wire.count;
+        return wire.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        private long lastOperation;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package net.javaguides.springboottesting.benchmark;
+
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// mvn -Pbenchmark test-compile exec:exec -Djmh.args="EmployeeServiceBenchmark -prof gc"
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmployeeServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int tableSize;
+
+    private ConfigurableApplicationContext context;
+
+    private EmployeeService employeeService;
+
+    private EmployeeRepository employeeRepository;
+
+    private final AtomicLong nextEmployee = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkApplication.start(tableSize);
+        employeeService = context.getBean(EmployeeService.class);
+        employeeRepository = context.getBean(EmployeeRepository.class);
+        nextEmployee.set(tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Employee saveEmployee() {
+        return employeeService.saveEmployee(BenchmarkApplication.employee(nextEmployee.incrementAndGet()));
+    }
+
+    // goes through the employee cache, hot after warmup
+    @Benchmark
+    public Optional<Employee> getEmployeeById() {
+        return employeeService.getEmployeeById(randomId());
+    }
+
+    // the same lookup straight against the database
+    @Benchmark
+    public Optional<Employee> findById() {
+        return employeeRepository.findById(randomId());
+    }
+
+    @Benchmark
+    public List<EmployeeView> getAllEmployees() {
+        return employeeService.getAllEmployees();
+    }
+
+    @Benchmark
+    public List<EmployeeView> getEmployeesAfter() {
+        return employeeService.getEmployeesAfter(randomId(), 100);
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, tableSize + 1);
+    }
+
+}
@@ -0,0 +1,122 @@
+package net.javaguides.springboottesting.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// time from launching the application in a new JVM to its first successful POST /api/employees,
+// for the executable jar as built by default and for the layout of the faststart profile
+// mvn -Pfaststart,benchmark -DskipTests package exec:exec -Djmh.args="StartupBenchmark"
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    private static final Path TARGET = Paths.get(System.getProperty("user.dir"), "target");
+
+    private static final Path FASTSTART = TARGET.resolve("faststart");
+
+    // jar:      spring-boot-maven-plugin executable jar, default properties
+    // thin:     thin jar and lib/ of the faststart profile, default properties
+    // faststart: thin jar with the faststart Spring profile
+    // cds:      as faststart, plus the AppCDS archive recorded at build time
+    @Param({"jar", "thin", "faststart", "cds"})
+    private String variant;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    private Process process;
+
+    private int port;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        if (process != null) {
+            process.destroy();
+            process.waitFor(30, TimeUnit.SECONDS);
+            process = null;
+        }
+    }
+
+    @Benchmark
+    public int firstCreate() throws IOException, InterruptedException {
+        process = new ProcessBuilder(command())
+                .directory(FASTSTART.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/employees"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"firstName\":\"Bruno\",\"lastName\":\"Martins\",\"email\":\"bruno@bruno\"}"))
+                .build();
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException(variant + " exited with " + process.exitValue());
+            }
+            try {
+                int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (status == 201) {
+                    return status;
+                }
+            } catch (ConnectException e) {
+                // not listening yet
+            }
+            Thread.sleep(5);
+        }
+        throw new IllegalStateException(variant + " did not create an employee within 2 minutes");
+    }
+
+    private List<String> command() {
+        Path thinJar = FASTSTART.resolve("spring-boot-testing-0.0.1-SNAPSHOT-faststart.jar");
+        Path archive = FASTSTART.resolve("app.jsa");
+        if (!Files.exists(thinJar) || !Files.exists(archive)) {
+            throw new IllegalStateException("Missing " + FASTSTART + ", run mvn -Pfaststart package first");
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (variant.equals("cds")) {
+            // -Xshare:on fails the launch instead of silently starting without the archive
+            command.add("-XX:SharedArchiveFile=" + archive);
+            command.add("-Xshare:on");
+        }
+        command.add("-jar");
+        command.add(variant.equals("jar")
+                ? TARGET.resolve("spring-boot-testing-0.0.1-SNAPSHOT.jar").toString()
+                : thinJar.toString());
+        command.add("--server.port=" + port);
+        if (variant.equals("faststart") || variant.equals("cds")) {
+            command.add("--spring.profiles.active=faststart");
+        }
+        return command;
+    }
+
+}
@@ -0,0 +1,142 @@
+package net.javaguides.springboottesting.controller;
+
+import net.javaguides.springboottesting.reactive.ReactiveEmployeeServer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Drives the same create/read mix against the blocking and the async execution mode with far
+// more concurrent clients than Tomcat threads, and against the WebFlux + R2DBC routes of
+// ReactiveEmployeeServer. Every request has to succeed, at MIN_THROUGHPUT or better.
+//
+// Three application contexts and 1000 requests each, so it lives with the loadtest profile:
+// mvn -Ploadtest test -Dtest='EmployeeControllerLoadTests*'
+public class EmployeeControllerLoadTests {
+
+    private static final int REQUESTS = 1000;
+
+    private static final int CONCURRENCY = 200;
+
+    // well below what each mode does cold on one core, so only a real regression fails it
+    private static final double MIN_THROUGHPUT = 100;
+
+    @Nested
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+            properties = {"employees.execution.mode=blocking", "server.tomcat.threads.max=20", "spring.jpa.show-sql=false"})
+    public class BlockingMode {
+
+        @LocalServerPort
+        private int port;
+
+        @DisplayName("Load test for the blocking execution mode")
+        @Test
+        public void givenManyConcurrentClients_whenBlockingMode_thenAllRequestsSucceed() throws Exception {
+            runLoad(port, "blocking");
+        }
+    }
+
+    @Nested
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+            properties = {"employees.execution.mode=async", "server.tomcat.threads.max=20", "spring.jpa.show-sql=false"})
+    public class AsyncMode {
+
+        @LocalServerPort
+        private int port;
+
+        @DisplayName("Load test for the async execution mode")
+        @Test
+        public void givenManyConcurrentClients_whenAsyncMode_thenAllRequestsSucceed() throws Exception {
+            runLoad(port, "async");
+        }
+    }
+
+    @Nested
+    @SpringBootTest(properties = {"employees.reactive.enabled=true", "employees.reactive.port=0", "spring.jpa.show-sql=false"})
+    public class ReactiveStack {
+
+        @Autowired
+        private ReactiveEmployeeServer server;
+
+        @DisplayName("Load test for the reactive stack")
+        @Test
+        public void givenManyConcurrentClients_whenReactiveStack_thenAllRequestsSucceed() throws Exception {
+            runLoad(server.getPort(), "reactive");
+        }
+    }
+
+    private static void runLoad(int port, String mode) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String baseUrl = "http://localhost:" + port + "/api/employees";
+
+        // warm up and create something to read
+        for (int i = 0; i < 50; i++) {
+            send(client, create(baseUrl, mode + "-warmup-" + i)).join();
+        }
+
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Integer> failures = new ConcurrentLinkedQueue<>();
+        List<CompletableFuture<?>> futures = new ArrayList<>(REQUESTS);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            HttpRequest request = i % 4 == 0
+                    ? create(baseUrl, mode + "-" + i)
+                    : HttpRequest.newBuilder(URI.create(baseUrl + "/" + (1 + i % 50))).GET().build();
+
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            futures.add(send(client, request).whenComplete((response, error) -> {
+                inFlight.release();
+                latencies.add(System.nanoTime() - sent);
+                if (error != null || response.statusCode() >= 300) {
+                    failures.add(error != null ? -1 : response.statusCode());
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        long elapsed = System.nanoTime() - start;
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        double throughput = REQUESTS / (elapsed / 1e9);
+        String summary = String.format("%s: %d requests, %.0f req/s, p50 %.1f ms, p99 %.1f ms",
+                mode,
+                REQUESTS,
+                throughput,
+                sorted[sorted.length / 2] / 1e6,
+                sorted[(int) (sorted.length * 0.99)] / 1e6);
+
+        assertThat(failures).as(summary).isEmpty();
+        assertThat(throughput).as(summary).isGreaterThanOrEqualTo(MIN_THROUGHPUT);
+    }
+
+    private static HttpRequest create(String baseUrl, String name) {
+        String body = "{\"firstName\":\"" + name + "\",\"lastName\":\"Load\",\"email\":\"" + name + "@load\"}";
+        return HttpRequest.newBuilder(URI.create(baseUrl))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static CompletableFuture<HttpResponse<String>> send(HttpClient client, HttpRequest request) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+}
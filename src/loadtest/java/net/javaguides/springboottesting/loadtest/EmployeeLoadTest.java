@@ -0,0 +1,261 @@
+package net.javaguides.springboottesting.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import net.javaguides.springboottesting.SpringBootTestingApplication;
+import net.javaguides.springboottesting.dto.EmployeeBatchResult;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+
+// End-to-end load test over HTTP: boots SpringBootTestingApplication on a random port with its own
+// in-memory H2 database, seeds table-size employees, then drives the create/get/list/search mix at
+// a constant arrival rate (see OpenLoopDriver), first for warmup and then measured.
+//
+// Writes report.json next to one .hgrm percentile distribution per operation, and exits with 1 when
+// a gate fails, which fails the Maven build:
+//   mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--loadtest.rate=300 --loadtest.max-p99=250ms"
+//   mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--loadtest.baseline=baseline.json"
+// Arguments outside loadtest.* configure the application, e.g. --employees.execution.mode=async.
+//
+// The client runs in the application's JVM: on a small machine it takes CPU from the server, so
+// compare reports from the same machine only.
+public final class EmployeeLoadTest {
+
+    private static final int SEED_CHUNK_SIZE = 1000;
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private EmployeeLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringBootTestingApplication.class)
+                .logStartupInfo(false)
+                .properties("server.port=0", "spring.jpa.show-sql=false", "logging.level.root=WARN",
+                        // Tomcat warns about the pools still running when it stops ahead of them
+                        "logging.level.org.apache.catalina.loader=ERROR",
+                        "spring.datasource.url=jdbc:h2:mem:loadtest-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1")
+                .run(args);
+        boolean passed;
+        try {
+            LoadTestSettings settings = Binder.get(context.getEnvironment())
+                    .bind("loadtest", LoadTestSettings.class)
+                    .orElseGet(LoadTestSettings::new);
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            List<Long> ids = seed(context.getBean(EmployeeService.class), settings.getTableSize());
+
+            passed = run(settings, "http://localhost:" + port + "/api/employees", ids, args);
+        } finally {
+            SpringApplication.exit(context);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean run(LoadTestSettings settings, String baseUrl, List<Long> ids, String[] args) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        OpenLoopDriver driver = new OpenLoopDriver(client, settings.getMaxInFlight(), settings.getRequestTimeout(),
+                operations(settings, baseUrl, ids), settings.getSeed());
+
+        System.out.printf("[loadtest] warmup: %.0f req/s for %s%n", settings.getRate(), settings.getWarmup());
+        driver.run(settings.getRate(), settings.getWarmup());
+        System.out.printf("[loadtest] measuring: %.0f req/s for %s%n", settings.getRate(), settings.getDuration());
+        OpenLoopDriver.Result result = driver.run(settings.getRate(), settings.getDuration());
+
+        LoadReport report = report(settings, result, args);
+        report.setGates(gates(settings, report));
+        report.setPassed(report.getGates().stream().allMatch(LoadReport.Gate::isPassed));
+        write(settings.getReport(), report, result);
+        print(report);
+        return report.isPassed();
+    }
+
+    // ids of the seeded employees, the reads pick among them
+    private static List<Long> seed(EmployeeService employeeService, int tableSize) {
+        List<Long> ids = new ArrayList<>(tableSize);
+        List<Employee> chunk = new ArrayList<>(SEED_CHUNK_SIZE);
+        for (int i = 1; i <= tableSize; i++) {
+            chunk.add(Employee.builder()
+                    .firstName("First" + i)
+                    .lastName("Last" + i)
+                    .email("employee" + i + "@loadtest.net")
+                    .build());
+            if (chunk.size() == SEED_CHUNK_SIZE || i == tableSize) {
+                employeeService.saveEmployees(chunk).stream()
+                        .map(EmployeeBatchResult::getId)
+                        .forEach(ids::add);
+                chunk = new ArrayList<>(SEED_CHUNK_SIZE);
+            }
+        }
+        return ids;
+    }
+
+    private static List<OpenLoopDriver.Operation> operations(LoadTestSettings settings, String baseUrl, List<Long> ids) {
+        Random random = new Random(settings.getSeed() + 1);
+        Map<String, LongFunction<HttpRequest.Builder>> requests = new LinkedHashMap<>();
+        requests.put("create", sequence -> HttpRequest.newBuilder(URI.create(baseUrl))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"firstName\":\"Load\",\"lastName\":\"Test" + sequence
+                        + "\",\"email\":\"created" + sequence + "@loadtest.net\"}")));
+        requests.put("get", sequence -> HttpRequest.newBuilder(URI.create(baseUrl + "/" + pick(ids, random))));
+        // a page of 20 from anywhere in the table
+        requests.put("list", sequence -> HttpRequest.newBuilder(URI.create(baseUrl + "?limit=20&cursor=" + cursor(pick(ids, random)))));
+        requests.put("search", sequence -> HttpRequest.newBuilder(URI.create(baseUrl + "/search?q=First" + (1 + random.nextInt(100)))));
+
+        List<OpenLoopDriver.Operation> operations = new ArrayList<>();
+        settings.getMix().forEach((name, weight) -> {
+            LongFunction<HttpRequest.Builder> request = requests.get(name);
+            if (request == null) {
+                throw new IllegalArgumentException("Unknown operation " + name + ", known are " + requests.keySet());
+            }
+            if (weight > 0) {
+                operations.add(new OpenLoopDriver.Operation(name, weight, request));
+            }
+        });
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("loadtest.mix leaves no operation");
+        }
+        return operations;
+    }
+
+    private static long pick(List<Long> ids, Random random) {
+        return ids.get(random.nextInt(ids.size()));
+    }
+
+    // as EmployeeController encodes them
+    private static String cursor(long afterId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(afterId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static LoadReport report(LoadTestSettings settings, OpenLoopDriver.Result result, String[] args) {
+        Map<String, LoadReport.Operation> operations = new LinkedHashMap<>();
+        result.operations.forEach((name, stats) -> operations.put(name, LoadReport.Operation.builder()
+                .requests(stats.requests())
+                .succeeded(stats.succeeded.sum())
+                .failures(stats.failures.entrySet().stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sum())))
+                .dropped(stats.dropped.sum())
+                .responseTime(latency(stats.responseTime))
+                .serviceTime(latency(stats.serviceTime))
+                .build()));
+        operations.put("all", LoadReport.Operation.builder()
+                .requests(operations.values().stream().mapToLong(LoadReport.Operation::getRequests).sum())
+                .succeeded(result.succeeded())
+                .failures(operations.values().stream()
+                        .flatMap(operation -> operation.getFailures().entrySet().stream())
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, Long::sum)))
+                .dropped(operations.values().stream().mapToLong(LoadReport.Operation::getDropped).sum())
+                .responseTime(latency(result.all(true)))
+                .serviceTime(latency(result.all(false)))
+                .build());
+
+        return LoadReport.builder()
+                .timestamp(Instant.now().toString())
+                .javaVersion(System.getProperty("java.version"))
+                .availableProcessors(Runtime.getRuntime().availableProcessors())
+                .offeredRate(settings.getRate())
+                .durationSeconds(settings.getDuration().toMillis() / 1000.0)
+                .mix(settings.getMix())
+                .tableSize(settings.getTableSize())
+                .applicationArguments(Arrays.stream(args).filter(arg -> !arg.startsWith("--loadtest.")).collect(Collectors.toList()))
+                .achievedRate(result.succeeded() / result.elapsedSeconds)
+                .operations(operations)
+                .build();
+    }
+
+    private static LoadReport.Latency latency(Histogram histogram) {
+        return LoadReport.Latency.builder()
+                .mean(histogram.getMean() / MICROS_PER_MILLI)
+                .p50(histogram.getValueAtPercentile(50) / MICROS_PER_MILLI)
+                .p90(histogram.getValueAtPercentile(90) / MICROS_PER_MILLI)
+                .p99(histogram.getValueAtPercentile(99) / MICROS_PER_MILLI)
+                .p999(histogram.getValueAtPercentile(99.9) / MICROS_PER_MILLI)
+                .max(histogram.getMaxValue() / MICROS_PER_MILLI)
+                .build();
+    }
+
+    private static List<LoadReport.Gate> gates(LoadTestSettings settings, LoadReport report) throws IOException {
+        LoadReport.Operation all = report.getOperations().get("all");
+        List<LoadReport.Gate> gates = new ArrayList<>();
+        long failed = all.getRequests() - all.getSucceeded();
+        gates.add(atMost("all.errorRate", settings.getMaxErrorRate(), all.getRequests() == 0 ? 1 : (double) failed / all.getRequests()));
+        gates.add(atLeast("all.throughputRatio", settings.getMinThroughputRatio(), report.getAchievedRate() / report.getOfferedRate()));
+        if (settings.getMaxP99() != null) {
+            gates.add(atMost("all.responseTime.p99", settings.getMaxP99().toNanos() / 1e6, all.getResponseTime().getP99()));
+        }
+        if (settings.getBaseline() != null) {
+            LoadReport baseline = new ObjectMapper().readValue(settings.getBaseline().toFile(), LoadReport.class);
+            report.getOperations().forEach((name, operation) -> {
+                LoadReport.Operation before = baseline.getOperations().get(name);
+                if (before != null) {
+                    gates.add(atMost(name + ".responseTime.p99.vsBaseline",
+                            before.getResponseTime().getP99() * (1 + settings.getMaxRegression()),
+                            operation.getResponseTime().getP99()));
+                }
+            });
+        }
+        return gates;
+    }
+
+    private static LoadReport.Gate atMost(String name, double limit, double actual) {
+        return new LoadReport.Gate(name, limit, actual, actual <= limit);
+    }
+
+    private static LoadReport.Gate atLeast(String name, double limit, double actual) {
+        return new LoadReport.Gate(name, limit, actual, actual >= limit);
+    }
+
+    private static void write(Path reportFile, LoadReport report, OpenLoopDriver.Result result) throws IOException {
+        Path directory = reportFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile.toFile(), report);
+
+        // full distributions in milliseconds, for HdrHistogram's plotter
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        result.operations.forEach((name, stats) -> histograms.put(name, stats.responseTime));
+        histograms.put("all", result.all(true));
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(entry.getKey() + ".hgrm")), false, "UTF-8")) {
+                entry.getValue().outputPercentileDistribution(out, MICROS_PER_MILLI);
+            }
+        }
+    }
+
+    private static void print(LoadReport report) {
+        System.out.printf("[loadtest] offered %.0f req/s, achieved %.1f req/s%n", report.getOfferedRate(), report.getAchievedRate());
+        report.getOperations().forEach((name, operation) -> System.out.printf(
+                "[loadtest] %-7s %7d requests, %d failed, %d dropped, response time p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, max %.1f ms (service time p99 %.1f ms)%n",
+                name, operation.getRequests(), operation.getRequests() - operation.getSucceeded() - operation.getDropped(),
+                operation.getDropped(), operation.getResponseTime().getP50(), operation.getResponseTime().getP99(),
+                operation.getResponseTime().getP999(), operation.getResponseTime().getMax(), operation.getServiceTime().getP99()));
+        report.getGates().forEach(gate -> System.out.printf("[loadtest] gate %s: %.3f, limit %.3f -> %s%n",
+                gate.getName(), gate.getActual(), gate.getLimit(), gate.isPassed() ? "passed" : "FAILED"));
+    }
+
+}
@@ -0,0 +1,102 @@
+package net.javaguides.springboottesting.loadtest;
+
+import lombok.*;
+
+import java.util.List;
+import java.util.Map;
+
+// report.json of a load test run; times in milliseconds
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class LoadReport {
+
+    private String timestamp;
+
+    private String javaVersion;
+
+    private int availableProcessors;
+
+    private double offeredRate;
+
+    private double durationSeconds;
+
+    private Map<String, Integer> mix;
+
+    private int tableSize;
+
+    // application arguments the run was started with
+    private List<String> applicationArguments;
+
+    private double achievedRate;
+
+    // per operation, and "all" for the whole mix
+    private Map<String, Operation> operations;
+
+    private List<Gate> gates;
+
+    private boolean passed;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Builder
+    public static class Operation {
+
+        private long requests;
+
+        // sent and answered with 2xx
+        private long succeeded;
+
+        // by status code, "timeout" or "io-error"
+        private Map<String, Long> failures;
+
+        // not sent because max-in-flight requests were outstanding
+        private long dropped;
+
+        // from when the request was due to when it completed, queueing in the client included
+        private Latency responseTime;
+
+        // from when the request was actually sent, what a closed-loop client would have measured
+        private Latency serviceTime;
+    }
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Builder
+    public static class Latency {
+
+        private double mean;
+
+        private double p50;
+
+        private double p90;
+
+        private double p99;
+
+        private double p999;
+
+        private double max;
+    }
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Builder
+    public static class Gate {
+
+        private String name;
+
+        private double limit;
+
+        private double actual;
+
+        private boolean passed;
+    }
+}
@@ -0,0 +1,63 @@
+package net.javaguides.springboottesting.loadtest;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// loadtest.* arguments of EmployeeLoadTest; every other argument goes to the application
+@Getter
+@Setter
+public class LoadTestSettings {
+
+    // requests started per second, whether or not earlier ones have finished
+    private double rate = 200;
+
+    private Duration duration = Duration.ofSeconds(30);
+
+    // the same load before measuring, for the JIT and the pools
+    private Duration warmup = Duration.ofSeconds(10);
+
+    // relative weights of the operations, 0 leaves one out
+    private Map<String, Integer> mix = defaultMix();
+
+    // employees created before the run, the reads pick among them
+    private int tableSize = 10_000;
+
+    // requests beyond this are not sent and count as dropped, so an overloaded run can't exhaust the client
+    private int maxInFlight = 1000;
+
+    private Duration requestTimeout = Duration.ofSeconds(10);
+
+    private long seed = 42;
+
+    private Path report = Paths.get("target", "loadtest", "report.json");
+
+    // gates, a failed one fails the run
+    private double maxErrorRate = 0.001;
+
+    // completed requests per second against the offered rate
+    private double minThroughputRatio = 0.95;
+
+    // p99 response time over all operations, no limit when unset
+    private Duration maxP99;
+
+    // an earlier report.json; each operation's p99 may be at most max-regression worse than in it
+    private Path baseline;
+
+    private double maxRegression = 0.25;
+
+    private static Map<String, Integer> defaultMix() {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        mix.put("create", 1);
+        mix.put("get", 6);
+        mix.put("list", 2);
+        mix.put("search", 1);
+        return mix;
+    }
+
+}
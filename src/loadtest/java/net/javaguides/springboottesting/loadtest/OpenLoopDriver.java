@@ -0,0 +1,177 @@
+package net.javaguides.springboottesting.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+// Open-model load: request i is due at start + i / rate, and goes out then whether or not the
+// earlier ones have come back. A closed loop (send, wait, send) slows down with the server and
+// never measures the requests it didn't get to send while one was stuck, which is coordinated
+// omission. Here the response time of each request is taken from when it was due, so a stall
+// shows up in every request that should have gone out during it.
+//
+// Latencies go into HdrHistograms in microseconds.
+final class OpenLoopDriver {
+
+    static final class Operation {
+
+        final String name;
+
+        final int weight;
+
+        // given the sequence number of the request, unique across runs of a driver;
+        // called on the scheduling thread only
+        final LongFunction<HttpRequest.Builder> request;
+
+        Operation(String name, int weight, LongFunction<HttpRequest.Builder> request) {
+            this.name = name;
+            this.weight = weight;
+            this.request = request;
+        }
+    }
+
+    static final class Stats {
+
+        final ConcurrentHistogram responseTime = new ConcurrentHistogram(3);
+
+        final ConcurrentHistogram serviceTime = new ConcurrentHistogram(3);
+
+        final LongAdder succeeded = new LongAdder();
+
+        final LongAdder dropped = new LongAdder();
+
+        final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+        void record(long dueNanos, long sentNanos, long doneNanos, HttpResponse<?> response, Throwable error) {
+            responseTime.recordValue(TimeUnit.NANOSECONDS.toMicros(doneNanos - dueNanos));
+            serviceTime.recordValue(TimeUnit.NANOSECONDS.toMicros(doneNanos - sentNanos));
+            if (error == null && response.statusCode() / 100 == 2) {
+                succeeded.increment();
+                return;
+            }
+            failures.computeIfAbsent(failure(response, error), key -> new LongAdder()).increment();
+        }
+
+        long requests() {
+            return responseTime.getTotalCount() + dropped.sum();
+        }
+
+        private static String failure(HttpResponse<?> response, Throwable error) {
+            if (error == null) {
+                return String.valueOf(response.statusCode());
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            return cause instanceof HttpTimeoutException ? "timeout" : "io-error";
+        }
+    }
+
+    static final class Result {
+
+        final Map<String, Stats> operations;
+
+        // from the first request being due to the last one completing
+        final double elapsedSeconds;
+
+        Result(Map<String, Stats> operations, double elapsedSeconds) {
+            this.operations = operations;
+            this.elapsedSeconds = elapsedSeconds;
+        }
+
+        long succeeded() {
+            return operations.values().stream().mapToLong(stats -> stats.succeeded.sum()).sum();
+        }
+
+        Histogram all(boolean responseTime) {
+            Histogram all = new Histogram(3);
+            operations.values().forEach(stats -> all.add(responseTime ? stats.responseTime : stats.serviceTime));
+            return all;
+        }
+    }
+
+    private final HttpClient client;
+
+    private final int maxInFlight;
+
+    private final Duration requestTimeout;
+
+    private final List<Operation> operations;
+
+    private final int totalWeight;
+
+    private final Random random;
+
+    private long sequence;
+
+    OpenLoopDriver(HttpClient client, int maxInFlight, Duration requestTimeout, List<Operation> operations, long seed) {
+        this.client = client;
+        this.maxInFlight = maxInFlight;
+        this.requestTimeout = requestTimeout;
+        this.operations = operations;
+        this.totalWeight = operations.stream().mapToInt(operation -> operation.weight).sum();
+        this.random = new Random(seed);
+    }
+
+    Result run(double rate, Duration duration) throws InterruptedException {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        operations.forEach(operation -> stats.put(operation.name, new Stats()));
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        double interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long count = (long) (duration.toNanos() / interval);
+
+        long start = System.nanoTime();
+        for (long i = 0; i < count; i++) {
+            long due = start + (long) (i * interval);
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Operation operation = next();
+            Stats operationStats = stats.get(operation.name);
+            if (!inFlight.tryAcquire()) {
+                operationStats.dropped.increment();
+                continue;
+            }
+            HttpRequest request = operation.request.apply(sequence++).timeout(requestTimeout).build();
+            long sent = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                operationStats.record(due, sent, System.nanoTime(), response, error);
+                inFlight.release();
+            });
+        }
+
+        // every request has completed or timed out once all permits are back
+        if (!inFlight.tryAcquire(maxInFlight, requestTimeout.toMillis() + 5000, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Requests still outstanding after the request timeout");
+        }
+        return new Result(stats, (System.nanoTime() - start) / 1e9);
+    }
+
+    private Operation next() {
+        int pick = random.nextInt(totalWeight);
+        for (Operation operation : operations) {
+            pick -= operation.weight;
+            if (pick < 0) {
+                return operation;
+            }
+        }
+        throw new IllegalStateException("Operations have no weight");
+    }
+
+}
@@ -0,0 +1,89 @@
+package net.javaguides.springboottesting.admission;
+
+// Concurrency limit that follows latency, in the style of the gradient limits of Netflix's
+// concurrency-limits.
+//
+// Samples are averaged over windows of SAMPLES_PER_WINDOW. Each window's average (the short RTT)
+// is compared with a slow moving average of past windows (the long RTT). While the short RTT stays
+// within TOLERANCE of it the target is limit + sqrt(limit); once requests take longer it is
+// limit * long / short (at least half the limit) + sqrt(limit). The limit moves a fifth of the way
+// to the target per window, so one slow window takes at most a tenth off. Windows in which fewer
+// than half the limit was in flight say nothing about a higher limit, they only move the long RTT.
+//
+// The long RTT follows a sustained change in latency too, so a database that stays slower ends
+// up with a limit sized for its new speed instead of shrinking forever.
+public class AdaptiveConcurrencyLimit {
+
+    static final int SAMPLES_PER_WINDOW = 10;
+
+    // windows the long RTT averages over
+    static final int LONG_WINDOWS = 60;
+
+    static final double TOLERANCE = 1.5;
+
+    static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    // guarded by this
+    private double limit;
+
+    private double longRtt;
+
+    private long windowRttSum;
+
+    private int windowSamples;
+
+    private int windowMaxInFlight;
+
+    private volatile int currentLimit;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.currentLimit = initialLimit;
+    }
+
+    public int getLimit() {
+        return currentLimit;
+    }
+
+    // rtt of one admitted request, inFlight how many were in flight when it was admitted
+    public synchronized void onSample(long rttNanos, int inFlight) {
+        windowRttSum += rttNanos;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+        if (++windowSamples < SAMPLES_PER_WINDOW) {
+            return;
+        }
+        double shortRtt = Math.max(1.0, (double) windowRttSum / windowSamples);
+        int maxInFlight = windowMaxInFlight;
+        windowRttSum = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt += (shortRtt - longRtt) / LONG_WINDOWS;
+        }
+        // back from a slow period, don't keep judging against it
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        if (maxInFlight < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+        currentLimit = (int) limit;
+    }
+
+}
@@ -0,0 +1,239 @@
+package net.javaguides.springboottesting.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Admission control for /api/employees: at most AdaptiveConcurrencyLimit's limit of requests are
+// in flight, the rest are turned away at once instead of waiting in Tomcat's queue while the
+// database is slow. The limit learns from how long admitted requests hold their permit.
+//
+// Reads (GET, HEAD, OPTIONS) and writes are separate lanes, and writes come first: reads stop short of
+// the limit by write-share of it, which stays free for writes, while writes may take the whole
+// limit. A burst of listings can't lock out creates and updates that way, and reads, which
+// are cheap to retry, are the ones shed first. A read over its share gets a 429, any request that
+// finds the whole limit in use a 503. Both come with Retry-After and without a body.
+//
+// The change stream and the exports are left out, they hold their response open for as long as
+// the client reads and would only teach the limit that requests are slow. Async requests keep
+// their permit until the async request completes.
+@Component
+@ConditionalOnProperty(name = "employees.admission.enabled", havingValue = "true")
+// after Boot's request metrics filter, so shed requests show up in http.server.requests
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class EmployeeAdmissionFilter extends OncePerRequestFilter implements MeterBinder {
+
+    static final String PATH = "/api/employees";
+
+    static final String RETRY_AFTER_SECONDS = "1";
+
+    enum Lane {
+        READ,
+        WRITE
+    }
+
+    private final AdaptiveConcurrencyLimit limit;
+
+    private final double writeShare;
+
+    // guarded by this
+    private int readsInFlight;
+
+    private int writesInFlight;
+
+    // registered in bindTo, so shedding a request only increments one; only reads get 429s
+    private volatile Counter readsOverShare;
+
+    private volatile Map<Lane, Counter> overLimit = Map.of();
+
+    public EmployeeAdmissionFilter(@Value("${employees.admission.initial-limit:20}") int initialLimit,
+                                   @Value("${employees.admission.min-limit:4}") int minLimit,
+                                   @Value("${employees.admission.max-limit:200}") int maxLimit,
+                                   @Value("${employees.admission.write-share:0.3}") double writeShare) {
+        if (writeShare < 0 || writeShare > 1) {
+            throw new IllegalArgumentException("employees.admission.write-share must be between 0 and 1");
+        }
+        this.limit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit);
+        this.writeShare = writeShare;
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.equals(PATH) && !path.startsWith(PATH + "/")) {
+            return true;
+        }
+        return path.startsWith(PATH + "/changes") || path.startsWith(PATH + "/export");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Lane lane = isSafe(request.getMethod()) ? Lane.READ : Lane.WRITE;
+        HttpStatus rejection = tryAcquire(lane);
+        if (rejection != null) {
+            rejected(lane, rejection);
+            response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            response.setStatus(rejection.value());
+            return;
+        }
+
+        Permit permit = new Permit(lane, inFlight());
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(permit);
+            } else {
+                permit.release();
+            }
+        }
+    }
+
+    // null when admitted, otherwise the status to reject with
+    synchronized HttpStatus tryAcquire(Lane lane) {
+        int current = limit.getLimit();
+        int inFlight = readsInFlight + writesInFlight;
+        if (inFlight >= current) {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        if (lane == Lane.READ && readsInFlight >= current - Math.round(current * writeShare)) {
+            return HttpStatus.TOO_MANY_REQUESTS;
+        }
+        if (lane == Lane.READ) {
+            readsInFlight++;
+        } else {
+            writesInFlight++;
+        }
+        return null;
+    }
+
+    private synchronized void release(Lane lane) {
+        if (lane == Lane.READ) {
+            readsInFlight--;
+        } else {
+            writesInFlight--;
+        }
+    }
+
+    synchronized int inFlight() {
+        return readsInFlight + writesInFlight;
+    }
+
+    synchronized int inFlight(Lane lane) {
+        return lane == Lane.READ ? readsInFlight : writesInFlight;
+    }
+
+    private void rejected(Lane lane, HttpStatus status) {
+        Counter counter = status == HttpStatus.TOO_MANY_REQUESTS ? readsOverShare : overLimit.get(lane);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        readsOverShare = rejectedCounter(registry, Lane.READ, HttpStatus.TOO_MANY_REQUESTS);
+        Map<Lane, Counter> overLimit = new EnumMap<>(Lane.class);
+        for (Lane lane : Lane.values()) {
+            overLimit.put(lane, rejectedCounter(registry, lane, HttpStatus.SERVICE_UNAVAILABLE));
+        }
+        this.overLimit = overLimit;
+        Gauge.builder("employees.admission.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                .description("Requests admitted at once")
+                .register(registry);
+        for (Lane lane : Lane.values()) {
+            Gauge.builder("employees.admission.in.flight", this, filter -> filter.inFlight(lane))
+                    .description("Admitted requests in flight")
+                    .tag("lane", tag(lane))
+                    .register(registry);
+        }
+    }
+
+    private static Counter rejectedCounter(MeterRegistry registry, Lane lane, HttpStatus status) {
+        return Counter.builder("employees.admission.rejected")
+                .description("Requests turned away by admission control")
+                .tag("lane", tag(lane))
+                .tag("status", String.valueOf(status.value()))
+                .register(registry);
+    }
+
+    private static String tag(Lane lane) {
+        return lane.name().toLowerCase();
+    }
+
+    private static boolean isSafe(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+
+    // released once, whichever of the async events comes first
+    private class Permit implements AsyncListener {
+
+        private final Lane lane;
+
+        private final int inFlightAtAdmission;
+
+        private final long start = System.nanoTime();
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(Lane lane, int inFlightAtAdmission) {
+            this.lane = lane;
+            this.inFlightAtAdmission = inFlightAtAdmission;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                EmployeeAdmissionFilter.this.release(lane);
+                limit.onSample(System.nanoTime() - start, inFlightAtAdmission);
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // a redispatch that starts async again keeps the same permit
+            event.getAsyncContext().addListener(this);
+        }
+
+    }
+
+}
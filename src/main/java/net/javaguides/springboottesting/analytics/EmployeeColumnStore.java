@@ -0,0 +1,348 @@
+package net.javaguides.springboottesting.analytics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.javaguides.springboottesting.dto.EmployeeStats;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.event.EmployeeChangeApplier;
+import net.javaguides.springboottesting.event.EmployeeChangedEvent;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Columnar copy of the employees table for group-by counts, so reports don't load every entity.
+//
+// Every row is an index into parallel primitive arrays: the version, and one int column per
+// groupable attribute holding a code from that column's dictionary. A count is one pass over an
+// int column into an array indexed by code, split over fork-join tasks that each count a range of
+// rows; their arrays are summed on the way back. Deleted rows get FREE in every column and are
+// reused by the next insert. Dictionaries only grow, a value whose rows are all gone counts 0.
+//
+// Filled from the export stream once the application is ready, then follows EmployeeChangedEvent
+// like EmployeeSearchIndex. Counts hold the read lock, so they see each change whole.
+@Component
+public class EmployeeColumnStore implements MeterBinder {
+
+    public enum Column {
+        FIRST_NAME,
+        LAST_NAME,
+        EMAIL_DOMAIN
+    }
+
+    // rows one fork-join task counts without splitting further
+    static final int SEQUENTIAL_THRESHOLD = 1 << 15;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int FREE = -1;
+
+    private static final long NO_VERSION = -1;
+
+    private final EmployeeService employeeService;
+
+    private final EmployeeChangeApplier changeApplier;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private long[] versions = new long[INITIAL_CAPACITY];
+
+    private final int[][] columns = new int[Column.values().length][INITIAL_CAPACITY];
+
+    private final Dictionary[] dictionaries = new Dictionary[Column.values().length];
+
+    private final Map<Long, Integer> rowsById = new HashMap<>();
+
+    private int[] freeRows = new int[16];
+
+    private int freeRowCount;
+
+    // rows in use or freed, counts scan up to here
+    private int rowCount;
+
+    // while the initial load runs, deleted ids are remembered so the load can't bring them back
+    private volatile boolean warming;
+
+    private final Set<Long> deletedWhileWarming = ConcurrentHashMap.newKeySet();
+
+    public EmployeeColumnStore(EmployeeService employeeService, EmployeeChangeApplier changeApplier) {
+        this.employeeService = employeeService;
+        this.changeApplier = changeApplier;
+        for (int i = 0; i < dictionaries.length; i++) {
+            dictionaries[i] = new Dictionary();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        warming = true;
+        try {
+            employeeService.exportEmployees(employee -> {
+                if (!deletedWhileWarming.contains(employee.getId())) {
+                    put(employee);
+                }
+            });
+        } finally {
+            warming = false;
+            deletedWhileWarming.clear();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeeChanged(EmployeeChangedEvent event) {
+        changeApplier.apply(event, this::put, this::remove);
+    }
+
+    // the limit most frequent values of the column, most frequent first, and how many distinct
+    // values occur once, twice, 3-4 times, 5-8 times and so on
+    public EmployeeStats stats(Column column, int limit) {
+        lock.readLock().lock();
+        try {
+            Dictionary dictionary = dictionaries[column.ordinal()];
+            int[] counts = ForkJoinPool.commonPool().invoke(
+                    new CountTask(columns[column.ordinal()], 0, rowCount, dictionary.size()));
+
+            // a min-heap of the best limit codes seen so far, ties go to the smaller value
+            Comparator<Integer> order = Comparator.<Integer>comparingInt(code -> counts[code])
+                    .thenComparing(code -> dictionary.value(code), Comparator.reverseOrder());
+            PriorityQueue<Integer> top = new PriorityQueue<>(order);
+            int distinct = 0;
+            int[] frequencies = new int[Integer.SIZE];
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] == 0) {
+                    continue;
+                }
+                distinct++;
+                frequencies[Integer.SIZE - Integer.numberOfLeadingZeros(counts[code] - 1)]++;
+                if (top.size() < limit) {
+                    top.add(code);
+                } else if (limit > 0 && order.compare(code, top.peek()) > 0) {
+                    top.poll();
+                    top.add(code);
+                }
+            }
+
+            List<EmployeeStats.Group> groups = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                int code = top.poll();
+                groups.add(new EmployeeStats.Group(dictionary.value(code), counts[code]));
+            }
+            Collections.reverse(groups);
+            return new EmployeeStats(rowsById.size(), distinct, groups, buckets(frequencies));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(Employee employee) {
+        if (employee.getId() != null) {
+            put(EmployeeView.of(employee));
+        }
+    }
+
+    public void put(EmployeeView employee) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rowsById.get(employee.getId());
+            if (row != null && isOlder(employee, versions[row])) {
+                return;
+            }
+            if (row == null) {
+                row = allocateRow();
+                rowsById.put(employee.getId(), row);
+            }
+            versions[row] = employee.getVersion() != null ? employee.getVersion() : NO_VERSION;
+            set(Column.FIRST_NAME, row, employee.getFirstName());
+            set(Column.LAST_NAME, row, employee.getLastName());
+            set(Column.EMAIL_DOMAIN, row, emailDomain(employee.getEmail()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            if (warming) {
+                deletedWhileWarming.add(id);
+            }
+            Integer row = rowsById.remove(id);
+            if (row != null) {
+                for (int[] column : columns) {
+                    column[row] = FREE;
+                }
+                if (freeRowCount == freeRows.length) {
+                    freeRows = Arrays.copyOf(freeRows, freeRows.length * 2);
+                }
+                freeRows[freeRowCount++] = row;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int allocateRow() {
+        if (freeRowCount > 0) {
+            return freeRows[--freeRowCount];
+        }
+        if (rowCount == versions.length) {
+            int capacity = versions.length * 2;
+            versions = Arrays.copyOf(versions, capacity);
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = Arrays.copyOf(columns[i], capacity);
+            }
+        }
+        return rowCount++;
+    }
+
+    private void set(Column column, int row, String value) {
+        columns[column.ordinal()][row] = dictionaries[column.ordinal()].encode(value != null ? value : "");
+    }
+
+    private static boolean isOlder(EmployeeView employee, long storedVersion) {
+        return employee.getVersion() != null && storedVersion != NO_VERSION && employee.getVersion() < storedVersion;
+    }
+
+    // domains are case-insensitive, the part before the @ is not grouped on
+    static String emailDomain(String email) {
+        if (email == null) {
+            return "";
+        }
+        int at = email.lastIndexOf('@');
+        return at < 0 ? "" : email.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+
+    // bucket b holds the values counted more than 2^(b-1) and at most 2^b times
+    private static List<EmployeeStats.Frequency> buckets(int[] frequencies) {
+        List<EmployeeStats.Frequency> buckets = new ArrayList<>();
+        for (int b = 0; b < frequencies.length; b++) {
+            if (frequencies[b] > 0) {
+                buckets.add(new EmployeeStats.Frequency(b == 0 ? 1 : (1 << (b - 1)) + 1, 1 << b, frequencies[b]));
+            }
+        }
+        return buckets;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("employees.analytics.rows", this, EmployeeColumnStore::size)
+                .description("Employees in the column store")
+                .register(registry);
+        for (Column column : Column.values()) {
+            Gauge.builder("employees.analytics.dictionary.size", this, store -> store.dictionarySize(column))
+                    .description("Distinct values ever stored in a column")
+                    .tag("column", column.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+    }
+
+    private int dictionarySize(Column column) {
+        lock.readLock().lock();
+        try {
+            return dictionaries[column.ordinal()].size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // value <-> code, codes are handed out in order of first appearance
+    private static class Dictionary {
+
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        private String[] values = new String[64];
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            int next = codes.size();
+            if (next == values.length) {
+                values = Arrays.copyOf(values, next * 2);
+            }
+            values[next] = value;
+            codes.put(value, next);
+            return next;
+        }
+
+        String value(int code) {
+            return values[code];
+        }
+
+        int size() {
+            return codes.size();
+        }
+    }
+
+    // occurrences of each code in rows [from, to)
+    private static class CountTask extends RecursiveTask<int[]> {
+
+        private final int[] column;
+
+        private final int from;
+
+        private final int to;
+
+        private final int codes;
+
+        CountTask(int[] column, int from, int to, int codes) {
+            this.column = column;
+            this.from = from;
+            this.to = to;
+            this.codes = codes;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                int[] counts = new int[codes];
+                for (int row = from; row < to; row++) {
+                    int code = column[row];
+                    if (code != FREE) {
+                        counts[code]++;
+                    }
+                }
+                return counts;
+            }
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(column, from, middle, codes);
+            left.fork();
+            int[] counts = new CountTask(column, middle, to, codes).compute();
+            int[] leftCounts = left.join();
+            for (int code = 0; code < codes; code++) {
+                counts[code] += leftCounts[code];
+            }
+            return counts;
+        }
+    }
+
+}
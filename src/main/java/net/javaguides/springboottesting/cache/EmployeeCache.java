@@ -0,0 +1,271 @@
+package net.javaguides.springboottesting.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded read-through cache in front of EmployeeRepository. Caffeine evicts with W-TinyLFU,
+// entries are keyed by id with a secondary email -> id index. Rows are kept as immutable
+// EmployeeViews, so getView() hands out the cached instance and only get() has to copy.
+//
+// Loads are guarded by a stamp: callers take stamp() before going to the database and pass it
+// to put(). A put is ignored if invalidateAll() ran in between; an invalidation of its own id
+// in between left a fence (below) that the row read before it can't pass. So a value read before
+// a concurrent update/delete can never be cached after that update was invalidated, while writes
+// to other ids don't cost the fills in flight anything.
+//
+// With several instances this is the near cache of two tiers. Misses fall through to the
+// SharedEmployeeCache (employees.cache.shared.type) before the database, and every write
+// invalidates all three: the local entry, the shared entry with a version fence, and the peers'
+// near entries through the EmployeeInvalidationBus (employees.cache.bus.type). Peers learn about
+// a write only once the bus delivers it, so a client that needs to read its own write passes the
+// version it got back as minVersion, and older cached rows are skipped.
+//
+// Every invalidation leaves a fence (the written version) for tombstone-ttl, and puts of older
+// rows are dropped; a write of unknown version fences off every row. A read served by a lagging
+// replica after the write therefore can't bring the old row back into the cache either.
+@Component
+public class EmployeeCache implements MeterBinder {
+
+    private final UUID nodeId = UUID.randomUUID();
+
+    private final Cache<Long, EmployeeView> employeesById;
+
+    private final Cache<String, Long> idsByEmail;
+
+    private final Cache<Long, Fence> fences;
+
+    private final SharedEmployeeCache sharedTier;
+
+    private final EmployeeInvalidationBus invalidationBus;
+
+    // counts every invalidation, stamps are taken from it
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // guarded by invalidations; the count at the last invalidateAll()
+    private long clearedAt;
+
+    // near cache only, nothing shared with other instances
+    public EmployeeCache(long maximumSize, Duration expireAfterWrite) {
+        this(maximumSize, expireAfterWrite, Duration.ofMinutes(1), SharedEmployeeCache.NONE, new LocalEmployeeInvalidationBus());
+    }
+
+    @Autowired
+    public EmployeeCache(@Value("${employees.cache.maximum-size:10000}") long maximumSize,
+                         @Value("${employees.cache.expire-after-write:10m}") Duration expireAfterWrite,
+                         @Value("${employees.cache.tombstone-ttl:1m}") Duration tombstoneTtl,
+                         ObjectProvider<SharedEmployeeCache> sharedTier,
+                         EmployeeInvalidationBus invalidationBus) {
+        this(maximumSize, expireAfterWrite, tombstoneTtl, sharedTier.getIfAvailable(() -> SharedEmployeeCache.NONE), invalidationBus);
+    }
+
+    public EmployeeCache(long maximumSize, Duration expireAfterWrite, Duration tombstoneTtl,
+                         SharedEmployeeCache sharedTier, EmployeeInvalidationBus invalidationBus) {
+        this.employeesById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.idsByEmail = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.fences = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(tombstoneTtl)
+                .build();
+        this.sharedTier = sharedTier;
+        this.invalidationBus = invalidationBus;
+        invalidationBus.subscribe(this::onInvalidation);
+    }
+
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    // whether id was invalidated after stamp was taken, for callers that share a read in flight
+    public boolean invalidatedSince(Long id, long stamp) {
+        synchronized (invalidations) {
+            if (clearedAt > stamp) {
+                return true;
+            }
+            Fence fence = fences.asMap().get(id);
+            return fence != null && fence.invalidation > stamp;
+        }
+    }
+
+    public Optional<Employee> get(Long id) {
+        // a fresh entity every time, callers may modify it
+        return getView(id).map(EmployeeView::toEmployee);
+    }
+
+    public Optional<EmployeeView> getView(Long id) {
+        return getView(id, 0);
+    }
+
+    // skips cached rows older than minVersion, the caller then reads the database
+    public Optional<EmployeeView> getView(Long id, long minVersion) {
+        EmployeeView employee = employeesById.getIfPresent(id);
+        if (employee != null && versionOf(employee) >= minVersion) {
+            return Optional.of(employee);
+        }
+
+        long stamp = stamp();
+        Optional<EmployeeView> shared = sharedTier.get(id).filter(e -> versionOf(e) >= minVersion);
+        shared.ifPresent(e -> putNear(e, stamp));
+        return shared;
+    }
+
+    // only answers for emails whose employee is still cached with that same email,
+    // so a leftover index entry can never stand in for the database check
+    public Optional<Long> getIdByEmail(String email) {
+        Long id = idsByEmail.getIfPresent(email);
+        if (id == null) {
+            return Optional.empty();
+        }
+        EmployeeView employee = employeesById.getIfPresent(id);
+        if (employee == null || !email.equals(employee.getEmail())) {
+            idsByEmail.asMap().remove(email, id);
+            return Optional.empty();
+        }
+        return Optional.of(id);
+    }
+
+    public void put(Employee employee, long stamp) {
+        if (employee.getId() != null) {
+            put(EmployeeView.of(employee), stamp);
+        }
+    }
+
+    public void put(EmployeeView employee, long stamp) {
+        // the shared tier checks versions itself, the stamp only guards the near cache
+        if (putNear(employee, stamp)) {
+            sharedTier.put(employee);
+        }
+    }
+
+    private boolean putNear(EmployeeView employee, long stamp) {
+        synchronized (invalidations) {
+            if (clearedAt > stamp) {
+                return false;
+            }
+            Fence fence = fences.getIfPresent(employee.getId());
+            if (fence != null && versionOf(employee) < fence.version) {
+                return false;
+            }
+            employeesById.put(employee.getId(), employee);
+            if (employee.getEmail() != null) {
+                idsByEmail.put(employee.getEmail(), employee.getId());
+            }
+            return true;
+        }
+    }
+
+    // after a write of unknown version: deletes, failed updates
+    public void invalidate(Long id) {
+        invalidate(id, EmployeeInvalidation.UNKNOWN_VERSION);
+    }
+
+    // after a write that left the row at version
+    public void invalidate(Long id, long version) {
+        evictNear(id, version);
+        sharedTier.invalidate(id, version);
+        invalidationBus.publish(new EmployeeInvalidation(nodeId, List.of(id), version));
+    }
+
+    // after a bulk write, one bus message for all ids
+    public void invalidate(Collection<Long> ids) {
+        for (Long id : ids) {
+            evictNear(id, EmployeeInvalidation.UNKNOWN_VERSION);
+            sharedTier.invalidate(id, EmployeeInvalidation.UNKNOWN_VERSION);
+        }
+        invalidationBus.publish(new EmployeeInvalidation(nodeId, new ArrayList<>(ids), EmployeeInvalidation.UNKNOWN_VERSION));
+    }
+
+    // this instance and the shared tier only, the other near caches are left alone
+    public void invalidateAll() {
+        synchronized (invalidations) {
+            clearedAt = invalidations.incrementAndGet();
+            employeesById.invalidateAll();
+            idsByEmail.invalidateAll();
+            fences.invalidateAll();
+        }
+        sharedTier.invalidateAll();
+    }
+
+    private void onInvalidation(EmployeeInvalidation invalidation) {
+        if (nodeId.equals(invalidation.getOrigin())) {
+            return;
+        }
+        for (Long id : invalidation.getIds()) {
+            evictNear(id, invalidation.getVersion());
+        }
+    }
+
+    // keeps an entry that already has the written version, e.g. re-read before the message arrived
+    private void evictNear(Long id, long version) {
+        synchronized (invalidations) {
+            fences.asMap().merge(id, new Fence(version, invalidations.incrementAndGet()),
+                    (older, newer) -> new Fence(Math.max(older.version, newer.version), newer.invalidation));
+            // asMap().get() doesn't count as a hit or miss
+            EmployeeView employee = employeesById.asMap().get(id);
+            if (employee == null || versionOf(employee) >= version) {
+                return;
+            }
+            employeesById.asMap().remove(id, employee);
+            if (employee.getEmail() != null) {
+                idsByEmail.asMap().remove(employee.getEmail(), id);
+            }
+        }
+    }
+
+    private static long versionOf(EmployeeView employee) {
+        return employee.getVersion() == null ? 0 : employee.getVersion();
+    }
+
+    public CacheStats stats() {
+        return employeesById.stats();
+    }
+
+    public CacheStats emailIndexStats() {
+        return idsByEmail.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, employeesById, "employees");
+        CaffeineCacheMetrics.monitor(registry, idsByEmail, "employees.email");
+    }
+
+    private static class Fence {
+
+        private final long version;
+
+        // the count of invalidations that set it
+        private final long invalidation;
+
+        private Fence(long version, long invalidation) {
+            this.version = version;
+            this.invalidation = invalidation;
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package net.javaguides.springboottesting.cache;
+
+import lombok.Value;
+
+import java.util.List;
+import java.util.UUID;
+
+// Ids one node wrote, sent to the other nodes over the EmployeeInvalidationBus. version is the
+// version the rows were written with, or UNKNOWN_VERSION when the writer doesn't know it
+// (deletes, bulk updates, failed writes) - then every cached copy is stale.
+@Value
+public class EmployeeInvalidation {
+
+    public static final long UNKNOWN_VERSION = Long.MAX_VALUE;
+
+    // the EmployeeCache that published it, so a node skips its own invalidations
+    UUID origin;
+
+    List<Long> ids;
+
+    long version;
+
+}
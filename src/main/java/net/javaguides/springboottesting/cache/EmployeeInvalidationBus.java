@@ -0,0 +1,15 @@
+package net.javaguides.springboottesting.cache;
+
+import java.util.function.Consumer;
+
+// Carries EmployeeInvalidations between the instances behind the load balancer, so every node
+// drops its near cache entries for rows another node wrote. Delivery is best effort: a lost
+// invalidation leaves an entry stale until it expires, callers that need their own write back
+// ask for it with a minimum version (see EmployeeCache.getView).
+public interface EmployeeInvalidationBus {
+
+    void publish(EmployeeInvalidation invalidation);
+
+    void subscribe(Consumer<EmployeeInvalidation> subscriber);
+
+}
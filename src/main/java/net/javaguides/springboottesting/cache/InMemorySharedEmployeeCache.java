@@ -0,0 +1,137 @@
+package net.javaguides.springboottesting.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+// Shared tier kept in this JVM. Shared between the EmployeeCaches of one process only, which is
+// what tests and a single instance need; several instances plug in a networked SharedEmployeeCache.
+//
+// An invalidation replaces the row with a tombstone that holds the fence version for
+// tombstone-ttl, longer than any read can take between its query and its put().
+@Component
+@ConditionalOnProperty(name = "employees.cache.shared.type", havingValue = "in-memory")
+public class InMemorySharedEmployeeCache implements SharedEmployeeCache, MeterBinder {
+
+    private final Cache<Long, Entry> entries;
+
+    private final long expireAfterWriteNanos;
+
+    private final long tombstoneTtlNanos;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public InMemorySharedEmployeeCache(@Value("${employees.cache.shared.maximum-size:100000}") long maximumSize,
+                                       @Value("${employees.cache.shared.expire-after-write:30m}") Duration expireAfterWrite,
+                                       @Value("${employees.cache.shared.tombstone-ttl:1m}") Duration tombstoneTtl) {
+        this.expireAfterWriteNanos = expireAfterWrite.toNanos();
+        this.tombstoneTtlNanos = tombstoneTtl.toNanos();
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<Long, Entry>() {
+
+                    @Override
+                    public long expireAfterCreate(Long id, Entry entry, long currentTime) {
+                        return entry.expiresAt - currentTime;
+                    }
+
+                    // a rejected put keeps the entry, and with it the time it expires at
+                    @Override
+                    public long expireAfterUpdate(Long id, Entry entry, long currentTime, long currentDuration) {
+                        return entry.expiresAt - currentTime;
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long id, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public Optional<EmployeeView> get(Long id) {
+        Entry entry = entries.getIfPresent(id);
+        if (entry == null || entry.employee == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.employee);
+    }
+
+    @Override
+    public void put(EmployeeView employee) {
+        long version = versionOf(employee);
+        entries.asMap().compute(employee.getId(), (id, entry) -> {
+            if (entry == null) {
+                return new Entry(employee, 0, System.nanoTime() + expireAfterWriteNanos);
+            }
+            if (version < entry.fence || entry.employee != null && versionOf(entry.employee) >= version) {
+                return entry;
+            }
+            return new Entry(employee, entry.fence, System.nanoTime() + expireAfterWriteNanos);
+        });
+    }
+
+    @Override
+    public void invalidate(Long id, long version) {
+        entries.asMap().compute(id, (key, entry) -> {
+            // someone already cached what was written, or something newer
+            if (entry != null && entry.employee != null && versionOf(entry.employee) >= version) {
+                return entry;
+            }
+            long fence = entry == null ? version : Math.max(entry.fence, version);
+            return new Entry(null, fence, System.nanoTime() + tombstoneTtlNanos);
+        });
+    }
+
+    @Override
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    private static long versionOf(EmployeeView employee) {
+        return employee.getVersion() == null ? 0 : employee.getVersion();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tags("cache", "employees.shared", "result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tags("cache", "employees.shared", "result", "miss")
+                .register(registry);
+    }
+
+    // a cached row, or a tombstone (employee == null); puts below fence are ignored either way
+    private static class Entry {
+
+        private final EmployeeView employee;
+
+        private final long fence;
+
+        private final long expiresAt;
+
+        private Entry(EmployeeView employee, long fence, long expiresAt) {
+            this.employee = employee;
+            this.fence = fence;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+package net.javaguides.springboottesting.cache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// In-JVM bus for a single instance and for tests, delivers on the publishing thread
+@Component
+@ConditionalOnProperty(name = "employees.cache.bus.type", havingValue = "local", matchIfMissing = true)
+public class LocalEmployeeInvalidationBus implements EmployeeInvalidationBus {
+
+    private final List<Consumer<EmployeeInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(EmployeeInvalidation invalidation) {
+        for (Consumer<EmployeeInvalidation> subscriber : subscribers) {
+            subscriber.accept(invalidation);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<EmployeeInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+}
@@ -0,0 +1,162 @@
+package net.javaguides.springboottesting.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Bus between instances on one network: every invalidation goes out as UDP multicast datagrams
+// to employees.cache.bus.multicast.group, and a receiver thread hands incoming ones to the
+// subscribers. UDP may drop datagrams, keep employees.cache.expire-after-write short with it.
+//
+// Datagram: format (1 byte), origin (2 longs), version (long), id count (int), ids (longs)
+@Component
+@ConditionalOnProperty(name = "employees.cache.bus.type", havingValue = "multicast")
+public class MulticastEmployeeInvalidationBus implements EmployeeInvalidationBus {
+
+    private static final Logger log = LoggerFactory.getLogger(MulticastEmployeeInvalidationBus.class);
+
+    private static final byte FORMAT = 1;
+
+    private static final int HEADER_SIZE = 1 + 16 + 8 + 4;
+
+    // ~4KB datagrams, bulk invalidations are split
+    static final int MAX_IDS_PER_DATAGRAM = 500;
+
+    private final List<Consumer<EmployeeInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+
+    private final InetAddress group;
+
+    private final int port;
+
+    private final int timeToLive;
+
+    private final Thread receiver = new Thread(this::receive, "employee-invalidation-receiver");
+
+    private MulticastSocket socket;
+
+    public MulticastEmployeeInvalidationBus(@Value("${employees.cache.bus.multicast.group:239.255.27.1}") InetAddress group,
+                                            @Value("${employees.cache.bus.multicast.port:45678}") int port,
+                                            @Value("${employees.cache.bus.multicast.ttl:1}") int timeToLive) {
+        this.group = group;
+        this.port = port;
+        this.timeToLive = timeToLive;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        socket = new MulticastSocket(port);
+        socket.setTimeToLive(timeToLive);
+        socket.joinGroup(new InetSocketAddress(group, port), null);
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        socket.close();
+    }
+
+    @Override
+    public void publish(EmployeeInvalidation invalidation) {
+        // the write already happened, a failed send only delays other nodes until their entries expire
+        try {
+            for (byte[] datagram : encode(invalidation)) {
+                socket.send(new DatagramPacket(datagram, datagram.length, group, port));
+            }
+        } catch (IOException e) {
+            log.warn("Failed to publish an invalidation of {} employees", invalidation.getIds().size(), e);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<EmployeeInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    private void receive() {
+        byte[] buffer = new byte[HEADER_SIZE + MAX_IDS_PER_DATAGRAM * 8];
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    log.warn("Failed to receive an invalidation", e);
+                }
+                continue;
+            }
+
+            EmployeeInvalidation invalidation = decode(packet.getData(), packet.getLength());
+            if (invalidation == null) {
+                continue;
+            }
+            for (Consumer<EmployeeInvalidation> subscriber : subscribers) {
+                try {
+                    subscriber.accept(invalidation);
+                } catch (RuntimeException e) {
+                    log.error("Invalidation subscriber failed", e);
+                }
+            }
+        }
+    }
+
+    static List<byte[]> encode(EmployeeInvalidation invalidation) {
+        List<Long> ids = invalidation.getIds();
+        List<byte[]> datagrams = new ArrayList<>(ids.size() / MAX_IDS_PER_DATAGRAM + 1);
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_DATAGRAM) {
+            int to = Math.min(ids.size(), from + MAX_IDS_PER_DATAGRAM);
+            ByteBuffer datagram = ByteBuffer.allocate(HEADER_SIZE + (to - from) * 8)
+                    .put(FORMAT)
+                    .putLong(invalidation.getOrigin().getMostSignificantBits())
+                    .putLong(invalidation.getOrigin().getLeastSignificantBits())
+                    .putLong(invalidation.getVersion())
+                    .putInt(to - from);
+            for (Long id : ids.subList(from, to)) {
+                datagram.putLong(id);
+            }
+            datagrams.add(datagram.array());
+        }
+        return datagrams;
+    }
+
+    // null for datagrams that aren't invalidations in this format
+    static EmployeeInvalidation decode(byte[] data, int length) {
+        ByteBuffer datagram = ByteBuffer.wrap(data, 0, length);
+        try {
+            if (datagram.get() != FORMAT) {
+                return null;
+            }
+            UUID origin = new UUID(datagram.getLong(), datagram.getLong());
+            long version = datagram.getLong();
+            int count = datagram.getInt();
+            if (count < 0 || count > MAX_IDS_PER_DATAGRAM) {
+                return null;
+            }
+            List<Long> ids = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ids.add(datagram.getLong());
+            }
+            return new EmployeeInvalidation(origin, ids, version);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+}
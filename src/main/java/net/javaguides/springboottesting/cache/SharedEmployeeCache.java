@@ -0,0 +1,43 @@
+package net.javaguides.springboottesting.cache;
+
+import net.javaguides.springboottesting.dto.EmployeeView;
+
+import java.util.Optional;
+
+// Second cache tier, shared by all instances (a Redis or Hazelcast map in production, see
+// InMemorySharedEmployeeCache for the stand-in). Entries are versioned: invalidate(id, version)
+// leaves a fence, and put() is ignored for rows older than the fence or than the cached row,
+// so a node that read a row before another node's write can't put the old row back.
+public interface SharedEmployeeCache {
+
+    // no shared tier, EmployeeCache works as a near cache only
+    SharedEmployeeCache NONE = new SharedEmployeeCache() {
+
+        @Override
+        public Optional<EmployeeView> get(Long id) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void put(EmployeeView employee) {
+        }
+
+        @Override
+        public void invalidate(Long id, long version) {
+        }
+
+        @Override
+        public void invalidateAll() {
+        }
+    };
+
+    Optional<EmployeeView> get(Long id);
+
+    void put(EmployeeView employee);
+
+    // version is the version just written, or EmployeeInvalidation.UNKNOWN_VERSION
+    void invalidate(Long id, long version);
+
+    void invalidateAll();
+
+}
@@ -0,0 +1,268 @@
+package net.javaguides.springboottesting.compression;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.springframework.util.StreamUtils;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+// Holds back the first minResponseSize bytes of a body, then decides: a body that ended within
+// them, or whose type isn't compressible, is written as is; a longer one goes through the
+// encoder. Flushes while still undecided are held too, except for types that aren't compressed
+// anyway, so event streams aren't delayed.
+//
+// A non-blocking writer (setWriteListener) gets the response uncompressed: what's held back goes
+// out first, then its writes and isReady() go straight to the container's stream.
+class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+    private enum State { UNDECIDED, PLAIN, COMPRESSED, FINISHED }
+
+    private final ResponseCompressionFilter.ContentEncoding encoding;
+
+    private final int minResponseSize;
+
+    private final Predicate<String> compressible;
+
+    private final ByteArrayOutputStream held = new ByteArrayOutputStream();
+
+    private State state = State.UNDECIDED;
+
+    private OutputStream encoder;
+
+    private long contentLength = -1;
+
+    private ServletOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    CompressingResponseWrapper(HttpServletResponse response, ResponseCompressionFilter.ContentEncoding encoding,
+                               int minResponseSize, Predicate<String> compressible) {
+        super(response);
+        this.encoding = encoding;
+        this.minResponseSize = minResponseSize;
+        this.compressible = compressible;
+    }
+
+    // a length set up front only reaches the client if the body goes out uncompressed
+    @Override
+    public void setContentLength(int length) {
+        setContentLengthLong(length);
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+        if (state == State.UNDECIDED) {
+            contentLength = length;
+            if (length < minResponseSize) {
+                try {
+                    goPlain();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        } else if (state == State.PLAIN) {
+            super.setContentLengthLong(length);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            outputStream = new CompressingOutputStream();
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), Charset.forName(getCharacterEncoding())));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        getOutputStream().flush();
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (state == State.UNDECIDED) {
+            held.reset();
+        }
+        super.resetBuffer();
+    }
+
+    @Override
+    public void reset() {
+        if (state == State.UNDECIDED) {
+            held.reset();
+            contentLength = -1;
+        }
+        super.reset();
+    }
+
+    // end of the response: writes out what's held back and closes the encoder
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (state == State.UNDECIDED) {
+            if (held.size() > 0 && !isCommitted()) {
+                super.setContentLengthLong(held.size());
+            }
+            goPlain();
+        }
+        if (state == State.COMPRESSED) {
+            encoder.close();
+        }
+        state = State.FINISHED;
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        switch (state) {
+            case UNDECIDED:
+                if (!compressible()) {
+                    goPlain();
+                    getResponse().getOutputStream().write(bytes, offset, length);
+                    return;
+                }
+                held.write(bytes, offset, length);
+                if (held.size() >= minResponseSize) {
+                    goCompressed();
+                }
+                return;
+            case PLAIN:
+                getResponse().getOutputStream().write(bytes, offset, length);
+                return;
+            case COMPRESSED:
+                encoder.write(bytes, offset, length);
+                return;
+            default:
+                throw new IOException("Response already finished");
+        }
+    }
+
+    private void flush() throws IOException {
+        switch (state) {
+            case UNDECIDED:
+                if (!compressible()) {
+                    goPlain();
+                    getResponse().flushBuffer();
+                }
+                return;
+            case PLAIN:
+                getResponse().flushBuffer();
+                return;
+            case COMPRESSED:
+                encoder.flush();
+                return;
+            default:
+        }
+    }
+
+    private boolean compressible() {
+        int status = getStatus();
+        return status >= 200 && status != 204 && status != 304
+                && getHeader("Content-Encoding") == null
+                && compressible.test(getContentType());
+    }
+
+    private void goPlain() throws IOException {
+        state = State.PLAIN;
+        if (contentLength >= 0 && !isCommitted()) {
+            super.setContentLengthLong(contentLength);
+        }
+        if (held.size() > 0) {
+            getResponse().getOutputStream().write(held.toByteArray());
+            held.reset();
+        }
+    }
+
+    private void goCompressed() throws IOException {
+        state = State.COMPRESSED;
+        addHeader("Vary", "Accept-Encoding");
+        setHeader("Content-Encoding", encoding.token());
+        OutputStream body = StreamUtils.nonClosing(getResponse().getOutputStream());
+        // sync flush: a flush by the application still pushes everything encoded so far to the client
+        encoder = encoding == ResponseCompressionFilter.ContentEncoding.ZSTD
+                ? new ZstdOutputStream(body)
+                : new GZIPOutputStream(body, 8192, true);
+        held.writeTo(encoder);
+        held.reset();
+    }
+
+    private class CompressingOutputStream extends ServletOutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            CompressingResponseWrapper.this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            CompressingResponseWrapper.this.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            CompressingResponseWrapper.this.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        @Override
+        public boolean isReady() {
+            if (state == State.PLAIN) {
+                try {
+                    return getResponse().getOutputStream().isReady();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            try {
+                if (state == State.UNDECIDED) {
+                    goPlain();
+                } else if (state != State.PLAIN) {
+                    throw new IllegalStateException("Response body is already being compressed");
+                }
+                getResponse().getOutputStream().setWriteListener(listener);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package net.javaguides.springboottesting.compression;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+// Compresses response bodies with zstd or gzip, whichever the client prefers in Accept-Encoding
+// (zstd on a tie: smaller and cheaper to produce).
+//
+// Used instead of server.compression because Tomcat can only apply a size threshold when it knows
+// the length up front, and the JSON converters flush before they finish, so every JSON response
+// would be compressed however small. Here the first min-response-size bytes are held back: a body
+// that ends within them goes out as is with a Content-Length, a longer one streams through the
+// encoder from there on. Streamed exports never sit in memory beyond that threshold.
+//
+// Async requests finish on a later ASYNC dispatch, which sees the same wrapped response; the
+// encoder is closed once the last dispatch returns without starting another.
+@Component
+@ConditionalOnProperty(name = "employees.compression.enabled", havingValue = "true", matchIfMissing = true)
+public class ResponseCompressionFilter extends OncePerRequestFilter {
+
+    private final int minResponseSize;
+
+    private final List<MimeType> mimeTypes;
+
+    public ResponseCompressionFilter(@Value("${employees.compression.min-response-size:2KB}") DataSize minResponseSize,
+                                     @Value("${employees.compression.mime-types:application/json}") List<String> mimeTypes) {
+        this.minResponseSize = (int) minResponseSize.toBytes();
+        this.mimeTypes = mimeTypes.stream().map(MimeTypeUtils::parseMimeType).collect(Collectors.toList());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        CompressingResponseWrapper compressing = WebUtils.getNativeResponse(response, CompressingResponseWrapper.class);
+        if (compressing == null) {
+            ContentEncoding encoding = ContentEncoding.negotiate(request.getHeader("Accept-Encoding"));
+            if (encoding == null || "HEAD".equals(request.getMethod())) {
+                chain.doFilter(request, response);
+                return;
+            }
+            compressing = new CompressingResponseWrapper(response, encoding, minResponseSize, this::isCompressible);
+        }
+
+        try {
+            chain.doFilter(request, compressing);
+        } finally {
+            if (!isAsyncStarted(request)) {
+                compressing.finish();
+            }
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    private boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        MimeType type = MimeTypeUtils.parseMimeType(contentType);
+        for (MimeType mimeType : mimeTypes) {
+            if (mimeType.equalsTypeAndSubtype(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    enum ContentEncoding {
+
+        ZSTD("zstd"),
+        GZIP("gzip");
+
+        private final String token;
+
+        ContentEncoding(String token) {
+            this.token = token;
+        }
+
+        String token() {
+            return token;
+        }
+
+        // the accepted encoding with the highest q, null when the client takes neither
+        static ContentEncoding negotiate(String acceptEncoding) {
+            if (acceptEncoding == null) {
+                return null;
+            }
+            ContentEncoding best = null;
+            double bestQuality = 0;
+            for (String part : acceptEncoding.split(",")) {
+                String[] tokens = part.trim().split(";");
+                String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+                double quality = 1;
+                for (int i = 1; i < tokens.length; i++) {
+                    String parameter = tokens[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            quality = Double.parseDouble(parameter.substring(2));
+                        } catch (NumberFormatException e) {
+                            quality = 0;
+                        }
+                    }
+                }
+                for (ContentEncoding encoding : values()) {
+                    if (encoding.token.equals(coding) && (quality > bestQuality
+                            || quality == bestQuality && best != null && encoding.ordinal() < best.ordinal())) {
+                        best = encoding;
+                        bestQuality = quality;
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package net.javaguides.springboottesting.controller;
+
+import net.javaguides.springboottesting.outbox.EmployeeChangeRelay;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+// Server-Sent Events stream of employee changes (see EmployeeChangeRelay), each event's id is its
+// position. A consumer that keeps a copy connects without since, loads the full list once and then
+// applies the events; each carries the row's version, so one the load already saw is harmless.
+// Browsers' EventSource resumes by itself, other clients pass the last id they applied as since.
+@RestController
+@RequestMapping("/api/employees/changes")
+@ConditionalOnProperty(name = "employees.changes.enabled", havingValue = "true", matchIfMissing = true)
+public class EmployeeChangeController {
+
+    private EmployeeChangeRelay changeRelay;
+
+    public EmployeeChangeController(EmployeeChangeRelay changeRelay) {
+        this.changeRelay = changeRelay;
+    }
+
+    // 410 once the changes after since have been pruned, the consumer has to reload
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getChanges(@RequestParam(value = "since", required = false) Long since,
+                                 @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId){
+        Long position = lastEventId != null ? lastEventId : since;
+        if (position != null && position < changeRelay.prunedPosition()) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Changes after " + position + " are no longer retained");
+        }
+        return changeRelay.subscribe(position);
+    }
+
+}
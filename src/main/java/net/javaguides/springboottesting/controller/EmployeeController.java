@@ -1,24 +1,271 @@
 package net.javaguides.springboottesting.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import net.javaguides.springboottesting.dto.BulkOperationResult;
+import net.javaguides.springboottesting.dto.EmployeeBatchResult;
+import net.javaguides.springboottesting.dto.EmployeeBulkUpdate;
+import net.javaguides.springboottesting.dto.EmployeePage;
+import net.javaguides.springboottesting.dto.EmployeePatch;
+import net.javaguides.springboottesting.dto.EmployeeView;
 import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.search.EmployeeSearchIndex;
 import net.javaguides.springboottesting.service.EmployeeService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/employees")
 public class EmployeeController {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    // binary alternatives to JSON, picked by the Accept header; the paged listing gets them from
+    // Spring MVC's Smile and CBOR message converters, the export streams them itself
+    static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    // RFC 8742: CBOR items written back to back, the binary counterpart of NDJSON
+    static final String APPLICATION_CBOR_SEQ_VALUE = "application/cbor-seq";
+
     private EmployeeService employeeService;
 
-    public EmployeeController(EmployeeService employeeService) {
+    private EmployeeRequestExecutor requestExecutor;
+
+    private EmployeeSearchIndex searchIndex;
+
+    private ObjectMapper objectMapper;
+
+    private ObjectMapper smileMapper;
+
+    private ObjectMapper cborMapper;
+
+    private int batchChunkSize;
+
+    public EmployeeController(EmployeeService employeeService,
+                              EmployeeRequestExecutor requestExecutor,
+                              EmployeeSearchIndex searchIndex,
+                              ObjectMapper objectMapper,
+                              Jackson2ObjectMapperBuilder objectMapperBuilder,
+                              @Value("${employees.batch.chunk-size:500}") int batchChunkSize) {
         this.employeeService = employeeService;
+        this.requestExecutor = requestExecutor;
+        this.searchIndex = searchIndex;
+        this.objectMapper = objectMapper;
+        this.smileMapper = objectMapperBuilder.factory(new SmileFactory()).build();
+        this.cborMapper = objectMapperBuilder.factory(new CBORFactory()).build();
+        this.batchChunkSize = batchChunkSize;
     }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public Employee createEmployee(@RequestBody Employee employee){
-        return employeeService.saveEmployee(employee);
+    public CompletableFuture<Employee> createEmployee(@RequestBody Employee employee){
+        return requestExecutor.submit(() -> employeeService.saveEmployee(employee));
+    }
+
+    @GetMapping
+    public CompletableFuture<EmployeePage> getEmployees(@RequestParam(value = "cursor", required = false) String cursor,
+                                                        @RequestParam(value = "limit", defaultValue = "100") int limit){
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        Long afterId = decodeCursor(cursor);
+
+        return requestExecutor.submit(() -> {
+            List<EmployeeView> employees = employeeService.getEmployeesAfter(afterId, limit);
+
+            String nextCursor = employees.size() == limit ? encodeCursor(employees.get(employees.size() - 1).getId()) : null;
+            return new EmployeePage(employees, nextCursor);
+        });
+    }
+
+    // writes every employee as one NDJSON line while reading them from a database cursor,
+    // so memory use doesn't depend on the table size
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportEmployees(){
+        return export(MediaType.APPLICATION_NDJSON, objectMapper.writerFor(EmployeeView.class).withRootValueSeparator("\n"));
+    }
+
+    // the same stream as Smile values after a single header
+    @GetMapping(value = "/export", produces = APPLICATION_SMILE_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportEmployeesAsSmile(){
+        return export(MediaType.parseMediaType(APPLICATION_SMILE_VALUE), smileMapper.writerFor(EmployeeView.class));
+    }
+
+    @GetMapping(value = "/export", produces = APPLICATION_CBOR_SEQ_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportEmployeesAsCbor(){
+        return export(MediaType.parseMediaType(APPLICATION_CBOR_SEQ_VALUE), cborMapper.writerFor(EmployeeView.class));
+    }
+
+    // the content type is set explicitly, a StreamingResponseBody doesn't get it from produces;
+    // no flush per row: the servlet buffer decides when bytes go out, and with compression on a
+    // flush would also end a deflate block every row
+    private ResponseEntity<StreamingResponseBody> export(MediaType contentType, ObjectWriter objectWriter) {
+        return ResponseEntity.ok().contentType(contentType).body(out -> {
+            try (SequenceWriter writer = objectWriter.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE).writeValues(out)) {
+                employeeService.exportEmployees(employee -> {
+                    try {
+                        writer.write(employee);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        });
+    }
+
+    // type-ahead search, answered from memory without touching the database
+    @GetMapping("/search")
+    public List<EmployeeView> searchEmployees(@RequestParam("q") String query,
+                                          @RequestParam(value = "limit", defaultValue = "10") int limit){
+        if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_SEARCH_RESULTS);
+        }
+        return searchIndex.search(query, limit);
+    }
+
+    // minVersion: the version a client got back from its own write, older cached copies are skipped
+    @GetMapping("{id}")
+    public CompletableFuture<ResponseEntity<EmployeeView>> getEmployeeById(@PathVariable("id") long employeeId,
+                                                                           @RequestParam(value = "minVersion", defaultValue = "0") long minVersion){
+        return requestExecutor.submit(() -> employeeService.getEmployeeViewById(employeeId, minVersion)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build()));
+    }
+
+    // one UPDATE of all fields, guarded by the version when the client sends the one it read
+    @PutMapping("{id}")
+    public CompletableFuture<ResponseEntity<Employee>> updateEmployee(@PathVariable("id") long employeeId,
+                                                                      @RequestBody Employee employee){
+        if (employee.getFirstName() == null || employee.getLastName() == null || employee.getEmail() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "firstName, lastName and email are required");
+        }
+
+        return requestExecutor.submit(() -> new ResponseEntity<>(employeeService.replaceEmployee(employeeId, employee), HttpStatus.OK));
+    }
+
+    // one UPDATE of the sent fields guarded by the version, the new version comes back as ETag
+    @PatchMapping("{id}")
+    public CompletableFuture<ResponseEntity<Void>> patchEmployee(@PathVariable("id") long employeeId,
+                                                                 @RequestBody EmployeePatch patch){
+        if (patch.getVersion() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "version is required");
+        }
+
+        return requestExecutor.submit(() -> {
+            long version = employeeService.patchEmployee(employeeId, patch);
+            return ResponseEntity.noContent().eTag(String.valueOf(version)).build();
+        });
+    }
+
+    @DeleteMapping("{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public CompletableFuture<Void> deleteEmployee(@PathVariable("id") long employeeId){
+        return requestExecutor.submit(() -> {
+            employeeService.deleteEmployee(employeeId);
+            return null;
+        });
+    }
+
+    // bulk operations for offboarding, one statement per chunk of ids and no entity loading
+
+    @PostMapping("/bulk-delete")
+    public CompletableFuture<BulkOperationResult> deleteEmployees(@RequestBody List<Long> employeeIds){
+        return requestExecutor.submit(() -> new BulkOperationResult(employeeService.deleteEmployees(employeeIds)));
+    }
+
+    @DeleteMapping(params = "emailDomain")
+    public CompletableFuture<BulkOperationResult> deleteEmployeesByEmailDomain(@RequestParam("emailDomain") String emailDomain){
+        if (emailDomain.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "emailDomain must not be blank");
+        }
+        return requestExecutor.submit(() -> new BulkOperationResult(employeeService.deleteEmployeesByEmailDomain(emailDomain)));
+    }
+
+    @PatchMapping
+    public CompletableFuture<BulkOperationResult> updateEmployees(@RequestBody EmployeeBulkUpdate bulkUpdate){
+        if (bulkUpdate.getIds() == null || bulkUpdate.getChanges() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ids and changes are required");
+        }
+        return requestExecutor.submit(() -> new BulkOperationResult(
+                employeeService.updateEmployees(bulkUpdate.getIds(), bulkUpdate.getChanges())));
+    }
+
+    // accepts a JSON array or NDJSON and answers with one NDJSON result line per row,
+    // reading and writing chunk by chunk so the payload is never held in memory as a whole
+    @PostMapping(value = "/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void createEmployees(InputStream body, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+
+        try (MappingIterator<Employee> rows = objectMapper.readerFor(Employee.class).readValues(body);
+             SequenceWriter out = objectMapper.writerFor(EmployeeBatchResult.class)
+                     .withRootValueSeparator("\n")
+                     .writeValues(response.getOutputStream())) {
+
+            long offset = 0;
+            List<Employee> chunk = new ArrayList<>(batchChunkSize);
+
+            while (rows.hasNextValue()) {
+                chunk.add(rows.nextValue());
+                if (chunk.size() == batchChunkSize) {
+                    offset = writeChunk(chunk, offset, out);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                writeChunk(chunk, offset, out);
+            }
+        }
+    }
+
+    private long writeChunk(List<Employee> chunk, long offset, SequenceWriter out) throws IOException {
+        long nextOffset = offset + chunk.size();
+        for (EmployeeBatchResult result : employeeService.saveEmployees(chunk)) {
+            result.setIndex(offset + result.getIndex());
+            out.write(result);
+        }
+        out.flush();
+        chunk.clear();
+        return nextOffset;
+    }
+
+    private static String encodeCursor(Long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor, e);
+        }
     }
 
 }
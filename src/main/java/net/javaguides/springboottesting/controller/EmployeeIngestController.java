@@ -0,0 +1,40 @@
+package net.javaguides.springboottesting.controller;
+
+import net.javaguides.springboottesting.dto.EmployeeIngestStatus;
+import net.javaguides.springboottesting.ingest.EmployeeIngestPipeline;
+import net.javaguides.springboottesting.model.Employee;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+
+// asynchronous creates, only mapped with employees.ingest.enabled=true
+@RestController
+@RequestMapping("/api/employees/ingest")
+@ConditionalOnProperty(name = "employees.ingest.enabled", havingValue = "true")
+public class EmployeeIngestController {
+
+    private EmployeeIngestPipeline ingestPipeline;
+
+    public EmployeeIngestController(EmployeeIngestPipeline ingestPipeline) {
+        this.ingestPipeline = ingestPipeline;
+    }
+
+    // 202 with a tracking id, or 429 when the queue is full
+    @PostMapping
+    public ResponseEntity<EmployeeIngestStatus> ingestEmployee(@RequestBody Employee employee){
+        EmployeeIngestStatus status = ingestPipeline.submit(employee);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/employees/ingest/" + status.getTrackingId()))
+                .body(status);
+    }
+
+    @GetMapping("{trackingId}")
+    public ResponseEntity<EmployeeIngestStatus> getIngestStatus(@PathVariable("trackingId") String trackingId){
+        return ingestPipeline.getStatus(trackingId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+}
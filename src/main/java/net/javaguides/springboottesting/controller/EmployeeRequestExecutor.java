@@ -0,0 +1,81 @@
+package net.javaguides.springboottesting.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import net.javaguides.springboottesting.datasource.DataSourceRouting;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Runs the database work of EmployeeController requests.
+//
+// BLOCKING keeps the work on the Tomcat thread. ASYNC hands it to a bounded pool sized like the
+// Hikari pool (more threads would only wait for a connection) and releases the Tomcat thread, so
+// in-flight requests are limited by the queue capacity instead of the container thread count.
+// A full queue is answered with 503 right away.
+@Component
+public class EmployeeRequestExecutor implements MeterBinder {
+
+    public enum Mode {
+        BLOCKING,
+        ASYNC
+    }
+
+    private final Mode mode;
+
+    private final ThreadPoolExecutor executor;
+
+    public EmployeeRequestExecutor(@Value("${employees.execution.mode:blocking}") Mode mode,
+                                   @Value("${employees.execution.pool-size:${spring.datasource.hikari.maximum-pool-size:10}}") int poolSize,
+                                   @Value("${employees.execution.queue-capacity:1000}") int queueCapacity) {
+        this.mode = mode;
+        this.executor = mode == Mode.ASYNC
+                ? new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("employee-request-"))
+                : null;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(work.get());
+        }
+        try {
+            // a request pinned to the primary datasource stays pinned on the pool thread
+            return CompletableFuture.supplyAsync(DataSourceRouting.propagate(work), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(
+                    new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many requests in flight", e));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (executor != null) {
+            new ExecutorServiceMetrics(executor, "employee.requests", Tags.empty()).bindTo(registry);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+}
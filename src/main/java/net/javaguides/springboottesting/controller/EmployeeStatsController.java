@@ -0,0 +1,43 @@
+package net.javaguides.springboottesting.controller;
+
+import net.javaguides.springboottesting.analytics.EmployeeColumnStore;
+import net.javaguides.springboottesting.dto.EmployeeStats;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+// Group-by counts over all employees, answered from EmployeeColumnStore without touching the database.
+@RestController
+@RequestMapping("/api/employees/stats")
+public class EmployeeStatsController {
+
+    private static final int MAX_GROUPS = 1000;
+
+    private static final Map<String, EmployeeColumnStore.Column> COLUMNS = Map.of(
+            "firstName", EmployeeColumnStore.Column.FIRST_NAME,
+            "lastName", EmployeeColumnStore.Column.LAST_NAME,
+            "emailDomain", EmployeeColumnStore.Column.EMAIL_DOMAIN);
+
+    private EmployeeColumnStore columnStore;
+
+    public EmployeeStatsController(EmployeeColumnStore columnStore) {
+        this.columnStore = columnStore;
+    }
+
+    // by: firstName, lastName or emailDomain; limit: how many of the most frequent values to list
+    @GetMapping
+    public EmployeeStats getStats(@RequestParam("by") String by,
+                                  @RequestParam(value = "limit", defaultValue = "10") int limit){
+        EmployeeColumnStore.Column column = COLUMNS.get(by);
+        if (column == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "by must be one of " + COLUMNS.keySet());
+        }
+        if (limit < 1 || limit > MAX_GROUPS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_GROUPS);
+        }
+        return columnStore.stats(column, limit);
+    }
+
+}
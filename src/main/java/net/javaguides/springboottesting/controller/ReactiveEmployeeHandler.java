@@ -0,0 +1,95 @@
+package net.javaguides.springboottesting.controller;
+
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.service.ReactiveEmployeeService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+
+// WebFlux routes of the reactive stack, served by ReactiveEmployeeServer on employees.reactive.port.
+// The CRUD endpoints answer like EmployeeController's; exceptions map to statuses through their
+// @ResponseStatus. GET /api/employees streams every employee instead of returning a page, as NDJSON
+// when the client accepts it and as one JSON array otherwise, written as the client reads it.
+@Component
+@ConditionalOnProperty(name = "employees.reactive.enabled", havingValue = "true")
+public class ReactiveEmployeeHandler {
+
+    private ReactiveEmployeeService employeeService;
+
+    public ReactiveEmployeeHandler(ReactiveEmployeeService employeeService) {
+        this.employeeService = employeeService;
+    }
+
+    public RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route()
+                .path("/api/employees", employees -> employees
+                        .GET("", this::getEmployees)
+                        .POST("", this::createEmployee)
+                        .GET("/{id}", this::getEmployeeById)
+                        .PUT("/{id}", this::updateEmployee)
+                        .DELETE("/{id}", this::deleteEmployee))
+                .build();
+    }
+
+    private Mono<ServerResponse> getEmployees(ServerRequest request) {
+        Long afterId = request.queryParam("afterId").map(value -> parseId(value, "afterId")).orElse(null);
+        MediaType contentType = request.headers().accept().stream().anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype)
+                ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+
+        return ServerResponse.ok()
+                .contentType(contentType)
+                .body(employeeService.getEmployees(afterId), EmployeeView.class);
+    }
+
+    private Mono<ServerResponse> createEmployee(ServerRequest request) {
+        return body(request)
+                .flatMap(employeeService::saveEmployee)
+                .flatMap(employee -> ServerResponse.status(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON).bodyValue(employee));
+    }
+
+    private Mono<ServerResponse> getEmployeeById(ServerRequest request) {
+        return employeeService.getEmployeeViewById(pathId(request))
+                .flatMap(employee -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(employee))
+                .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    // when the client sends the version it read, the update is checked against it
+    private Mono<ServerResponse> updateEmployee(ServerRequest request) {
+        long employeeId = pathId(request);
+        return body(request)
+                .flatMap(employee -> employeeService.updateEmployee(employee.toBuilder().id(employeeId).build()))
+                .flatMap(employee -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(employee));
+    }
+
+    private Mono<ServerResponse> deleteEmployee(ServerRequest request) {
+        return employeeService.deleteEmployee(pathId(request))
+                .then(ServerResponse.noContent().build());
+    }
+
+    private static Mono<Employee> body(ServerRequest request) {
+        return request.bodyToMono(Employee.class)
+                .switchIfEmpty(Mono.error(() -> new ServerWebInputException("Request body is missing")));
+    }
+
+    private static long pathId(ServerRequest request) {
+        return parseId(request.pathVariable("id"), "id");
+    }
+
+    private static long parseId(String value, String name) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, name + " must be a number", e);
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package net.javaguides.springboottesting.datasource;
+
+import java.util.function.Supplier;
+
+// Pins the current thread to the primary datasource, so reads in readOnly transactions that
+// must see this client's own writes don't go to a replica that hasn't caught up yet.
+// Without replicas everything runs on the primary anyway and the pin changes nothing.
+public final class DataSourceRouting {
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    private DataSourceRouting() {
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return Boolean.TRUE.equals(PINNED.get());
+    }
+
+    // returns the previous state for restore()
+    public static boolean pinToPrimary() {
+        boolean previous = isPinnedToPrimary();
+        PINNED.set(Boolean.TRUE);
+        return previous;
+    }
+
+    public static void restore(boolean previous) {
+        if (previous) {
+            PINNED.set(Boolean.TRUE);
+        } else {
+            PINNED.remove();
+        }
+    }
+
+    public static <T> T onPrimary(Supplier<T> work) {
+        boolean previous = pinToPrimary();
+        try {
+            return work.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    // carries the caller's pin over to work that runs on another thread
+    public static <T> Supplier<T> propagate(Supplier<T> work) {
+        return isPinnedToPrimary() ? () -> onPrimary(work) : work;
+    }
+
+}
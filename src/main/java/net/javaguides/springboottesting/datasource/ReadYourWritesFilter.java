@@ -0,0 +1,78 @@
+package net.javaguides.springboottesting.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+
+// Read-your-writes sessions: a client that sent a write gets a cookie, and its requests stay on
+// the primary until the cookie runs out after read-your-writes-window, which should be longer
+// than the replicas' usual lag. Writes themselves run pinned too, including the reads they do.
+@Component
+@ConditionalOnProperty(name = "employees.datasource.replicas.urls")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE = "employees-primary-until";
+
+    private final Duration window;
+
+    public ReadYourWritesFilter(@Value("${employees.datasource.read-your-writes-window:5s}") Duration window) {
+        this.window = window;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        boolean write = !isSafe(request.getMethod());
+        if (write) {
+            // set before the chain runs, async requests commit the response on another thread
+            Cookie cookie = new Cookie(COOKIE, String.valueOf(now + window.toMillis()));
+            cookie.setMaxAge((int) Math.max(1, window.getSeconds()));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+        }
+
+        if (!write && pinnedUntil(request) <= now) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        boolean previous = DataSourceRouting.pinToPrimary();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            DataSourceRouting.restore(previous);
+        }
+    }
+
+    private static boolean isSafe(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+
+    private static long pinnedUntil(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return 0;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+}
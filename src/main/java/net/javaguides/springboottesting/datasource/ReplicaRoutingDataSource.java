@@ -0,0 +1,200 @@
+package net.javaguides.springboottesting.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Sends connections for readOnly transactions to the replicas, round robin over the ones that
+// passed their last health check, and everything else to the primary: writes, reads outside a
+// readOnly transaction and threads pinned with DataSourceRouting.
+//
+// The decision is made when the connection is fetched, so this must sit behind a
+// LazyConnectionDataSourceProxy: the transaction manager asks for a connection before it marks
+// the transaction readOnly, the proxy only fetches one at the first statement.
+//
+// A replica that fails to hand out a connection is taken out of rotation right away and the
+// read falls back to the primary. The health check puts it back once it answers again.
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements MeterBinder, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Duration healthCheckInterval;
+
+    private final ScheduledExecutorService healthChecks =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("replica-health-"));
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Duration healthCheckInterval) {
+        this.primary = primary;
+        this.healthCheckInterval = healthCheckInterval;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicas.forEach((name, dataSource) -> {
+            this.replicas.add(new Replica(name, dataSource));
+            targets.put(name, dataSource);
+        });
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        long interval = healthCheckInterval.toMillis();
+        healthChecks.scheduleWithFixedDelay(this::checkReplicas, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || DataSourceRouting.isPinnedToPrimary()
+                || replicas.isEmpty()) {
+            return PRIMARY;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica.name;
+            }
+        }
+        // no replica available, the primary serves the reads too
+        return PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DataSource target = determineTargetDataSource();
+        try {
+            return target.getConnection();
+        } catch (SQLException e) {
+            if (target == primary) {
+                throw e;
+            }
+            markDown(target, e);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        DataSource target = determineTargetDataSource();
+        try {
+            return target.getConnection(username, password);
+        } catch (SQLException e) {
+            if (target == primary) {
+                throw e;
+            }
+            markDown(target, e);
+            return primary.getConnection(username, password);
+        }
+    }
+
+    private void markDown(DataSource dataSource, SQLException cause) {
+        for (Replica replica : replicas) {
+            if (replica.dataSource == dataSource && replica.healthy) {
+                replica.healthy = false;
+                log.warn("Replica {} taken out of rotation", replica.name, cause);
+            }
+        }
+    }
+
+    void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                healthy = connection.isValid(1);
+            } catch (SQLException e) {
+                healthy = false;
+            }
+            if (healthy != replica.healthy) {
+                replica.healthy = healthy;
+                if (healthy) {
+                    log.info("Replica {} back in rotation", replica.name);
+                } else {
+                    log.warn("Replica {} failed its health check, taken out of rotation", replica.name);
+                }
+            }
+        }
+    }
+
+    int healthyReplicas() {
+        int healthy = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("employees.datasource.replicas.healthy", this, ReplicaRoutingDataSource::healthyReplicas)
+                .description("Replicas in rotation for readOnly transactions")
+                .register(registry);
+        // Spring Boot binds the pool metrics of datasource beans only, the replica pools aren't beans
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof HikariDataSource
+                    && ((HikariDataSource) replica.dataSource).getMetricsTrackerFactory() == null) {
+                ((HikariDataSource) replica.dataSource).setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        healthChecks.shutdownNow();
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof Closeable) {
+                ((Closeable) replica.dataSource).close();
+            }
+        }
+    }
+
+    private static class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        private volatile boolean healthy = true;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+}
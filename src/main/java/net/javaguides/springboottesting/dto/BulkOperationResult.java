@@ -0,0 +1,14 @@
+package net.javaguides.springboottesting.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BulkOperationResult {
+
+    // number of rows deleted or updated
+    private int affected;
+}
@@ -0,0 +1,26 @@
+package net.javaguides.springboottesting.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class EmployeeBatchResult {
+
+    public enum Status {
+        CREATED,
+        DUPLICATE,
+        INVALID
+    }
+
+    // position of the row in the request body
+    private long index;
+
+    private Long id;
+
+    private String email;
+
+    private Status status;
+}
@@ -0,0 +1,18 @@
+package net.javaguides.springboottesting.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+// body of PATCH /api/employees, applies the same changes to every listed employee
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class EmployeeBulkUpdate {
+
+    private List<Long> ids;
+
+    private EmployeePatch changes;
+}
@@ -0,0 +1,30 @@
+package net.javaguides.springboottesting.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+// One entry of the change stream on GET /api/employees/changes.
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EmployeeChange {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    // offset in the stream, increasing without gaps; a consumer resumes after the last one it applied
+    private long position;
+
+    private Type type;
+
+    private Long id;
+
+    // the row as written by this change, null for deletes
+    private EmployeeView employee;
+}
@@ -0,0 +1,31 @@
+package net.javaguides.springboottesting.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder(toBuilder = true)
+public class EmployeeIngestStatus {
+
+    public enum State {
+        QUEUED,
+        CREATED,
+        DUPLICATE,
+        INVALID,
+        FAILED
+    }
+
+    private String trackingId;
+
+    private State state;
+
+    // set once the employee was created
+    private Long id;
+
+    private String email;
+
+    // reason for FAILED
+    private String message;
+}
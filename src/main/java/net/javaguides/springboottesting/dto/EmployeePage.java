@@ -0,0 +1,18 @@
+package net.javaguides.springboottesting.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class EmployeePage {
+
+    private List<EmployeeView> content;
+
+    // opaque token for the next page, null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,21 @@
+package net.javaguides.springboottesting.dto;
+
+import lombok.*;
+
+// body of PATCH /api/employees/{id}, null fields are left unchanged
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class EmployeePatch {
+
+    private String firstName;
+
+    private String lastName;
+
+    private String email;
+
+    // version the client last saw, the update only applies if it is still current
+    private Long version;
+}
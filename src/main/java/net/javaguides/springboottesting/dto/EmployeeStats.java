@@ -0,0 +1,40 @@
+package net.javaguides.springboottesting.dto;
+
+import lombok.Value;
+
+import java.util.List;
+
+// Group-by counts over one attribute of all employees (see EmployeeColumnStore).
+@Value
+public class EmployeeStats {
+
+    int employees;
+
+    // values with at least one employee
+    int distinct;
+
+    // the most frequent values, most frequent first
+    List<Group> groups;
+
+    // how many distinct values occur minCount to maxCount times, in power of two ranges
+    List<Frequency> frequencies;
+
+    @Value
+    public static class Group {
+
+        String value;
+
+        int count;
+    }
+
+    @Value
+    public static class Frequency {
+
+        int minCount;
+
+        int maxCount;
+
+        int values;
+    }
+
+}
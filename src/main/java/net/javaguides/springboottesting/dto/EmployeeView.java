@@ -0,0 +1,37 @@
+package net.javaguides.springboottesting.dto;
+
+import lombok.Value;
+import net.javaguides.springboottesting.model.Employee;
+
+// Read-only employee row for responses. Filled by JPQL constructor expressions, so reads that
+// only serialize employees skip entity hydration, dirty-checking snapshots and the persistence
+// context. Immutable, so the cache can hand out the same instance to every reader.
+@Value
+public class EmployeeView {
+
+    Long id;
+
+    String firstName;
+
+    String lastName;
+
+    String email;
+
+    Long version;
+
+    public static EmployeeView of(Employee employee) {
+        return new EmployeeView(employee.getId(), employee.getFirstName(), employee.getLastName(),
+                employee.getEmail(), employee.getVersion());
+    }
+
+    public Employee toEmployee() {
+        return Employee.builder()
+                .id(id)
+                .firstName(firstName)
+                .lastName(lastName)
+                .email(email)
+                .version(version)
+                .build();
+    }
+
+}
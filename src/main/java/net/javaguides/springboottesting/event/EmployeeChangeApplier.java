@@ -0,0 +1,52 @@
+package net.javaguides.springboottesting.event;
+
+import net.javaguides.springboottesting.datasource.DataSourceRouting;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeStore;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Applies EmployeeChangedEvents to an in-memory copy of the table, like EmployeeSearchIndex and
+// EmployeeColumnStore: SAVED rows are put as written, MODIFIED ids are read again and put, or
+// removed if they are gone, DELETED ids are removed.
+//
+// Writes publish their event inside the transaction, so the copies call this from a
+// @TransactionalEventListener(fallbackExecution = true) and only see committed changes.
+@Component
+public class EmployeeChangeApplier {
+
+    private final EmployeeStore employeeRepository;
+
+    public EmployeeChangeApplier(EmployeeStore employeeRepository) {
+        this.employeeRepository = employeeRepository;
+    }
+
+    public void apply(EmployeeChangedEvent event, Consumer<Employee> put, Consumer<Long> remove) {
+        switch (event.getType()) {
+            case SAVED:
+                event.getEmployees().forEach(put);
+                break;
+            case MODIFIED:
+                reload(event.getIds(), put, remove);
+                break;
+            case DELETED:
+                event.getIds().forEach(remove);
+                break;
+        }
+    }
+
+    // from the primary, a replica may not have the change yet and a missing row would be dropped
+    private void reload(Collection<Long> ids, Consumer<Employee> put, Consumer<Long> remove) {
+        Set<Long> missing = new HashSet<>(ids);
+        for (Employee employee : DataSourceRouting.onPrimary(() -> employeeRepository.findAllById(ids))) {
+            missing.remove(employee.getId());
+            put.accept(employee);
+        }
+        missing.forEach(remove);
+    }
+
+}
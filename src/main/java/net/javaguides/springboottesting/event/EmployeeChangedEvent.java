@@ -0,0 +1,56 @@
+package net.javaguides.springboottesting.event;
+
+import lombok.Getter;
+import net.javaguides.springboottesting.model.Employee;
+
+import java.util.Collection;
+import java.util.List;
+
+// Published by EmployeeService after a write went through.
+//
+// SAVED carries the rows as they were written. MODIFIED only carries ids, for set-based updates
+// that never load the rows, so listeners that need the new values have to read them again.
+//
+// recorded events come from ReactiveEmployeeService after commit: their outbox rows were written
+// in the R2DBC transaction already, so EmployeeOutbox skips them.
+@Getter
+public class EmployeeChangedEvent {
+
+    public enum Type {
+        SAVED,
+        MODIFIED,
+        DELETED
+    }
+
+    private final Type type;
+
+    private final List<Employee> employees;
+
+    private final Collection<Long> ids;
+
+    private final boolean recorded;
+
+    private EmployeeChangedEvent(Type type, List<Employee> employees, Collection<Long> ids, boolean recorded) {
+        this.type = type;
+        this.employees = employees;
+        this.ids = ids;
+        this.recorded = recorded;
+    }
+
+    public static EmployeeChangedEvent saved(List<Employee> employees) {
+        return new EmployeeChangedEvent(Type.SAVED, employees, List.of(), false);
+    }
+
+    public static EmployeeChangedEvent modified(Collection<Long> ids) {
+        return new EmployeeChangedEvent(Type.MODIFIED, List.of(), ids, false);
+    }
+
+    public static EmployeeChangedEvent deleted(Collection<Long> ids) {
+        return new EmployeeChangedEvent(Type.DELETED, List.of(), ids, false);
+    }
+
+    public EmployeeChangedEvent recorded() {
+        return new EmployeeChangedEvent(type, employees, ids, true);
+    }
+
+}
@@ -0,0 +1,209 @@
+package net.javaguides.springboottesting.ingest;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.javaguides.springboottesting.dto.EmployeeBatchResult;
+import net.javaguides.springboottesting.dto.EmployeeIngestStatus;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind create path. Accepted employees go into a bounded queue and one writer thread
+// stores them in batches through EmployeeService.saveEmployees, which checks all emails of a
+// batch with one query, drops duplicates within the batch and inserts with JDBC batching in a
+// single transaction - one commit per batch instead of one per employee.
+//
+// A batch is written once it reaches flush-size or flush-interval after its first employee,
+// whichever comes first. A full queue is answered with 429 right away. Outcomes are kept for
+// status-ttl so clients can poll them by tracking id.
+@Component
+@ConditionalOnProperty(name = "employees.ingest.enabled", havingValue = "true")
+public class EmployeeIngestPipeline implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(EmployeeIngestPipeline.class);
+
+    private final EmployeeService employeeService;
+
+    private final BlockingQueue<Submission> queue;
+
+    private final Cache<String, EmployeeIngestStatus> statuses;
+
+    private final int flushSize;
+
+    private final Duration flushInterval;
+
+    private final Thread writer = new Thread(this::run, "employee-ingest-writer");
+
+    private volatile boolean running = true;
+
+    private Counter rejected;
+
+    public EmployeeIngestPipeline(EmployeeService employeeService,
+                                  @Value("${employees.ingest.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${employees.ingest.flush-size:500}") int flushSize,
+                                  @Value("${employees.ingest.flush-interval:50ms}") Duration flushInterval,
+                                  @Value("${employees.ingest.status-ttl:10m}") Duration statusTtl,
+                                  @Value("${employees.ingest.status-maximum-size:1000000}") long statusMaximumSize) {
+        this.employeeService = employeeService;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.statuses = Caffeine.newBuilder()
+                .maximumSize(statusMaximumSize)
+                .expireAfterWrite(statusTtl)
+                .build();
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public EmployeeIngestStatus submit(Employee employee) {
+        EmployeeIngestStatus status = EmployeeIngestStatus.builder()
+                .trackingId(UUID.randomUUID().toString())
+                .state(EmployeeIngestStatus.State.QUEUED)
+                .email(employee.getEmail())
+                .build();
+
+        // the status goes in first, the writer may be done before offer() returns
+        statuses.put(status.getTrackingId(), status);
+        if (!running || !queue.offer(new Submission(status.getTrackingId(), employee))) {
+            statuses.invalidate(status.getTrackingId());
+            if (rejected != null) {
+                rejected.increment();
+            }
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Ingest queue is full");
+        }
+        return status;
+    }
+
+    public Optional<EmployeeIngestStatus> getStatus(String trackingId) {
+        return Optional.ofNullable(statuses.getIfPresent(trackingId));
+    }
+
+    private void run() {
+        List<Submission> batch = new ArrayList<>(flushSize);
+        // keeps going after stop() until everything accepted so far is written
+        while (running || !queue.isEmpty()) {
+            try {
+                Submission first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + flushInterval.toNanos();
+                while (batch.size() < flushSize) {
+                    queue.drainTo(batch, flushSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= flushSize || remaining <= 0) {
+                        break;
+                    }
+                    Submission next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // only stop() interrupts, and only after the queue had time to drain
+                flush(batch);
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Submission> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Employee> employees = new ArrayList<>(batch.size());
+        for (Submission submission : batch) {
+            employees.add(submission.employee);
+        }
+
+        try {
+            List<EmployeeBatchResult> results = employeeService.saveEmployees(employees);
+            for (int i = 0; i < batch.size(); i++) {
+                EmployeeBatchResult result = results.get(i);
+                statuses.put(batch.get(i).trackingId, EmployeeIngestStatus.builder()
+                        .trackingId(batch.get(i).trackingId)
+                        .state(EmployeeIngestStatus.State.valueOf(result.getStatus().name()))
+                        .id(result.getId())
+                        .email(result.getEmail())
+                        .build());
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to write a batch of {} employees", batch.size(), e);
+            for (Submission submission : batch) {
+                statuses.put(submission.trackingId, EmployeeIngestStatus.builder()
+                        .trackingId(submission.trackingId)
+                        .state(EmployeeIngestStatus.State.FAILED)
+                        .email(submission.employee.getEmail())
+                        .message(e.getMessage())
+                        .build());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        if (writer.isAlive()) {
+            writer.interrupt();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("employees.ingest.queue.size", queue, BlockingQueue::size)
+                .description("Employees accepted but not written yet")
+                .register(registry);
+        Gauge.builder("employees.ingest.queue.remaining", queue, BlockingQueue::remainingCapacity)
+                .register(registry);
+        rejected = Counter.builder("employees.ingest.rejected")
+                .description("Creates answered with 429 because the queue was full")
+                .register(registry);
+    }
+
+    private static class Submission {
+
+        private final String trackingId;
+
+        private final Employee employee;
+
+        private Submission(String trackingId, Employee employee) {
+            this.trackingId = trackingId;
+            this.employee = employee;
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package net.javaguides.springboottesting.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+// Times every EmployeeService call and records how many SQL statements it ran, so a query
+// regression (an extra SELECT before an insert, an N+1 loop) shows up as a higher count.
+// Meters are resolved once per method; recording a call doesn't build any tags.
+@Aspect
+@Component
+public class EmployeeServiceMetrics {
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<Method, MethodMeters> meters = new ConcurrentHashMap<>();
+
+    public EmployeeServiceMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("execution(* net.javaguides.springboottesting.service.EmployeeService.*(..))")
+    public Object record(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodMeters methodMeters = meters.computeIfAbsent(((MethodSignature) joinPoint.getSignature()).getMethod(), this::register);
+
+        long statements = SqlStatementCounter.current();
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            methodMeters.errors.increment();
+            throw e;
+        } finally {
+            methodMeters.timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            methodMeters.statements.record(SqlStatementCounter.current() - statements);
+        }
+    }
+
+    private MethodMeters register(Method method) {
+        return new MethodMeters(
+                Timer.builder("employees.service")
+                        .tag("method", method.getName())
+                        .register(registry),
+                DistributionSummary.builder("employees.service.sql.statements")
+                        .tag("method", method.getName())
+                        .register(registry),
+                Counter.builder("employees.service.errors")
+                        .tag("method", method.getName())
+                        .register(registry));
+    }
+
+    private static final class MethodMeters {
+
+        private final Timer timer;
+
+        private final DistributionSummary statements;
+
+        private final Counter errors;
+
+        private MethodMeters(Timer timer, DistributionSummary statements, Counter errors) {
+            this.timer = timer;
+            this.statements = statements;
+            this.errors = errors;
+        }
+    }
+
+}
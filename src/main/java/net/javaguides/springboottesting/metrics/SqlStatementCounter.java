@@ -0,0 +1,33 @@
+package net.javaguides.springboottesting.metrics;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Counts every statement Hibernate prepares on the current thread. Readers take current()
+// before and after a unit of work; the counter itself is a per-thread long[1], so counting
+// doesn't allocate once a thread has seen its first statement.
+@Component
+public class SqlStatementCounter implements StatementInspector, HibernatePropertiesCustomizer {
+
+    private static final ThreadLocal<long[]> statements = ThreadLocal.withInitial(() -> new long[1]);
+
+    public static long current() {
+        return statements.get()[0];
+    }
+
+    @Override
+    public String inspect(String sql) {
+        statements.get()[0]++;
+        return sql;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+}
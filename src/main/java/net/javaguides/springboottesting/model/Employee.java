@@ -1,6 +1,9 @@
 package net.javaguides.springboottesting.model;
 
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 
@@ -8,13 +11,27 @@ import javax.persistence.*;
 @Setter
 @AllArgsConstructor
 @NoArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 
 @Entity
-@Table(name = "employees")
+@DynamicUpdate
+@Table(name = "employees",
+        uniqueConstraints = @UniqueConstraint(name = Employee.EMAIL_CONSTRAINT, columnNames = "email"),
+        indexes = @Index(name = "idx_employees_last_name_first_name", columnList = "last_name, first_name"))
 public class Employee {
+
+    public static final String EMAIL_CONSTRAINT = "uk_employees_email";
+
+    // sequence with a pooled-lo optimizer instead of IDENTITY, so Hibernate can batch the inserts:
+    // every value v of employees_seq stands for the ids v .. v + 49. Unlike the pooled optimizer it
+    // has no special case for the first value, so ReactiveEmployeeRepository can take its blocks
+    // from the same sequence without overlapping Hibernate's
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employees_seq")
+    @GenericGenerator(name = "employees_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "employees_seq"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")})
     private Long id;
 
     @Column(name = "first_name", nullable = false)
@@ -25,4 +42,8 @@ public class Employee {
 
     @Column(nullable = false)
     private String email;
+
+    // optimistic locking, every update is guarded by "where version = ?"
+    @Version
+    private Long version;
 }
@@ -0,0 +1,304 @@
+package net.javaguides.springboottesting.outbox;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.javaguides.springboottesting.dto.EmployeeChange;
+import net.javaguides.springboottesting.event.EmployeeChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Publishes the outbox in order and streams it to the subscribers of GET /api/employees/changes.
+//
+// One relay thread per instance numbers the committed outbox rows (EmployeeOutbox.publishPending)
+// and then reads everything published since its last pass, by any instance, into a ring of the
+// most recent changes. It runs every poll-interval, and right after a local write commits.
+//
+// Subscribers are served on a small delivery pool, each by at most one task at a time, so a slow
+// client only holds up itself. A subscriber that is caught up reads from the ring; one that is
+// further behind, or resumed from an old position, pages through the table until it catches up.
+//
+// Changes are deleted once they have been published for longer than retention. The relay only
+// remembers when it saw each position in memory, so after a restart the first prune waits one
+// retention period.
+@Component
+@ConditionalOnProperty(name = "employees.changes.enabled", havingValue = "true", matchIfMissing = true)
+public class EmployeeChangeRelay implements MeterBinder, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(EmployeeChangeRelay.class);
+
+    // changes numbered per transaction, and per read of the table
+    static final int BATCH_SIZE = 500;
+
+    // most recent changes kept in memory for subscribers that are caught up
+    static final int RECENT_CHANGES = 8192;
+
+    private final EmployeeOutbox outbox;
+
+    private final Duration pollInterval;
+
+    private final Duration retention;
+
+    private final Duration streamTimeout;
+
+    private final ScheduledExecutorService relay =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("employee-changes-relay-"));
+
+    private final ExecutorService delivery;
+
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    private final AtomicReferenceArray<EmployeeChange> recent = new AtomicReferenceArray<>(RECENT_CHANGES);
+
+    // last position read into recent
+    private volatile long head;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    // (time, last position) per pass, oldest first, only touched by the relay thread
+    private final Deque<long[]> checkpoints = new ArrayDeque<>();
+
+    private final AtomicLong published = new AtomicLong();
+
+    private final AtomicLong delivered = new AtomicLong();
+
+    public EmployeeChangeRelay(EmployeeOutbox outbox,
+                               @Value("${employees.changes.poll-interval:500ms}") Duration pollInterval,
+                               @Value("${employees.changes.retention:7d}") Duration retention,
+                               @Value("${employees.changes.stream-timeout:5m}") Duration streamTimeout,
+                               @Value("${employees.changes.delivery-threads:4}") int deliveryThreads) {
+        this.outbox = outbox;
+        this.pollInterval = pollInterval;
+        this.retention = retention;
+        this.streamTimeout = streamTimeout;
+        this.delivery = Executors.newFixedThreadPool(deliveryThreads, new CustomizableThreadFactory("employee-changes-delivery-"));
+        this.head = outbox.lastPosition();
+        relay.scheduleWithFixedDelay(this::relay, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // the outbox rows of this write are committed now, no need to wait for the next poll
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeeChanged(EmployeeChangedEvent event) {
+        if (wakeUpPending.compareAndSet(false, true)) {
+            relay.execute(this::relay);
+        }
+    }
+
+    // streams the changes after the given position, null for only the ones published from now on
+    public SseEmitter subscribe(Long afterPosition) {
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter, afterPosition == null ? head : afterPosition);
+        emitter.onTimeout(() -> {
+            // a stream that ends normally makes EventSource reconnect with Last-Event-ID
+            subscriber.close();
+            emitter.complete();
+        });
+        emitter.onCompletion(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        subscribers.add(subscriber);
+        try {
+            // sends the headers right away, and tells a consumer without a position where it starts
+            subscriber.send(SseEmitter.event().comment("position " + subscriber.position));
+        } catch (IOException e) {
+            subscriber.close();
+            emitter.completeWithError(e);
+            return emitter;
+        }
+        subscriber.signal();
+        return emitter;
+    }
+
+    public long prunedPosition() {
+        return outbox.prunedPosition();
+    }
+
+    private void relay() {
+        wakeUpPending.set(false);
+        try {
+            int numbered;
+            do {
+                numbered = outbox.publishPending(BATCH_SIZE);
+                published.addAndGet(numbered);
+            } while (numbered == BATCH_SIZE);
+            tail();
+            prune();
+        } catch (RuntimeException e) {
+            log.warn("Failed to relay employee changes, retrying in {}", pollInterval, e);
+        }
+    }
+
+    private void tail() {
+        long position = head;
+        List<EmployeeChange> changes;
+        do {
+            changes = outbox.read(position, BATCH_SIZE);
+            for (EmployeeChange change : changes) {
+                recent.set(slot(change.getPosition()), change);
+                position = change.getPosition();
+            }
+        } while (changes.size() == BATCH_SIZE);
+
+        if (position > head) {
+            head = position;
+            subscribers.forEach(Subscriber::signal);
+        }
+    }
+
+    private void prune() {
+        long now = System.nanoTime();
+        if (checkpoints.isEmpty() || now - checkpoints.peekLast()[0] >= TimeUnit.MINUTES.toNanos(1)) {
+            checkpoints.addLast(new long[]{now, head});
+        }
+        long[] expired = null;
+        while (!checkpoints.isEmpty() && now - checkpoints.peekFirst()[0] >= retention.toNanos()) {
+            expired = checkpoints.pollFirst();
+        }
+        if (expired != null) {
+            outbox.prune(expired[1]);
+        }
+    }
+
+    // the next page after position, from memory when the ring still holds all of it
+    private List<EmployeeChange> changesAfter(long position) {
+        long last = head;
+        List<EmployeeChange> changes = new ArrayList<>();
+        for (long next = position + 1; next <= last && changes.size() < BATCH_SIZE; next++) {
+            EmployeeChange change = recent.get(slot(next));
+            if (change == null || change.getPosition() != next) {
+                return outbox.read(position, BATCH_SIZE);
+            }
+            changes.add(change);
+        }
+        return changes;
+    }
+
+    private static int slot(long position) {
+        return (int) (position % RECENT_CHANGES);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("employees.changes.published", published, AtomicLong::get)
+                .description("Outbox changes numbered by this instance's relay")
+                .register(registry);
+        FunctionCounter.builder("employees.changes.delivered", delivered, AtomicLong::get)
+                .description("Change events sent to subscribers")
+                .register(registry);
+        Gauge.builder("employees.changes.subscribers", subscribers, Set::size)
+                .description("Open change streams")
+                .register(registry);
+        Gauge.builder("employees.changes.position", this, relay -> relay.head)
+                .description("Last published position seen by this instance")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        relay.shutdownNow();
+        delivery.shutdownNow();
+        subscribers.forEach(subscriber -> {
+            subscriber.close();
+            subscriber.emitter.complete();
+        });
+    }
+
+    private class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // last position sent, only touched by the task that holds scheduled
+        private volatile long position;
+
+        // guarded by this: once the container reports the end of the request it recycles the
+        // response, and SseEmitter would still write to it
+        private boolean closed;
+
+        Subscriber(SseEmitter emitter, long position) {
+            this.emitter = emitter;
+            this.position = position;
+        }
+
+        void signal() {
+            if (position < head && scheduled.compareAndSet(false, true)) {
+                delivery.execute(this::deliver);
+            }
+        }
+
+        synchronized void send(SseEmitter.SseEventBuilder event) throws IOException {
+            if (closed) {
+                throw new IOException("Change stream already closed");
+            }
+            emitter.send(event);
+        }
+
+        synchronized void close() {
+            closed = true;
+            subscribers.remove(this);
+        }
+
+        private void deliver() {
+            try {
+                while (position < head) {
+                    List<EmployeeChange> changes = changesAfter(position);
+                    if (changes.isEmpty()) {
+                        break;
+                    }
+                    if (changes.get(0).getPosition() != position + 1) {
+                        // pruned while this subscriber was behind, the reconnect gets a 410
+                        close();
+                        emitter.complete();
+                        return;
+                    }
+                    for (EmployeeChange change : changes) {
+                        send(SseEmitter.event()
+                                .id(String.valueOf(change.getPosition()))
+                                .name(change.getType().name().toLowerCase(Locale.ROOT))
+                                .data(change, MediaType.APPLICATION_JSON));
+                        position = change.getPosition();
+                        delivered.incrementAndGet();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // the client went away or the stream timed out
+                close();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Failed to read employee changes after {}, retrying on the next publish", position, e);
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            // a publish that signalled while this task was finishing
+            signal();
+        }
+    }
+
+}
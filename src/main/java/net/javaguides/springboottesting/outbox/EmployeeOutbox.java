@@ -0,0 +1,166 @@
+package net.javaguides.springboottesting.outbox;
+
+import net.javaguides.springboottesting.dto.EmployeeChange;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.event.EmployeeChangedEvent;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Transactional outbox for employee writes.
+//
+// Every EmployeeChangedEvent is appended to employee_changes in the transaction that published it,
+// so a change is recorded if and only if the write commits. The rows are written with JDBC batches
+// after flushing the persistence context: the flush makes the new versions visible and takes the
+// row locks first, so two writes to the same employee always append in the order they commit.
+//
+// Appended rows have no position yet. The relay (EmployeeChangeRelay) numbers committed rows under
+// a lock on the single employee_change_relay row, so positions are handed out by one relay at a
+// time, in order, without gaps, and a reader never sees position n + 1 before n.
+@Component
+@ConditionalOnProperty(name = "employees.changes.enabled", havingValue = "true", matchIfMissing = true)
+public class EmployeeOutbox {
+
+    private static final String INSERT = "insert into employee_changes (type, employee_id, first_name, last_name, email, version) values (?, ?, ?, ?, ?, ?)";
+
+    private static final RowMapper<EmployeeChange> CHANGE = (rs, row) -> {
+        EmployeeChange.Type type = EmployeeChange.Type.valueOf(rs.getString("type"));
+        long id = rs.getLong("employee_id");
+        return EmployeeChange.builder()
+                .position(rs.getLong("position"))
+                .type(type)
+                .id(id)
+                .employee(type == EmployeeChange.Type.DELETED ? null : new EmployeeView(id, rs.getString("first_name"),
+                        rs.getString("last_name"), rs.getString("email"), rs.getLong("version")))
+                .build();
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EmployeeStore employeeRepository;
+
+    public EmployeeOutbox(JdbcTemplate jdbcTemplate, EmployeeStore employeeRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.employeeRepository = employeeRepository;
+        createSchema();
+    }
+
+    // joins the writer's transaction
+    @EventListener(condition = "!#event.recorded")
+    @Transactional
+    public void append(EmployeeChangedEvent event) {
+        employeeRepository.flush();
+
+        List<Object[]> rows = new ArrayList<>();
+        switch (event.getType()) {
+            case SAVED:
+                for (Employee employee : event.getEmployees()) {
+                    // a new row is persisted with version 0, every update increments it
+                    EmployeeChange.Type type = employee.getVersion() == null || employee.getVersion() == 0
+                            ? EmployeeChange.Type.CREATED : EmployeeChange.Type.UPDATED;
+                    rows.add(row(type, EmployeeView.of(employee)));
+                }
+                break;
+            case MODIFIED:
+                // set-based updates don't load the rows, read them back inside the transaction
+                for (EmployeeView employee : employeeRepository.findViewsByIdIn(event.getIds())) {
+                    rows.add(row(EmployeeChange.Type.UPDATED, employee));
+                }
+                break;
+            case DELETED:
+                for (Long id : event.getIds()) {
+                    rows.add(new Object[]{EmployeeChange.Type.DELETED.name(), id, null, null, null, null});
+                }
+                break;
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT, rows);
+        }
+    }
+
+    // numbers up to limit committed changes after the last published position, returns how many
+    @Transactional
+    public int publishPending(int limit) {
+        long lastPosition = jdbcTemplate.queryForObject(
+                "select last_position from employee_change_relay where id = 1 for update", Long.class);
+        List<Long> ids = jdbcTemplate.queryForList(
+                "select id from employee_changes where position is null order by id limit ?", Long.class, limit);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        List<Object[]> positions = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            positions.add(new Object[]{++lastPosition, id});
+        }
+        jdbcTemplate.batchUpdate("update employee_changes set position = ? where id = ?", positions);
+        jdbcTemplate.update("update employee_change_relay set last_position = ? where id = 1", lastPosition);
+        return ids.size();
+    }
+
+    // published changes after the given position, in order
+    public List<EmployeeChange> read(long afterPosition, int limit) {
+        return jdbcTemplate.query("select position, type, employee_id, first_name, last_name, email, version from employee_changes"
+                + " where position > ? order by position limit ?", CHANGE, afterPosition, limit);
+    }
+
+    public long lastPosition() {
+        return jdbcTemplate.queryForObject("select last_position from employee_change_relay where id = 1", Long.class);
+    }
+
+    // changes up to this position have been deleted, a consumer further behind has to reload
+    public long prunedPosition() {
+        return jdbcTemplate.queryForObject("select pruned_position from employee_change_relay where id = 1", Long.class);
+    }
+
+    @Transactional
+    public void prune(long throughPosition) {
+        long prunedPosition = jdbcTemplate.queryForObject(
+                "select pruned_position from employee_change_relay where id = 1 for update", Long.class);
+        if (throughPosition <= prunedPosition) {
+            return;
+        }
+        jdbcTemplate.update("delete from employee_changes where position > ? and position <= ?", prunedPosition, throughPosition);
+        jdbcTemplate.update("update employee_change_relay set pruned_position = ? where id = 1", throughPosition);
+    }
+
+    private static Object[] row(EmployeeChange.Type type, EmployeeView employee) {
+        return new Object[]{type.name(), employee.getId(), employee.getFirstName(), employee.getLastName(),
+                employee.getEmail(), employee.getVersion()};
+    }
+
+    // the index on (position, id) serves both the relay's "position is null order by id" and the
+    // readers' "position > ? order by position"
+    private void createSchema() {
+        jdbcTemplate.execute("create table if not exists employee_changes ("
+                + "id bigint generated by default as identity primary key, "
+                + "position bigint, "
+                + "type varchar(16) not null, "
+                + "employee_id bigint not null, "
+                + "first_name varchar(255), "
+                + "last_name varchar(255), "
+                + "email varchar(255), "
+                + "version bigint)");
+        jdbcTemplate.execute("create index if not exists idx_employee_changes_position on employee_changes (position, id)");
+        jdbcTemplate.execute("create table if not exists employee_change_relay ("
+                + "id int primary key, "
+                + "last_position bigint not null, "
+                + "pruned_position bigint not null)");
+        try {
+            jdbcTemplate.update("insert into employee_change_relay (id, last_position, pruned_position)"
+                    + " select 1, 0, 0 where not exists (select 1 from employee_change_relay where id = 1)");
+        } catch (DuplicateKeyException e) {
+            // another instance created it first
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package net.javaguides.springboottesting.reactive;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.pool.PoolMetrics;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import java.time.Duration;
+import java.util.function.ToDoubleFunction;
+
+// The R2DBC connections of the reactive stack (employees.reactive.enabled), a pool on the same
+// database as the JDBC DataSource and a transaction manager for it.
+//
+// Neither is a bean, like the pools of EmployeeShards. Boot's R2DBC auto-configuration is excluded
+// (see SpringBootTestingApplication): a ReactiveTransactionManager bean next to JPA's would make
+// every @Transactional ambiguous, and a ConnectionFactory bean would take over SQL initialization
+// from the DataSource.
+//
+// Without employees.reactive.r2dbc-url the pool connects to spring.datasource.url, which has to be
+// H2 then. The H2 driver runs the statements on the subscribing thread, so on H2 the stack is
+// reactive in its programming model, not in its I/O.
+@Component
+@ConditionalOnProperty(name = "employees.reactive.enabled", havingValue = "true")
+public class ReactiveEmployeeDatabase implements MeterBinder, DisposableBean {
+
+    private static final String H2_JDBC_PREFIX = "jdbc:h2:";
+
+    private final ConnectionPool pool;
+
+    private final DatabaseClient databaseClient;
+
+    private final TransactionalOperator transactionalOperator;
+
+    public ReactiveEmployeeDatabase(@Value("${employees.reactive.r2dbc-url:}") String r2dbcUrl,
+                                    @Value("${employees.reactive.maximum-pool-size:${spring.datasource.hikari.maximum-pool-size:10}}") int maximumPoolSize,
+                                    DataSourceProperties properties) {
+        this.pool = new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory(r2dbcUrl, properties))
+                .name("employees-reactive")
+                .initialSize(1)
+                .maxSize(maximumPoolSize)
+                .maxAcquireTime(Duration.ofSeconds(5))
+                .build());
+        this.databaseClient = DatabaseClient.create(pool);
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(pool));
+    }
+
+    private static ConnectionFactory connectionFactory(String r2dbcUrl, DataSourceProperties properties) {
+        if (!r2dbcUrl.isEmpty()) {
+            return ConnectionFactories.get(r2dbcUrl);
+        }
+        String url = properties.determineUrl();
+        if (url == null || !url.startsWith(H2_JDBC_PREFIX)) {
+            throw new IllegalStateException("employees.reactive.r2dbc-url has to be set for " + url);
+        }
+        // the same in-memory database as the DataSource, the JDBC url names it
+        H2ConnectionConfiguration.Builder configuration = H2ConnectionConfiguration.builder()
+                .url(url.substring(H2_JDBC_PREFIX.length()))
+                .username(properties.determineUsername());
+        if (properties.determinePassword() != null) {
+            configuration.password(properties.determinePassword());
+        }
+        return new H2ConnectionFactory(configuration.build());
+    }
+
+    public DatabaseClient databaseClient() {
+        return databaseClient;
+    }
+
+    public TransactionalOperator transactionalOperator() {
+        return transactionalOperator;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        gauge(registry, "employees.reactive.connections.acquired", "Connections in use", PoolMetrics::acquiredSize);
+        gauge(registry, "employees.reactive.connections.idle", "Idle connections", PoolMetrics::idleSize);
+        gauge(registry, "employees.reactive.connections.pending", "Subscribers waiting for a connection", PoolMetrics::pendingAcquireSize);
+    }
+
+    private void gauge(MeterRegistry registry, String name, String description, ToDoubleFunction<PoolMetrics> value) {
+        Gauge.builder(name, pool, p -> p.getMetrics().map(value::applyAsDouble).orElse(Double.NaN))
+                .description(description)
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        pool.dispose();
+    }
+
+}
@@ -0,0 +1,153 @@
+package net.javaguides.springboottesting.reactive;
+
+import io.r2dbc.spi.Row;
+import net.javaguides.springboottesting.dto.EmployeeChange;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// The employees table for ReactiveEmployeeService, hand-written SQL over R2DBC on the schema the
+// JPA entity (Employee) creates. Statements join the R2DBC transaction of the subscriber, if any.
+//
+// Ids come from employees_seq, the sequence Hibernate uses, with the same pooled-lo allocation: a
+// sequence value v hands out v .. v + 49, so both stacks can insert into the table without
+// colliding, whichever of them fetches first.
+@Repository
+@ConditionalOnProperty(name = "employees.reactive.enabled", havingValue = "true")
+public class ReactiveEmployeeRepository {
+
+    // increment_size of Employee's id generator
+    static final int ALLOCATION_SIZE = 50;
+
+    private static final String COLUMNS = "id, first_name, last_name, email, version";
+
+    private final DatabaseClient databaseClient;
+
+    // the block of ids handed out next, guarded by this
+    private long nextId;
+
+    private long lastId = -1;
+
+    public ReactiveEmployeeRepository(ReactiveEmployeeDatabase database) {
+        this.databaseClient = database.databaseClient();
+    }
+
+    // inserts a new row at version 0, a duplicate email fails with a DataIntegrityViolationException
+    public Mono<Employee> insert(Employee employee) {
+        return nextId().flatMap(id -> {
+            Employee saved = employee.toBuilder().id(id).version(0L).build();
+            return databaseClient.sql("insert into employees (" + COLUMNS + ")"
+                            + " values (:id, :firstName, :lastName, :email, :version)")
+                    .bind("id", id)
+                    .bind("firstName", saved.getFirstName())
+                    .bind("lastName", saved.getLastName())
+                    .bind("email", saved.getEmail())
+                    .bind("version", 0L)
+                    .fetch()
+                    .rowsUpdated()
+                    .thenReturn(saved);
+        });
+    }
+
+    public Mono<EmployeeView> findViewById(Long id) {
+        return databaseClient.sql("select " + COLUMNS + " from employees where id = :id")
+                .bind("id", id)
+                .map(ReactiveEmployeeRepository::view)
+                .one();
+    }
+
+    public Flux<EmployeeView> findViewsByIdGreaterThan(long afterId, int limit) {
+        return databaseClient.sql("select " + COLUMNS + " from employees where id > :afterId order by id limit :limit")
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveEmployeeRepository::view)
+                .all();
+    }
+
+    public Mono<Boolean> existsById(Long id) {
+        return databaseClient.sql("select count(*) from employees where id = :id")
+                .bind("id", id)
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .map(count -> count > 0);
+    }
+
+    // one UPDATE guarded by the version when the employee carries one, the row as written comes
+    // back; empty when there is no such row at that version
+    public Mono<Employee> update(Employee employee) {
+        DatabaseClient.GenericExecuteSpec update = databaseClient.sql("update employees"
+                        + " set first_name = :firstName, last_name = :lastName, email = :email, version = version + 1"
+                        + " where id = :id and version = coalesce(cast(:version as bigint), version)")
+                .bind("id", employee.getId())
+                .bind("firstName", employee.getFirstName())
+                .bind("lastName", employee.getLastName())
+                .bind("email", employee.getEmail());
+        update = employee.getVersion() == null ? update.bindNull("version", Long.class) : update.bind("version", employee.getVersion());
+
+        return update.fetch()
+                .rowsUpdated()
+                .flatMap(rows -> rows == 0 ? Mono.empty() : findViewById(employee.getId()))
+                .map(EmployeeView::toEmployee);
+    }
+
+    public Mono<Boolean> deleteById(Long id) {
+        return databaseClient.sql("delete from employees where id = :id")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated()
+                .map(rows -> rows > 0);
+    }
+
+    // the row EmployeeOutbox.append writes for a JDBC write, employee is null for deletes
+    public Mono<Void> appendChange(EmployeeChange.Type type, Long id, EmployeeView employee) {
+        DatabaseClient.GenericExecuteSpec insert = databaseClient.sql("insert into employee_changes"
+                        + " (type, employee_id, first_name, last_name, email, version)"
+                        + " values (:type, :id, :firstName, :lastName, :email, :version)")
+                .bind("type", type.name())
+                .bind("id", id);
+        if (employee == null) {
+            insert = insert.bindNull("firstName", String.class)
+                    .bindNull("lastName", String.class)
+                    .bindNull("email", String.class)
+                    .bindNull("version", Long.class);
+        } else {
+            insert = insert.bind("firstName", employee.getFirstName())
+                    .bind("lastName", employee.getLastName())
+                    .bind("email", employee.getEmail())
+                    .bind("version", employee.getVersion());
+        }
+        return insert.then();
+    }
+
+    private Mono<Long> nextId() {
+        return Mono.defer(() -> {
+            synchronized (this) {
+                if (nextId <= lastId) {
+                    return Mono.just(nextId++);
+                }
+            }
+            return databaseClient.sql("select next value for employees_seq")
+                    .map(row -> row.get(0, Long.class))
+                    .one()
+                    .map(value -> {
+                        // two subscribers that both found the block empty each take a new one,
+                        // the rest of the one replaced here is skipped
+                        synchronized (this) {
+                            nextId = value + 1;
+                            lastId = value + ALLOCATION_SIZE - 1;
+                        }
+                        return value;
+                    });
+        });
+    }
+
+    private static EmployeeView view(Row row) {
+        return new EmployeeView(row.get("id", Long.class), row.get("first_name", String.class),
+                row.get("last_name", String.class), row.get("email", String.class), row.get("version", Long.class));
+    }
+
+}
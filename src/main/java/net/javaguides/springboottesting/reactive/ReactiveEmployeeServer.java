@@ -0,0 +1,72 @@
+package net.javaguides.springboottesting.reactive;
+
+import net.javaguides.springboottesting.controller.ReactiveEmployeeHandler;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+// Serves ReactiveEmployeeHandler's routes on Reactor Netty, next to Tomcat.
+//
+// With Spring MVC on the classpath Boot starts a servlet application and leaves WebFlux's server
+// alone, so the reactive stack gets its own HttpServer on employees.reactive.port (0 picks a free
+// one, see getPort()). The codecs go through Boot's CodecCustomizers, which configure the same
+// ObjectMapper as the MVC converters, so both stacks write the same JSON.
+@Component
+@ConditionalOnProperty(name = "employees.reactive.enabled", havingValue = "true")
+public class ReactiveEmployeeServer implements SmartLifecycle {
+
+    private final HttpHandler httpHandler;
+
+    private final int port;
+
+    private volatile DisposableServer server;
+
+    public ReactiveEmployeeServer(ReactiveEmployeeHandler handler, ObjectProvider<CodecCustomizer> codecCustomizers,
+                                  @Value("${employees.reactive.port:8081}") int port) {
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(configurer -> codecCustomizers.orderedStream().forEach(customizer -> customizer.customize(configurer)))
+                .build();
+        this.httpHandler = RouterFunctions.toHttpHandler(handler.routes(), strategies);
+        this.port = port;
+    }
+
+    @Override
+    public void start() {
+        server = HttpServer.create()
+                .port(port)
+                .handle(new ReactorHttpHandlerAdapter(httpHandler))
+                .bindNow();
+    }
+
+    @Override
+    public void stop() {
+        DisposableServer running = server;
+        if (running != null) {
+            running.disposeNow();
+            server = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    public int getPort() {
+        DisposableServer running = server;
+        if (running == null) {
+            throw new IllegalStateException("Reactive server is not running");
+        }
+        return running.port();
+    }
+
+}
@@ -1,16 +1,90 @@
 package net.javaguides.springboottesting.repository;
 
+import net.javaguides.springboottesting.dto.EmployeeView;
 import net.javaguides.springboottesting.model.Employee;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface EmployeeRepository extends JpaRepository<Employee, Long> {
+// EmployeeRepositoryCustom is extended directly although EmployeeStore extends it too: Spring Data only
+// looks for the custom implementation (EmployeeRepositoryCustomImpl) of direct parents
+public interface EmployeeRepository extends JpaRepository<Employee, Long>, EmployeeRepositoryCustom, EmployeeStore {
+
+    // declared by both JpaRepository and EmployeeStore, redeclared so calls on this interface aren't ambiguous
+    @Override
+    <S extends Employee> S save(S employee);
+
+    @Override
+    <S extends Employee> S saveAndFlush(S employee);
+
+    @Override
+    <S extends Employee> List<S> saveAll(Iterable<S> employees);
+
+    @Override
+    void deleteById(Long id);
+
+    @Override
+    boolean existsById(Long id);
+
+    @Override
+    List<Employee> findAllById(Iterable<Long> ids);
 
     Optional<Employee> findByEmail(String email);
 
+    // set-based duplicate check used by the bulk create path, one query per chunk
+    @Query("select e.email from Employee e where e.email in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    // set-based delete without loading the entities, callers chunk the ids
+    @Modifying
+    @Transactional
+    @Query("delete from Employee e where e.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    // ids only, no entities; LIKE wildcards (_ and %) in the suffix are escaped so they match literally
+    @Query("select e.id from Employee e where e.email like %:#{escape(#suffix)} escape :#{escapeCharacter()} order by e.id")
+    List<Long> findIdsByEmailEndingWith(@Param("suffix") String suffix);
+
+    // keyset pagination: seeks past the last id of the previous page instead of using an offset
+    List<Employee> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    // read-only projections of the queries above and below, for reads that only serialize rows
+    @Query("select new net.javaguides.springboottesting.dto.EmployeeView(e.id, e.firstName, e.lastName, e.email, e.version)"
+            + " from Employee e where e.id > :id order by e.id")
+    List<EmployeeView> findViewsByIdGreaterThan(@Param("id") Long id, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    @Query("select new net.javaguides.springboottesting.dto.EmployeeView(e.id, e.firstName, e.lastName, e.email, e.version)"
+            + " from Employee e where e.id = :id")
+    Optional<EmployeeView> findViewById(@Param("id") Long id);
+
+    // batched point lookups, callers keep the id list short
+    @Transactional(readOnly = true)
+    @Query("select new net.javaguides.springboottesting.dto.EmployeeView(e.id, e.firstName, e.lastName, e.email, e.version)"
+            + " from Employee e where e.id in :ids")
+    List<EmployeeView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select new net.javaguides.springboottesting.dto.EmployeeView(e.id, e.firstName, e.lastName, e.email, e.version)"
+            + " from Employee e order by e.id")
+    List<EmployeeView> findAllViews();
+
+    // cursor-backed stream for exports, has to be consumed inside a transaction; rows come out as
+    // views, so nothing piles up in the persistence context however big the table is
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new net.javaguides.springboottesting.dto.EmployeeView(e.id, e.firstName, e.lastName, e.email, e.version)"
+            + " from Employee e order by e.id")
+    Stream<EmployeeView> streamAll();
+
     // define custom query using JPQL with index parameters (like 1, 2, etc, according to the param)
     @Query("select e from Employee e where e.firstName = ?1 and e.lastName = ?2")
     Employee findByJPQLIndexParams(String firstName, String lastName);
@@ -27,4 +101,14 @@ public interface EmployeeRepository extends JpaRepository<Employee, Long> {
     @Query(value = "select * from employees e where e.first_name =:firstName and e.last_name =:lastName", nativeQuery = true)
     Employee findByNativeSqlNamedParams(@Param("firstName") String firstName, @Param("lastName") String lastName);
 
+    // bounded name lookups, unlike the queries above they don't fail when several employees share a name
+    List<Employee> findByFirstNameAndLastNameOrderByIdAsc(String firstName, String lastName, Pageable pageable);
+
+    @Query("select new net.javaguides.springboottesting.dto.EmployeeView(e.id, e.firstName, e.lastName, e.email, e.version)"
+            + " from Employee e where e.firstName = :firstName and e.lastName = :lastName order by e.id")
+    List<EmployeeView> findViewsByFirstNameAndLastName(@Param("firstName") String firstName, @Param("lastName") String lastName,
+                                                       Pageable pageable);
+
+    Optional<Employee> findFirstByFirstNameAndLastNameOrderByIdAsc(String firstName, String lastName);
+
 }
@@ -0,0 +1,17 @@
+package net.javaguides.springboottesting.repository;
+
+import net.javaguides.springboottesting.dto.EmployeePatch;
+
+import java.util.Collection;
+
+public interface EmployeeRepositoryCustom {
+
+    // single "update employees set <changed columns>, version = version + 1 where id = ? and version = ?",
+    // returns the number of updated rows (0 if the employee is gone or the version is stale); without
+    // a version in the patch the "and version = ?" is left out
+    int patch(Long id, EmployeePatch patch);
+
+    // same update for a set of ids without the version check, one statement per call
+    int patchAll(Collection<Long> ids, EmployeePatch patch);
+
+}
@@ -0,0 +1,64 @@
+package net.javaguides.springboottesting.repository;
+
+import net.javaguides.springboottesting.dto.EmployeePatch;
+import net.javaguides.springboottesting.model.Employee;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Root;
+import java.util.Collection;
+
+public class EmployeeRepositoryCustomImpl implements EmployeeRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int patch(Long id, EmployeePatch patch) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Employee> update = cb.createCriteriaUpdate(Employee.class);
+        Root<Employee> employee = update.from(Employee.class);
+
+        setChangedColumns(cb, update, employee, patch);
+        if (patch.getVersion() != null) {
+            update.where(
+                    cb.equal(employee.get("id"), id),
+                    cb.equal(employee.get("version"), patch.getVersion()));
+        } else {
+            update.where(cb.equal(employee.get("id"), id));
+        }
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    @Override
+    @Transactional
+    public int patchAll(Collection<Long> ids, EmployeePatch patch) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Employee> update = cb.createCriteriaUpdate(Employee.class);
+        Root<Employee> employee = update.from(Employee.class);
+
+        setChangedColumns(cb, update, employee, patch);
+        update.where(employee.get("id").in(ids));
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    private static void setChangedColumns(CriteriaBuilder cb, CriteriaUpdate<Employee> update, Root<Employee> employee, EmployeePatch patch) {
+        if (patch.getFirstName() != null) {
+            update.set(employee.<String>get("firstName"), patch.getFirstName());
+        }
+        if (patch.getLastName() != null) {
+            update.set(employee.<String>get("lastName"), patch.getLastName());
+        }
+        if (patch.getEmail() != null) {
+            update.set(employee.<String>get("email"), patch.getEmail());
+        }
+        update.set(employee.<Long>get("version"), cb.sum(employee.<Long>get("version"), 1L));
+    }
+
+}
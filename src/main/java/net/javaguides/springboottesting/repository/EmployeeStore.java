@@ -0,0 +1,48 @@
+package net.javaguides.springboottesting.repository;
+
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// the employee operations the service layer uses, implemented by EmployeeRepository over JPA and
+// by ShardedEmployeeRepository over the shards; see EmployeeRepository for what each one does
+public interface EmployeeStore extends EmployeeRepositoryCustom {
+
+    <S extends Employee> S save(S employee);
+
+    <S extends Employee> S saveAndFlush(S employee);
+
+    <S extends Employee> List<S> saveAll(Iterable<S> employees);
+
+    void flush();
+
+    void deleteById(Long id);
+
+    int deleteByIdIn(Collection<Long> ids);
+
+    boolean existsById(Long id);
+
+    List<Employee> findAllById(Iterable<Long> ids);
+
+    List<String> findExistingEmails(Collection<String> emails);
+
+    List<Long> findIdsByEmailEndingWith(String suffix);
+
+    Optional<EmployeeView> findViewById(Long id);
+
+    List<EmployeeView> findViewsByIdIn(Collection<Long> ids);
+
+    List<EmployeeView> findViewsByIdGreaterThan(Long id, Pageable pageable);
+
+    List<EmployeeView> findViewsByFirstNameAndLastName(String firstName, String lastName, Pageable pageable);
+
+    List<EmployeeView> findAllViews();
+
+    Stream<EmployeeView> streamAll();
+
+}
@@ -0,0 +1,474 @@
+package net.javaguides.springboottesting.search;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.event.EmployeeChangeApplier;
+import net.javaguides.springboottesting.event.EmployeeChangedEvent;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+
+// In-memory type-ahead index over first name, last name and email.
+//
+// Terms are kept in sorted maps, so all terms starting with a prefix are one contiguous range, and
+// every term points to its documents sorted by rank (shorter names first, then older employees).
+// A query walks the match tiers from best to worst - exact name, exact email, name prefix, email
+// prefix, one typo in a name - and stops after the tier that filled the limit, so it only looks at
+// the first few documents of each term instead of everything that matches.
+//
+// Fuzzy matching only covers name terms: every name term is also stored with each of its
+// characters removed once, and a query finds its candidates by looking up its own deletions.
+// Emails are unique, so doing the same for them would cost a lot of memory for little use.
+//
+// The index is filled from the export stream once the application is ready and then follows
+// EmployeeChangedEvent. Reads don't lock, writes are serialized.
+@Component
+public class EmployeeSearchIndex implements MeterBinder {
+
+    // documents looked at per query at most, so a one letter prefix doesn't walk the whole index
+    static final int MAX_CANDIDATES = 1000;
+
+    private static final int MIN_FUZZY_LENGTH = 3;
+
+    private static final int NAME_EXACT = 10;
+    private static final int EMAIL_EXACT = 8;
+    private static final int NAME_PREFIX = 6;
+    private static final int EMAIL_PREFIX = 4;
+    private static final int NAME_FUZZY = 3;
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmployeeService employeeService;
+
+    private final EmployeeChangeApplier changeApplier;
+
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+
+    private final ConcurrentNavigableMap<String, NavigableSet<Document>> nameTerms = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentNavigableMap<String, NavigableSet<Document>> emailTerms = new ConcurrentSkipListMap<>();
+
+    private final Map<String, Set<String>> nameTermsByDeletion = new ConcurrentHashMap<>();
+
+    private final Object writeLock = new Object();
+
+    // while the initial load runs, deleted ids are remembered so the load can't bring them back
+    private volatile boolean warming;
+
+    private final Set<Long> deletedWhileWarming = ConcurrentHashMap.newKeySet();
+
+    public EmployeeSearchIndex(EmployeeService employeeService, EmployeeChangeApplier changeApplier) {
+        this.employeeService = employeeService;
+        this.changeApplier = changeApplier;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        warming = true;
+        try {
+            employeeService.exportEmployees(employee -> {
+                if (!deletedWhileWarming.contains(employee.getId())) {
+                    index(employee);
+                }
+            });
+        } finally {
+            warming = false;
+            deletedWhileWarming.clear();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeeChanged(EmployeeChangedEvent event) {
+        changeApplier.apply(event, this::index, this::remove);
+    }
+
+    // every whitespace separated part of the query has to match, results are ordered by score,
+    // then by the same rank the documents are stored in
+    public List<EmployeeView> search(String query, int limit) {
+        List<String> tokens = queryTokens(query);
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+
+        // tiers are walked for the longest part, which is usually the most selective one
+        String driver = tokens.get(0);
+        for (String token : tokens) {
+            if (token.length() > driver.length()) {
+                driver = token;
+            }
+        }
+        Search search = new Search(tokens, limit);
+
+        search.tier(NAME_EXACT, single(nameTerms.get(driver)));
+        search.tier(EMAIL_EXACT, single(emailTerms.get(driver)));
+        search.tier(NAME_PREFIX, prefixRange(nameTerms, driver));
+        search.tier(EMAIL_PREFIX, prefixRange(emailTerms, driver));
+        if (driver.length() >= MIN_FUZZY_LENGTH && !search.isDone()) {
+            List<NavigableSet<Document>> fuzzy = new ArrayList<>();
+            for (String term : fuzzyNameTerms(driver)) {
+                NavigableSet<Document> matches = nameTerms.get(term);
+                if (matches != null) {
+                    fuzzy.add(matches);
+                }
+            }
+            search.tier(NAME_FUZZY, fuzzy);
+        }
+        return search.results();
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    public void index(Employee employee) {
+        if (employee.getId() != null) {
+            index(EmployeeView.of(employee));
+        }
+    }
+
+    public void index(EmployeeView employee) {
+        synchronized (writeLock) {
+            Document previous = documents.get(employee.getId());
+            if (previous != null && isOlder(employee, previous.employee)) {
+                return;
+            }
+            if (previous != null) {
+                removeTerms(previous);
+            }
+            Document document = new Document(employee);
+            documents.put(employee.getId(), document);
+            addTerms(document);
+        }
+    }
+
+    public void remove(Long id) {
+        synchronized (writeLock) {
+            if (warming) {
+                deletedWhileWarming.add(id);
+            }
+            Document previous = documents.remove(id);
+            if (previous != null) {
+                removeTerms(previous);
+            }
+        }
+    }
+
+    private static boolean isOlder(EmployeeView employee, EmployeeView indexed) {
+        return employee.getVersion() != null && indexed.getVersion() != null && employee.getVersion() < indexed.getVersion();
+    }
+
+    private void addTerms(Document document) {
+        for (String term : document.nameTerms) {
+            NavigableSet<Document> matches = nameTerms.get(term);
+            if (matches == null) {
+                matches = new ConcurrentSkipListSet<>(Document.RANK);
+                nameTerms.put(term, matches);
+                for (String deletion : deletions(term)) {
+                    nameTermsByDeletion.computeIfAbsent(deletion, k -> ConcurrentHashMap.newKeySet()).add(term);
+                }
+            }
+            matches.add(document);
+        }
+        for (String term : document.emailTerms) {
+            emailTerms.computeIfAbsent(term, k -> new ConcurrentSkipListSet<>(Document.RANK)).add(document);
+        }
+    }
+
+    private void removeTerms(Document document) {
+        for (String term : document.nameTerms) {
+            NavigableSet<Document> matches = nameTerms.get(term);
+            if (matches != null && matches.remove(document) && matches.isEmpty()) {
+                nameTerms.remove(term);
+                for (String deletion : deletions(term)) {
+                    Set<String> terms = nameTermsByDeletion.get(deletion);
+                    if (terms != null && terms.remove(term) && terms.isEmpty()) {
+                        nameTermsByDeletion.remove(deletion);
+                    }
+                }
+            }
+        }
+        for (String term : document.emailTerms) {
+            NavigableSet<Document> matches = emailTerms.get(term);
+            if (matches != null && matches.remove(document) && matches.isEmpty()) {
+                emailTerms.remove(term);
+            }
+        }
+    }
+
+    private static List<NavigableSet<Document>> single(NavigableSet<Document> matches) {
+        return matches == null ? List.of() : List.of(matches);
+    }
+
+    // the terms that start with the prefix, without the prefix itself
+    private static Collection<NavigableSet<Document>> prefixRange(ConcurrentNavigableMap<String, NavigableSet<Document>> terms, String prefix) {
+        return terms.subMap(prefix, false, prefix + Character.MAX_VALUE, true).values();
+    }
+
+    // name terms one insertion, deletion, substitution or transposition away from the token
+    private Set<String> fuzzyNameTerms(String token) {
+        Set<String> terms = new HashSet<>();
+        addAll(nameTermsByDeletion.get(token), terms);
+        for (String deletion : deletions(token)) {
+            if (nameTerms.containsKey(deletion)) {
+                terms.add(deletion);
+            }
+            addAll(nameTermsByDeletion.get(deletion), terms);
+        }
+        terms.removeIf(term -> !isOneEditAway(term, token));
+        return terms;
+    }
+
+    private static void addAll(Set<String> source, Set<String> target) {
+        if (source != null) {
+            target.addAll(source);
+        }
+    }
+
+    private static List<String> deletions(String term) {
+        List<String> deletions = new ArrayList<>(term.length());
+        for (int i = 0; i < term.length(); i++) {
+            deletions.add(term.substring(0, i) + term.substring(i + 1));
+        }
+        return deletions;
+    }
+
+    static boolean isOneEditAway(String a, String b) {
+        if (a.equals(b)) {
+            return false;
+        }
+        int lengthDifference = a.length() - b.length();
+        if (Math.abs(lengthDifference) > 1) {
+            return false;
+        }
+        if (lengthDifference != 0) {
+            String longer = lengthDifference > 0 ? a : b;
+            String shorter = lengthDifference > 0 ? b : a;
+            int i = 0;
+            while (i < shorter.length() && shorter.charAt(i) == longer.charAt(i)) {
+                i++;
+            }
+            return shorter.regionMatches(i, longer, i + 1, shorter.length() - i);
+        }
+        int first = 0;
+        while (a.charAt(first) == b.charAt(first)) {
+            first++;
+        }
+        // one substitution
+        if (a.regionMatches(first + 1, b, first + 1, a.length() - first - 1)) {
+            return true;
+        }
+        // two neighbouring characters swapped
+        return first + 1 < a.length()
+                && a.charAt(first) == b.charAt(first + 1)
+                && a.charAt(first + 1) == b.charAt(first)
+                && a.regionMatches(first + 2, b, first + 2, a.length() - first - 2);
+    }
+
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String term : SEPARATORS.split(text.toLowerCase(Locale.ROOT))) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    // query parts with an @ are matched against whole emails, everything else like a name
+    static List<String> queryTokens(String query) {
+        List<String> tokens = new ArrayList<>();
+        if (query == null) {
+            return tokens;
+        }
+        for (String part : WHITESPACE.split(query.trim().toLowerCase(Locale.ROOT))) {
+            if (part.indexOf('@') >= 0) {
+                tokens.add(part);
+            } else {
+                tokens.addAll(terms(part));
+            }
+        }
+        return tokens;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("employees.search.documents", documents, Map::size)
+                .description("Employees in the search index")
+                .register(registry);
+        Gauge.builder("employees.search.terms", this, index -> index.nameTerms.size() + index.emailTerms.size())
+                .description("Distinct terms in the search index")
+                .register(registry);
+    }
+
+    private static class Document {
+
+        // shorter names first, then the older employee
+        private static final Comparator<Document> RANK = Comparator.comparingInt((Document document) -> document.nameLength)
+                .thenComparingLong(document -> document.id);
+
+        private final long id;
+
+        private final int nameLength;
+
+        private final EmployeeView employee;
+
+        private final String[] nameTerms;
+
+        private final String[] emailTerms;
+
+        private Document(EmployeeView employee) {
+            this.id = employee.getId();
+            this.employee = employee;
+
+            Set<String> names = new LinkedHashSet<>(terms(employee.getFirstName()));
+            names.addAll(terms(employee.getLastName()));
+            this.nameTerms = names.toArray(new String[0]);
+            int length = 0;
+            for (String term : nameTerms) {
+                length += term.length();
+            }
+            this.nameLength = length;
+
+            // the whole email for "bruno.martins@ex" style queries, plus the parts before the @
+            Set<String> emails = new LinkedHashSet<>();
+            String email = employee.getEmail();
+            if (email != null) {
+                String lowerCaseEmail = email.toLowerCase(Locale.ROOT);
+                emails.add(lowerCaseEmail);
+                int at = lowerCaseEmail.indexOf('@');
+                emails.addAll(terms(at < 0 ? lowerCaseEmail : lowerCaseEmail.substring(0, at)));
+            }
+            this.emailTerms = emails.toArray(new String[0]);
+        }
+
+        private int score(List<String> tokens) {
+            int total = 0;
+            for (String token : tokens) {
+                int best = 0;
+                for (String term : nameTerms) {
+                    best = Math.max(best, term.equals(token) ? NAME_EXACT
+                            : term.startsWith(token) ? NAME_PREFIX
+                            : token.length() >= MIN_FUZZY_LENGTH && isOneEditAway(term, token) ? NAME_FUZZY
+                            : 0);
+                }
+                for (String term : emailTerms) {
+                    best = Math.max(best, term.equals(token) ? EMAIL_EXACT
+                            : term.startsWith(token) ? EMAIL_PREFIX
+                            : 0);
+                }
+                if (best == 0) {
+                    return 0;
+                }
+                total += best;
+            }
+            return total;
+        }
+    }
+
+    // one query, collected tier by tier
+    private static class Search {
+
+        private final List<String> tokens;
+
+        private final int limit;
+
+        private final Set<Document> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private final List<Hit> hits = new ArrayList<>();
+
+        private int candidates;
+
+        private Search(List<String> tokens, int limit) {
+            this.tokens = tokens;
+            this.limit = limit;
+        }
+
+        private boolean isDone() {
+            return hits.size() >= limit || candidates >= MAX_CANDIDATES;
+        }
+
+        private void tier(int score, Collection<NavigableSet<Document>> terms) {
+            if (isDone()) {
+                return;
+            }
+            List<Hit> tierHits = new ArrayList<>();
+            for (NavigableSet<Document> matches : terms) {
+                int taken = 0;
+                for (Document document : matches) {
+                    // documents are sorted by rank, so the first matches of each term are the best ones;
+                    // with more query parts that's close enough, as the exact match of a part is also
+                    // the shortest name that starts with it
+                    if (taken == limit || candidates == MAX_CANDIDATES) {
+                        break;
+                    }
+                    if (!seen.add(document)) {
+                        continue;
+                    }
+                    candidates++;
+                    int documentScore = tokens.size() == 1 ? score : document.score(tokens);
+                    if (documentScore > 0) {
+                        tierHits.add(new Hit(document, documentScore));
+                        taken++;
+                    }
+                }
+                if (candidates == MAX_CANDIDATES) {
+                    break;
+                }
+            }
+            tierHits.sort(Hit.RANKING);
+            hits.addAll(tierHits);
+        }
+
+        private List<EmployeeView> results() {
+            List<EmployeeView> results = new ArrayList<>(Math.min(limit, hits.size()));
+            for (int i = 0; i < hits.size() && i < limit; i++) {
+                results.add(hits.get(i).document.employee);
+            }
+            return results;
+        }
+    }
+
+    private static class Hit {
+
+        private static final Comparator<Hit> RANKING = Comparator.comparingInt((Hit hit) -> -hit.score)
+                .thenComparing(hit -> hit.document, Document.RANK);
+
+        private final Document document;
+
+        private final int score;
+
+        private Hit(Document document, int score) {
+            this.document = document;
+            this.score = score;
+        }
+    }
+
+}
@@ -1,16 +1,32 @@
 package net.javaguides.springboottesting.service;
 
+import net.javaguides.springboottesting.dto.EmployeeBatchResult;
+import net.javaguides.springboottesting.dto.EmployeePatch;
+import net.javaguides.springboottesting.dto.EmployeeView;
 import net.javaguides.springboottesting.model.Employee;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface EmployeeService {
 
     Employee saveEmployee(Employee employee);
-    List<Employee> getAllEmployees();
+    List<EmployeeBatchResult> saveEmployees(List<Employee> employees);
+    List<EmployeeView> getAllEmployees();
+    List<EmployeeView> getEmployeesAfter(Long afterId, int limit);
+    void exportEmployees(Consumer<EmployeeView> consumer);
     Optional<Employee> getEmployeeById(Long id);
+    Optional<EmployeeView> getEmployeeViewById(Long id);
+    Optional<EmployeeView> getEmployeeViewById(Long id, long minVersion);
+    List<EmployeeView> getEmployeesByName(String firstName, String lastName, int limit);
     Employee updateEmployee(Employee updatedEmployee);
+    Employee replaceEmployee(Long id, Employee employee);
+    long patchEmployee(Long id, EmployeePatch patch);
     void deleteEmployee(Long id);
+    int deleteEmployees(Collection<Long> ids);
+    int deleteEmployeesByEmailDomain(String domain);
+    int updateEmployees(Collection<Long> ids, EmployeePatch changes);
 
 }
@@ -0,0 +1,16 @@
+package net.javaguides.springboottesting.service;
+
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveEmployeeService {
+
+    Mono<Employee> saveEmployee(Employee employee);
+    Flux<EmployeeView> getEmployees(Long afterId);
+    Mono<EmployeeView> getEmployeeViewById(Long id);
+    Mono<Employee> updateEmployee(Employee updatedEmployee);
+    Mono<Void> deleteEmployee(Long id);
+
+}
@@ -0,0 +1,245 @@
+package net.javaguides.springboottesting.service.impl;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.datasource.DataSourceRouting;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.repository.EmployeeStore;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Coalesces the cache misses of EmployeeServiceImpl's id lookups.
+//
+// Single flight: a lookup of an id that is already being loaded waits for that load instead of
+// running its own SELECT. It only joins while that id wasn't invalidated since the load started
+// (EmployeeCache.invalidatedSince()), so a caller never gets a row read before a write it could
+// have seen.
+//
+// Batching, DataLoader-style: at most maxConcurrentQueries queries run at once. Ids requested
+// while they are all busy wait in the next batch, and the first waiting caller to get a freed
+// slot runs that batch as one "where id in (...)" query. The window is the time the database
+// takes to answer; when it's idle a lookup goes out right away and pays no extra latency.
+//
+// A caller runs one batch per slot and gives the slot back, and stops once its own load is done,
+// so it never serves other callers' batches for longer than the ones queued ahead of its own.
+//
+// Reads that have to see something only their thread can see - inside a transaction, or pinned
+// to the primary - bypass all of this.
+class EmployeeLoader implements MeterBinder {
+
+    private final EmployeeStore employeeRepository;
+
+    private final EmployeeCache employeeCache;
+
+    private final int maxBatchSize;
+
+    private final Semaphore queries;
+
+    private final ConcurrentMap<Long, Load> inFlight = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+
+    // guarded by lock; may hold two loads of one id when an invalidation came in between
+    private List<Load> pending = new ArrayList<>();
+
+    private final AtomicLong requested = new AtomicLong();
+
+    private final AtomicLong joined = new AtomicLong();
+
+    private final AtomicLong queried = new AtomicLong();
+
+    EmployeeLoader(EmployeeStore employeeRepository, EmployeeCache employeeCache, int maxBatchSize, int maxConcurrentQueries) {
+        this.employeeRepository = employeeRepository;
+        this.employeeCache = employeeCache;
+        this.maxBatchSize = maxBatchSize;
+        this.queries = new Semaphore(maxConcurrentQueries);
+    }
+
+    // reads id from the database, caching what it finds
+    Optional<EmployeeView> load(Long id) {
+        if (TransactionSynchronizationManager.isActualTransactionActive() || DataSourceRouting.isPinnedToPrimary()) {
+            long stamp = employeeCache.stamp();
+            Optional<EmployeeView> employee = employeeRepository.findViewById(id);
+            employee.ifPresent(e -> employeeCache.put(e, stamp));
+            return employee;
+        }
+
+        requested.incrementAndGet();
+        while (true) {
+            long stamp = employeeCache.stamp();
+            Load current = inFlight.get(id);
+            if (current != null && !employeeCache.invalidatedSince(id, current.stamp)) {
+                joined.incrementAndGet();
+                return current.await();
+            }
+            Load load = new Load(id, stamp);
+            boolean started = current == null ? inFlight.putIfAbsent(id, load) == null : inFlight.replace(id, current, load);
+            if (started) {
+                enqueue(load);
+                dispatch(load);
+                return load.await();
+            }
+        }
+    }
+
+    private void enqueue(Load load) {
+        synchronized (lock) {
+            pending.add(load);
+        }
+    }
+
+    // runs pending batches, oldest first and one per free query slot, until load is done or
+    // another caller's batch has taken it; waits while every slot is busy
+    private void dispatch(Load load) {
+        boolean interrupted = false;
+        while (!load.result.isDone()) {
+            if (queries.tryAcquire()) {
+                try {
+                    List<Load> batch = takeBatch();
+                    if (batch == null) {
+                        // load was queued before, so it's in a batch that is running
+                        break;
+                    }
+                    run(batch);
+                } finally {
+                    queries.release();
+                    synchronized (lock) {
+                        lock.notifyAll();
+                    }
+                }
+            } else {
+                synchronized (lock) {
+                    // a slot holder notifies after its release, so this can't miss the wakeup
+                    while (!load.result.isDone() && queries.availablePermits() == 0) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            // the load may have nobody else to run it, keep going
+                            interrupted = true;
+                        }
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Load> takeBatch() {
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return null;
+            }
+            List<Load> batch;
+            if (pending.size() <= maxBatchSize) {
+                batch = pending;
+                pending = new ArrayList<>();
+            } else {
+                List<Load> head = pending.subList(0, maxBatchSize);
+                batch = new ArrayList<>(head);
+                head.clear();
+            }
+            return batch;
+        }
+    }
+
+    private void run(List<Load> batch) {
+        queried.incrementAndGet();
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Load load : batch) {
+            ids.add(load.id);
+        }
+        Map<Long, EmployeeView> found = new HashMap<>();
+        try {
+            if (ids.size() == 1) {
+                Long id = ids.iterator().next();
+                employeeRepository.findViewById(id).ifPresent(e -> found.put(id, e));
+            } else {
+                for (EmployeeView employee : employeeRepository.findViewsByIdIn(ids)) {
+                    found.put(employee.getId(), employee);
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Load load : batch) {
+                inFlight.remove(load.id, load);
+                load.result.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (Load load : batch) {
+            EmployeeView employee = found.get(load.id);
+            // each id with the stamp from before its own lookup, the cache drops it if it was invalidated since
+            if (employee != null) {
+                employeeCache.put(employee, load.stamp);
+            }
+            inFlight.remove(load.id, load);
+            load.result.complete(Optional.ofNullable(employee));
+        }
+    }
+
+    // lookups that reached the loader per database query, 1 means nothing was coalesced
+    double coalescingRatio() {
+        long queries = queried.get();
+        return queries == 0 ? 1 : (double) requested.get() / queries;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("employees.loader.requests", requested, AtomicLong::get)
+                .description("Id lookups that missed the cache")
+                .register(registry);
+        FunctionCounter.builder("employees.loader.joined", joined, AtomicLong::get)
+                .description("Lookups that waited for an identical lookup already in flight")
+                .register(registry);
+        FunctionCounter.builder("employees.loader.queries", queried, AtomicLong::get)
+                .description("Database queries run for the lookups")
+                .register(registry);
+        Gauge.builder("employees.loader.coalescing.ratio", this, EmployeeLoader::coalescingRatio)
+                .description("Lookups per database query since startup")
+                .register(registry);
+    }
+
+    private static class Load {
+
+        private final Long id;
+
+        private final long stamp;
+
+        private final CompletableFuture<Optional<EmployeeView>> result = new CompletableFuture<>();
+
+        private Load(Long id, long stamp) {
+            this.id = id;
+            this.stamp = stamp;
+        }
+
+        private Optional<EmployeeView> await() {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+}
@@ -1,55 +1,414 @@
 package net.javaguides.springboottesting.service.impl;
 
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.cache.EmployeeInvalidation;
+import net.javaguides.springboottesting.datasource.DataSourceRouting;
+import net.javaguides.springboottesting.dto.EmployeeBatchResult;
+import net.javaguides.springboottesting.dto.EmployeePatch;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.event.EmployeeChangedEvent;
+import net.javaguides.springboottesting.exception.InvalidRequestException;
+import net.javaguides.springboottesting.exception.ResourceConflictException;
 import net.javaguides.springboottesting.exception.ResourceNotFoundException;
 import net.javaguides.springboottesting.model.Employee;
-import net.javaguides.springboottesting.repository.EmployeeRepository;
+import net.javaguides.springboottesting.repository.EmployeeStore;
 import net.javaguides.springboottesting.service.EmployeeService;
-import org.springframework.beans.factory.annotation.Autowired;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
-public class EmployeeServiceImpl implements EmployeeService {
+public class EmployeeServiceImpl implements EmployeeService, MeterBinder {
 
-    private EmployeeRepository employeeRepository;
+    // ids per IN list for the bulk delete/update statements
+    static final int BULK_CHUNK_SIZE = 1000;
 
-    public EmployeeServiceImpl(EmployeeRepository employeeRepository) {
+    // ids per IN list of a coalesced lookup batch
+    static final int LOOKUP_BATCH_SIZE = 100;
+
+    // lookup queries in flight at once, well below the pool size so writes still get connections
+    static final int LOOKUP_CONCURRENCY = 4;
+
+    private EmployeeStore employeeRepository;
+
+    private EmployeeCache employeeCache;
+
+    private ApplicationEventPublisher eventPublisher;
+
+    // Writes and their EmployeeChangedEvent share a transaction, so the change outbox is appended
+    // atomically with the write. Cache puts and invalidations happen once it has committed.
+    private TransactionOperations transactions;
+
+    private EmployeeLoader employeeLoader;
+
+    public EmployeeServiceImpl(EmployeeStore employeeRepository, EmployeeCache employeeCache,
+                               ApplicationEventPublisher eventPublisher, TransactionOperations transactions) {
         this.employeeRepository = employeeRepository;
+        this.employeeCache = employeeCache;
+        this.eventPublisher = eventPublisher;
+        this.transactions = transactions;
+        this.employeeLoader = new EmployeeLoader(employeeRepository, employeeCache, LOOKUP_BATCH_SIZE, LOOKUP_CONCURRENCY);
     }
 
     @Override
     public Employee saveEmployee(Employee employee) {
 
-        Optional<Employee> savedEmployee = employeeRepository.findByEmail(employee.getEmail());
+        // the cache only holds emails that are known to exist, so a hit saves the insert attempt
+        if(employeeCache.getIdByEmail(employee.getEmail()).isPresent()){
+            throw new ResourceConflictException("Employee already exists with given email: " + employee.getEmail());
+        }
+
+        // uniqueness is enforced by the unique index on employees.email, no SELECT beforehand
+        long stamp = employeeCache.stamp();
+        try {
+            Employee savedEmployee = transactions.execute(status -> {
+                Employee saved = employeeRepository.saveAndFlush(employee);
+                eventPublisher.publishEvent(EmployeeChangedEvent.saved(List.of(saved)));
+                return saved;
+            });
+            employeeCache.put(savedEmployee, stamp);
+            return savedEmployee;
+        } catch (DataIntegrityViolationException e) {
+            if (isDuplicateEmail(e)) {
+                throw new ResourceConflictException("Employee already exists with given email: " + employee.getEmail(), e);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public List<EmployeeBatchResult> saveEmployees(List<Employee> employees) {
+
+        Set<String> emails = new HashSet<>();
+        for (Employee employee : employees) {
+            if (employee.getEmail() != null) {
+                emails.add(employee.getEmail());
+            }
+        }
+
+        // one query for the whole chunk instead of a findByEmail per row
+        Set<String> taken = emails.isEmpty() ? new HashSet<>() : new HashSet<>(employeeRepository.findExistingEmails(emails));
+
+        List<EmployeeBatchResult> results = new ArrayList<>(employees.size());
+        List<Employee> toSave = new ArrayList<>(employees.size());
+
+        for (int i = 0; i < employees.size(); i++) {
+            Employee employee = employees.get(i);
+
+            EmployeeBatchResult.Status status;
+            if (employee.getEmail() == null || employee.getFirstName() == null || employee.getLastName() == null) {
+                status = EmployeeBatchResult.Status.INVALID;
+            } else if (!taken.add(employee.getEmail())) {
+                // already in the database or earlier in the same chunk
+                status = EmployeeBatchResult.Status.DUPLICATE;
+            } else {
+                status = EmployeeBatchResult.Status.CREATED;
+                // a version makes Hibernate merge a copy instead of persisting this object
+                employee.setId(null);
+                employee.setVersion(null);
+                toSave.add(employee);
+            }
+
+            results.add(EmployeeBatchResult.builder()
+                    .index(i)
+                    .email(employee.getEmail())
+                    .status(status)
+                    .build());
+        }
 
-        if(savedEmployee.isPresent()){
-            throw new ResourceNotFoundException("Employee already exists with given email: " + employee.getEmail());
+        // ids come from the pooled sequence, so the inserts go out as JDBC batches on flush. One
+        // transaction for the chunk: a duplicate partway through rolls back the rows before it, so
+        // the row-by-row retry below doesn't find them taken
+        try {
+            transactions.executeWithoutResult(status -> {
+                employeeRepository.saveAll(toSave);
+                employeeRepository.flush();
+                eventPublisher.publishEvent(EmployeeChangedEvent.saved(toSave));
+            });
+            for (int i = 0; i < employees.size(); i++) {
+                if (results.get(i).getStatus() == EmployeeBatchResult.Status.CREATED) {
+                    results.get(i).setId(employees.get(i).getId());
+                }
+            }
+        } catch (DataIntegrityViolationException e) {
+            if (!isDuplicateEmail(e)) {
+                throw e;
+            }
+            // someone inserted one of the emails after the check, redo the chunk row by row. The
+            // rollback left the ids and versions Hibernate assigned on the objects, so they're
+            // cleared again and the ids are taken from what saveEmployee returns
+            for (int i = 0; i < employees.size(); i++) {
+                if (results.get(i).getStatus() == EmployeeBatchResult.Status.CREATED) {
+                    Employee employee = employees.get(i);
+                    employee.setId(null);
+                    employee.setVersion(null);
+                    try {
+                        results.get(i).setId(saveEmployee(employee).getId());
+                    } catch (ResourceConflictException ex) {
+                        results.get(i).setStatus(EmployeeBatchResult.Status.DUPLICATE);
+                    }
+                }
+            }
         }
 
-        return employeeRepository.save(employee);
+        return results;
+    }
+
+    // The read paths below return EmployeeViews instead of entities. In a readOnly transaction
+    // Spring also switches the Hibernate session to FlushMode.MANUAL, so the queries don't
+    // trigger a flush check first.
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<EmployeeView> getAllEmployees() {
+        return employeeRepository.findAllViews();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<EmployeeView> getEmployeesAfter(Long afterId, int limit) {
+        return employeeRepository.findViewsByIdGreaterThan(afterId == null ? 0L : afterId, PageRequest.of(0, limit));
     }
 
     @Override
-    public List<Employee> getAllEmployees() {
-        return employeeRepository.findAll();
+    @Transactional(readOnly = true)
+    public void exportEmployees(Consumer<EmployeeView> consumer) {
+        try (Stream<EmployeeView> employees = employeeRepository.streamAll()) {
+            employees.forEach(consumer);
+        }
     }
 
     @Override
     public Optional<Employee> getEmployeeById(Long id) {
-        return employeeRepository.findById(id);
+
+        Optional<Employee> cachedEmployee = employeeCache.get(id);
+        if(cachedEmployee.isPresent()){
+            return cachedEmployee;
+        }
+
+        // the loader may hand the same view to several callers, each gets its own entity
+        return employeeLoader.load(id).map(EmployeeView::toEmployee);
+    }
+
+    @Override
+    public Optional<EmployeeView> getEmployeeViewById(Long id) {
+        return getEmployeeViewById(id, 0);
+    }
+
+    // no transaction around the cache lookup, a hit shouldn't cost a connection
+    @Override
+    public Optional<EmployeeView> getEmployeeViewById(Long id, long minVersion) {
+
+        Optional<EmployeeView> cachedEmployee = employeeCache.getView(id, minVersion);
+        if(cachedEmployee.isPresent()){
+            return cachedEmployee;
+        }
+
+        Optional<EmployeeView> employee = employeeLoader.load(id);
+        if (minVersion > 0 && employee.map(e -> e.getVersion() == null || e.getVersion() < minVersion).orElse(true)) {
+            // the caller wrote a newer version than the replica returned, the primary has it
+            employee = DataSourceRouting.onPrimary(() -> employeeLoader.load(id));
+        }
+        return employee;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<EmployeeView> getEmployeesByName(String firstName, String lastName, int limit) {
+        return employeeRepository.findViewsByFirstNameAndLastName(firstName, lastName, PageRequest.of(0, limit));
     }
 
     @Override
     public Employee updateEmployee(Employee updatedEmployee) {
-        return employeeRepository.save(updatedEmployee);
+        long writtenVersion = EmployeeInvalidation.UNKNOWN_VERSION;
+        try {
+            // the version is incremented on flush, so it's only read once the transaction is done
+            Employee savedEmployee = transactions.execute(status -> {
+                Employee saved = employeeRepository.save(updatedEmployee);
+                eventPublisher.publishEvent(EmployeeChangedEvent.saved(List.of(saved)));
+                return saved;
+            });
+            if (savedEmployee.getVersion() != null) {
+                writtenVersion = savedEmployee.getVersion();
+            }
+            return savedEmployee;
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResourceConflictException("Employee was modified concurrently: " + updatedEmployee.getId(), e);
+        } catch (DataIntegrityViolationException e) {
+            if (isDuplicateEmail(e)) {
+                throw new ResourceConflictException("Employee already exists with given email: " + updatedEmployee.getEmail(), e);
+            }
+            throw e;
+        } finally {
+            employeeCache.invalidate(updatedEmployee.getId(), writtenVersion);
+        }
+    }
+
+    @Override
+    public Employee replaceEmployee(Long id, Employee employee) {
+        // PUT sets every field, so it is the same single UPDATE as a PATCH of all of them, checked
+        // against the version only when the client sent one
+        long version = update(id, new EmployeePatch(employee.getFirstName(), employee.getLastName(),
+                employee.getEmail(), employee.getVersion()));
+        return Employee.builder()
+                .id(id)
+                .firstName(employee.getFirstName())
+                .lastName(employee.getLastName())
+                .email(employee.getEmail())
+                .version(version == EmployeeInvalidation.UNKNOWN_VERSION ? null : version)
+                .build();
+    }
+
+    @Override
+    public long patchEmployee(Long id, EmployeePatch patch) {
+        return update(id, patch);
+    }
+
+    // the version the row has now, or UNKNOWN_VERSION for a row that had none
+    private long update(Long id, EmployeePatch patch) {
+        Long written = null;
+        try {
+            written = transactions.execute(status -> {
+                if (employeeRepository.patch(id, patch) == 0) {
+                    return null;
+                }
+                eventPublisher.publishEvent(EmployeeChangedEvent.modified(List.of(id)));
+                if (patch.getVersion() != null) {
+                    return patch.getVersion() + 1;
+                }
+                // read back in the same transaction, after the UPDATE has locked the row
+                return employeeRepository.findViewById(id)
+                        .map(EmployeeView::getVersion)
+                        .orElse(EmployeeInvalidation.UNKNOWN_VERSION);
+            });
+        } catch (DataIntegrityViolationException e) {
+            if (isDuplicateEmail(e)) {
+                throw new ResourceConflictException("Employee already exists with given email: " + patch.getEmail(), e);
+            }
+            throw e;
+        } finally {
+            employeeCache.invalidate(id, written != null ? written : EmployeeInvalidation.UNKNOWN_VERSION);
+        }
+
+        if (written == null) {
+            // only pay for the extra lookup when a versioned update didn't apply
+            if (patch.getVersion() != null && employeeRepository.existsById(id)) {
+                throw new ResourceConflictException("Employee was modified concurrently, version " + patch.getVersion() + " is stale: " + id);
+            }
+            throw new ResourceNotFoundException("Employee not found with given id: " + id);
+        }
+        return written;
     }
 
     @Override
     public void deleteEmployee(Long id) {
-        employeeRepository.deleteById(id);
+        try {
+            transactions.executeWithoutResult(status -> {
+                employeeRepository.deleteById(id);
+                eventPublisher.publishEvent(EmployeeChangedEvent.deleted(List.of(id)));
+            });
+        } catch (EmptyResultDataAccessException e) {
+            throw new ResourceNotFoundException("Employee not found with given id: " + id, e);
+        } finally {
+            employeeCache.invalidate(id);
+        }
+    }
+
+    @Override
+    public int deleteEmployees(Collection<Long> ids) {
+        int deleted = 0;
+        for (List<Long> chunk : chunks(ids)) {
+            try {
+                deleted += transactions.execute(status -> {
+                    int rows = employeeRepository.deleteByIdIn(chunk);
+                    eventPublisher.publishEvent(EmployeeChangedEvent.deleted(chunk));
+                    return rows;
+                });
+            } finally {
+                employeeCache.invalidate(chunk);
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public int deleteEmployeesByEmailDomain(String domain) {
+        return deleteEmployees(employeeRepository.findIdsByEmailEndingWith("@" + domain));
+    }
+
+    @Override
+    public int updateEmployees(Collection<Long> ids, EmployeePatch changes) {
+        // emails are unique, so this request can't succeed whatever the table holds
+        if (changes.getEmail() != null && new HashSet<>(ids).size() > 1) {
+            throw new InvalidRequestException("Email can't be set on more than one employee");
+        }
+
+        int updated = 0;
+        for (List<Long> chunk : chunks(ids)) {
+            try {
+                updated += transactions.execute(status -> {
+                    int rows = employeeRepository.patchAll(chunk, changes);
+                    eventPublisher.publishEvent(EmployeeChangedEvent.modified(chunk));
+                    return rows;
+                });
+            } catch (DataIntegrityViolationException e) {
+                if (isDuplicateEmail(e)) {
+                    throw new ResourceConflictException("Employee already exists with given email: " + changes.getEmail(), e);
+                }
+                throw e;
+            } finally {
+                employeeCache.invalidate(chunk);
+            }
+        }
+        return updated;
+    }
+
+    private static List<List<Long>> chunks(Collection<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        List<Long> chunk = new ArrayList<>(Math.min(ids.size(), BULK_CHUNK_SIZE));
+        for (Long id : ids) {
+            chunk.add(id);
+            if (chunk.size() == BULK_CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(BULK_CHUNK_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
     }
 
+    private static boolean isDuplicateEmail(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                String constraintName = ((ConstraintViolationException) cause).getConstraintName();
+                return constraintName != null && constraintName.toLowerCase().contains(Employee.EMAIL_CONSTRAINT);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        employeeLoader.bindTo(registry);
+    }
 
 }
@@ -0,0 +1,158 @@
+package net.javaguides.springboottesting.service.impl;
+
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.dto.EmployeeChange;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.event.EmployeeChangedEvent;
+import net.javaguides.springboottesting.exception.ResourceConflictException;
+import net.javaguides.springboottesting.exception.ResourceNotFoundException;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.reactive.ReactiveEmployeeDatabase;
+import net.javaguides.springboottesting.reactive.ReactiveEmployeeRepository;
+import net.javaguides.springboottesting.service.ReactiveEmployeeService;
+import io.r2dbc.spi.R2dbcException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+// EmployeeService's CRUD operations over R2DBC, for the WebFlux routes (ReactiveEmployeeHandler).
+//
+// Same rules as EmployeeServiceImpl: the unique index decides duplicate emails, updates carrying a
+// version are checked against it, the cache is updated once the write committed and listeners get
+// the same EmployeeChangedEvent. The outbox row is written in the R2DBC transaction, EmployeeOutbox
+// only joins JDBC ones.
+@Service
+@ConditionalOnProperty(name = "employees.reactive.enabled", havingValue = "true")
+public class ReactiveEmployeeServiceImpl implements ReactiveEmployeeService {
+
+    // rows per query of a streamed listing; the next page is only read once the subscriber asked
+    // for more, so a slow client holds one page in memory and no connection in between
+    static final int STREAM_PAGE_SIZE = 500;
+
+    private ReactiveEmployeeRepository employeeRepository;
+
+    private EmployeeCache employeeCache;
+
+    private ApplicationEventPublisher eventPublisher;
+
+    private TransactionalOperator transactions;
+
+    private boolean recordChanges;
+
+    public ReactiveEmployeeServiceImpl(ReactiveEmployeeRepository employeeRepository, ReactiveEmployeeDatabase database,
+                                       EmployeeCache employeeCache, ApplicationEventPublisher eventPublisher,
+                                       @Value("${employees.changes.enabled:true}") boolean recordChanges) {
+        this.employeeRepository = employeeRepository;
+        this.employeeCache = employeeCache;
+        this.eventPublisher = eventPublisher;
+        this.transactions = database.transactionalOperator();
+        this.recordChanges = recordChanges;
+    }
+
+    @Override
+    public Mono<Employee> saveEmployee(Employee employee) {
+        return Mono.defer(() -> {
+            if (employeeCache.getIdByEmail(employee.getEmail()).isPresent()) {
+                return Mono.error(new ResourceConflictException("Employee already exists with given email: " + employee.getEmail()));
+            }
+
+            long stamp = employeeCache.stamp();
+            return employeeRepository.insert(employee)
+                    .flatMap(saved -> record(EmployeeChange.Type.CREATED, saved.getId(), EmployeeView.of(saved)).thenReturn(saved))
+                    .as(transactions::transactional)
+                    .onErrorMap(ReactiveEmployeeServiceImpl::isDuplicateEmail,
+                            e -> new ResourceConflictException("Employee already exists with given email: " + employee.getEmail(), e))
+                    .doOnNext(saved -> {
+                        employeeCache.put(saved, stamp);
+                        eventPublisher.publishEvent(EmployeeChangedEvent.saved(List.of(saved)).recorded());
+                    });
+        });
+    }
+
+    @Override
+    public Flux<EmployeeView> getEmployees(Long afterId) {
+        return page(afterId == null ? 0L : afterId)
+                .expand(page -> page.size() < STREAM_PAGE_SIZE ? Mono.empty() : page(page.get(page.size() - 1).getId()))
+                .flatMapIterable(page -> page, 1);
+    }
+
+    private Mono<List<EmployeeView>> page(long afterId) {
+        return employeeRepository.findViewsByIdGreaterThan(afterId, STREAM_PAGE_SIZE).collectList();
+    }
+
+    @Override
+    public Mono<EmployeeView> getEmployeeViewById(Long id) {
+        return Mono.defer(() -> {
+            Optional<EmployeeView> cachedEmployee = employeeCache.getView(id);
+            if (cachedEmployee.isPresent()) {
+                return Mono.just(cachedEmployee.get());
+            }
+
+            long stamp = employeeCache.stamp();
+            return employeeRepository.findViewById(id).doOnNext(employee -> employeeCache.put(employee, stamp));
+        });
+    }
+
+    @Override
+    public Mono<Employee> updateEmployee(Employee updatedEmployee) {
+        Long id = updatedEmployee.getId();
+        return employeeRepository.update(updatedEmployee)
+                .flatMap(saved -> record(EmployeeChange.Type.UPDATED, id, EmployeeView.of(saved)).thenReturn(saved))
+                // only pay for the extra lookup when the update didn't apply
+                .switchIfEmpty(Mono.defer(() -> employeeRepository.existsById(id).flatMap(exists -> Mono.error(exists
+                        ? new ResourceConflictException("Employee was modified concurrently, version " + updatedEmployee.getVersion() + " is stale: " + id)
+                        : new ResourceNotFoundException("Employee not found with given id: " + id)))))
+                .as(transactions::transactional)
+                .onErrorMap(ReactiveEmployeeServiceImpl::isDuplicateEmail,
+                        e -> new ResourceConflictException("Employee already exists with given email: " + updatedEmployee.getEmail(), e))
+                .doOnNext(saved -> {
+                    employeeCache.invalidate(id, saved.getVersion());
+                    eventPublisher.publishEvent(EmployeeChangedEvent.saved(List.of(saved)).recorded());
+                })
+                .doOnError(e -> employeeCache.invalidate(id))
+                .doOnCancel(() -> employeeCache.invalidate(id));
+    }
+
+    @Override
+    public Mono<Void> deleteEmployee(Long id) {
+        return employeeRepository.deleteById(id)
+                .flatMap(deleted -> deleted
+                        ? record(EmployeeChange.Type.DELETED, id, null)
+                        : Mono.<Void>error(new ResourceNotFoundException("Employee not found with given id: " + id)))
+                .as(transactions::transactional)
+                .doOnSuccess(done -> {
+                    employeeCache.invalidate(id);
+                    eventPublisher.publishEvent(EmployeeChangedEvent.deleted(List.of(id)).recorded());
+                })
+                .doOnError(e -> employeeCache.invalidate(id))
+                .doOnCancel(() -> employeeCache.invalidate(id));
+    }
+
+    private Mono<Void> record(EmployeeChange.Type type, Long id, EmployeeView employee) {
+        return recordChanges ? employeeRepository.appendChange(type, id, employee) : Mono.empty();
+    }
+
+    // R2DBC drivers don't report the constraint name separately, H2 names the index in the message
+    private static boolean isDuplicateEmail(Throwable e) {
+        if (!(e instanceof DataIntegrityViolationException)) {
+            return false;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof R2dbcException) {
+                String message = cause.getMessage();
+                return message != null && message.toLowerCase(Locale.ROOT).contains(Employee.EMAIL_CONSTRAINT);
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,242 @@
+package net.javaguides.springboottesting.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// The physical databases behind ShardedEmployeeRepository, one per employees.sharding.urls entry.
+//
+// Rows live on shard id % N. Each shard hands out ids from its own sequence that starts at its
+// index, so an id always routes back to the shard that generated it, and new rows are spread
+// round robin; ids stay unique but no longer follow insertion order. Like pooled-lo on the JPA
+// stack a sequence value v stands for a block of ID_BLOCK_SIZE ids v, v + N, v + 2N, ..., so
+// the sequence steps by N * ID_BLOCK_SIZE and is read once per block, not per row. Email claims (the
+// cross-shard unique index) live on the shard picked by a hash of the email. N is recorded on
+// every shard and checked at startup: changing it would route existing ids to the wrong shard,
+// resharding needs a data migration.
+//
+// Queries that can't be routed run on all shards in parallel: one shard on the calling thread,
+// the others on a pool with as many threads as the shard pools have connections, so fan-outs of
+// concurrent requests don't queue behind each other before the connections run out.
+@Component
+@ConditionalOnProperty(name = "employees.sharding.urls")
+public class EmployeeShards implements MeterBinder, DisposableBean {
+
+    static final int ID_BLOCK_SIZE = 50;
+
+    private final List<DataSource> dataSources;
+
+    private final List<JdbcTemplate> jdbcTemplates = new ArrayList<>();
+
+    private final List<NamedParameterJdbcTemplate> namedTemplates = new ArrayList<>();
+
+    private final List<TransactionTemplate> transactionTemplates = new ArrayList<>();
+
+    private final ExecutorService fanOut;
+
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    // the unused rest of each shard's current id block
+    private final List<IdBlock> idBlocks = new ArrayList<>();
+
+    @Autowired
+    public EmployeeShards(@Value("${employees.sharding.urls}") List<String> urls,
+                          @Value("${employees.sharding.maximum-pool-size:${spring.datasource.hikari.maximum-pool-size:10}}") int maximumPoolSize,
+                          DataSourceProperties properties) {
+        this(pools(urls, maximumPoolSize, properties), maximumPoolSize);
+    }
+
+    public EmployeeShards(List<DataSource> dataSources, int maximumPoolSize) {
+        this.dataSources = dataSources;
+        for (DataSource dataSource : dataSources) {
+            jdbcTemplates.add(new JdbcTemplate(dataSource));
+            namedTemplates.add(new NamedParameterJdbcTemplate(dataSource));
+            transactionTemplates.add(new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+            idBlocks.add(new IdBlock());
+        }
+        this.fanOut = Executors.newFixedThreadPool(maximumPoolSize * dataSources.size(), new CustomizableThreadFactory("employee-shard-"));
+        for (int shard = 0; shard < dataSources.size(); shard++) {
+            createSchema(shard);
+        }
+    }
+
+    private static List<DataSource> pools(List<String> urls, int maximumPoolSize, DataSourceProperties properties) {
+        List<DataSource> pools = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("shard-" + i);
+            pool.setJdbcUrl(urls.get(i));
+            pool.setUsername(properties.determineUsername());
+            pool.setPassword(properties.determinePassword());
+            pool.setMaximumPoolSize(maximumPoolSize);
+            pools.add(pool);
+        }
+        return pools;
+    }
+
+    // stands in for the migrations a production deployment would run on each shard
+    private void createSchema(int shard) {
+        JdbcTemplate jdbc = jdbcTemplates.get(shard);
+        int size = size();
+        jdbc.execute("create table if not exists employee_shard (shard_index int not null, shard_count int not null)");
+        List<int[]> recorded = jdbc.query("select shard_index, shard_count from employee_shard",
+                (rs, row) -> new int[]{rs.getInt(1), rs.getInt(2)});
+        if (recorded.isEmpty()) {
+            jdbc.update("insert into employee_shard (shard_index, shard_count) values (?, ?)", shard, size);
+        } else if (recorded.get(0)[0] != shard || recorded.get(0)[1] != size) {
+            throw new IllegalStateException("Database " + shard + " was set up as shard " + recorded.get(0)[0]
+                    + " of " + recorded.get(0)[1] + ", not of " + size);
+        }
+
+        jdbc.execute("create table if not exists employees ("
+                + "id bigint primary key, "
+                + "first_name varchar(255) not null, "
+                + "last_name varchar(255) not null, "
+                + "email varchar(255) not null, "
+                + "version bigint not null)");
+        jdbc.execute("create index if not exists idx_employees_last_name_first_name on employees (last_name, first_name)");
+        jdbc.execute("create table if not exists employee_emails ("
+                + "email varchar(255) primary key, "
+                + "employee_id bigint not null, "
+                + "claimed_at timestamp not null)");
+        // shard 0 starts at N, ids start at 1
+        jdbc.execute("create sequence if not exists employees_seq start with " + (shard == 0 ? size : shard)
+                + " increment by " + size * ID_BLOCK_SIZE);
+        // shards set up with one id per value: the last value handed out only covered itself, so
+        // stepping past it by a whole block can't hand out an id twice
+        jdbc.execute("alter sequence employees_seq increment by " + size * ID_BLOCK_SIZE);
+    }
+
+    public int size() {
+        return dataSources.size();
+    }
+
+    public int shardForId(long id) {
+        return (int) Math.floorMod(id, (long) size());
+    }
+
+    public int shardForEmail(String email) {
+        // String.hashCode is specified, so every instance agrees; the mix spreads similar emails
+        int hash = email.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return Math.floorMod(hash, size());
+    }
+
+    public JdbcTemplate jdbc(int shard) {
+        return jdbcTemplates.get(shard);
+    }
+
+    public NamedParameterJdbcTemplate named(int shard) {
+        return namedTemplates.get(shard);
+    }
+
+    // one local transaction on a single shard, there are no transactions across shards
+    public TransactionTemplate transaction(int shard) {
+        return transactionTemplates.get(shard);
+    }
+
+    public long nextId() {
+        int shard = Math.floorMod(nextShard.getAndIncrement(), size());
+        IdBlock block = idBlocks.get(shard);
+        synchronized (block) {
+            if (block.remaining == 0) {
+                block.next = jdbcTemplates.get(shard).queryForObject("select next value for employees_seq", Long.class);
+                block.remaining = ID_BLOCK_SIZE;
+            }
+            long id = block.next;
+            block.next += size();
+            block.remaining--;
+            return id;
+        }
+    }
+
+    // runs query on every shard in parallel and concatenates the results in shard order
+    public <T> List<T> onEachShard(Function<Integer, List<T>> query) {
+        List<Integer> shards = new ArrayList<>(size());
+        for (int shard = 0; shard < size(); shard++) {
+            shards.add(shard);
+        }
+        return onShards(shards, query);
+    }
+
+    public <T> List<T> onShards(Iterable<Integer> shards, Function<Integer, List<T>> query) {
+        List<Integer> shardList = new ArrayList<>();
+        shards.forEach(shardList::add);
+        if (shardList.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // the last shard runs here while the pool has the others
+        List<CompletableFuture<List<T>>> results = new ArrayList<>();
+        for (Integer shard : shardList.subList(0, shardList.size() - 1)) {
+            results.add(CompletableFuture.supplyAsync(() -> query.apply(shard), fanOut));
+        }
+        List<T> last = query.apply(shardList.get(shardList.size() - 1));
+        List<T> merged = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<T>> result : results) {
+                merged.addAll(result.join());
+            }
+            merged.addAll(last);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return merged;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // the shard pools aren't beans, so Spring Boot doesn't bind their metrics
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof HikariDataSource && ((HikariDataSource) dataSource).getMetricsTrackerFactory() == null) {
+                ((HikariDataSource) dataSource).setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        fanOut.shutdown();
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof Closeable) {
+                ((Closeable) dataSource).close();
+            }
+        }
+    }
+
+    private static class IdBlock {
+
+        private long next;
+
+        private int remaining;
+    }
+
+}
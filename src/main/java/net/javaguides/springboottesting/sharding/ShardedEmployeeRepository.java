@@ -0,0 +1,544 @@
+package net.javaguides.springboottesting.sharding;
+
+import net.javaguides.springboottesting.dto.EmployeePatch;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeStore;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// EmployeeStore over the hash-partitioned tables of EmployeeShards, takes the place of the JPA
+// repository in the service layer once employees.sharding.urls is set. Only the store is
+// implemented, not the rest of JpaRepository.
+//
+// By id (findById, save of an existing row, patch, delete) a call goes to the one shard the id
+// routes to; findByEmail asks the email's claim shard for the id first. Everything else (pages,
+// name queries, exports) runs on all shards in parallel and merges by id, each shard returning at
+// most offset + limit rows.
+//
+// Email uniqueness across shards: every email is claimed in employee_emails on its hash shard
+// before the row is written, and the primary key of that table rejects a second claim. A claim
+// whose row never made it (the insert failed after the claim and so did its cleanup) is taken
+// over once it is older than CLAIM_GRACE_PERIOD; younger ones may still belong to an insert in
+// flight. Duplicate emails surface as the same DataIntegrityViolationException the JPA
+// repository throws for uk_employees_email, so EmployeeServiceImpl handles both alike.
+@Repository
+@Primary
+@ConditionalOnProperty(name = "employees.sharding.urls")
+public class ShardedEmployeeRepository implements EmployeeStore {
+
+    static final Duration CLAIM_GRACE_PERIOD = Duration.ofMinutes(1);
+
+    private static final String COLUMNS = "id, first_name, last_name, email, version";
+
+    // page size of streamAll()
+    private static final int STREAM_PAGE_SIZE = 500;
+
+    private static final RowMapper<Employee> EMPLOYEE = (rs, row) -> Employee.builder()
+            .id(rs.getLong("id"))
+            .firstName(rs.getString("first_name"))
+            .lastName(rs.getString("last_name"))
+            .email(rs.getString("email"))
+            .version(rs.getLong("version"))
+            .build();
+
+    private static final RowMapper<EmployeeView> VIEW = (rs, row) -> new EmployeeView(rs.getLong("id"),
+            rs.getString("first_name"), rs.getString("last_name"), rs.getString("email"), rs.getLong("version"));
+
+    private final EmployeeShards shards;
+
+    public ShardedEmployeeRepository(EmployeeShards shards) {
+        this.shards = shards;
+    }
+
+    // writes
+
+    @Override
+    public <S extends Employee> S save(S employee) {
+        if (employee.getId() == null) {
+            insert(employee);
+        } else {
+            update(employee);
+        }
+        return employee;
+    }
+
+    @Override
+    public <S extends Employee> S saveAndFlush(S employee) {
+        return save(employee);
+    }
+
+    // claims per email shard, then rows per id shard, each batch in one local transaction;
+    // anything already written is undone when a later batch fails
+    @Override
+    public <S extends Employee> List<S> saveAll(Iterable<S> employees) {
+        List<S> toInsert = new ArrayList<>();
+        for (S employee : employees) {
+            if (employee.getId() == null) {
+                requireEmail(employee);
+                toInsert.add(employee);
+            } else {
+                update(employee);
+            }
+        }
+        if (toInsert.isEmpty()) {
+            return toInsert;
+        }
+
+        for (S employee : toInsert) {
+            employee.setId(shards.nextId());
+        }
+        Map<Integer, List<S>> byEmailShard = toInsert.stream()
+                .collect(Collectors.groupingBy(e -> shards.shardForEmail(e.getEmail())));
+        Map<Integer, List<S>> byIdShard = toInsert.stream()
+                .collect(Collectors.groupingBy(e -> shards.shardForId(e.getId())));
+
+        List<S> claimed = new ArrayList<>();
+        List<S> written = new ArrayList<>();
+        try {
+            Timestamp now = Timestamp.from(Instant.now());
+            byEmailShard.forEach((shard, batch) -> {
+                shards.transaction(shard).executeWithoutResult(status -> shards.jdbc(shard).batchUpdate(
+                        "insert into employee_emails (email, employee_id, claimed_at) values (?, ?, ?)",
+                        batch.stream().map(e -> new Object[]{e.getEmail(), e.getId(), now}).collect(Collectors.toList())));
+                claimed.addAll(batch);
+            });
+            byIdShard.forEach((shard, batch) -> {
+                shards.transaction(shard).executeWithoutResult(status -> shards.jdbc(shard).batchUpdate(
+                        "insert into employees (" + COLUMNS + ") values (?, ?, ?, ?, 0)",
+                        batch.stream().map(e -> new Object[]{e.getId(), e.getFirstName(), e.getLastName(), e.getEmail()})
+                                .collect(Collectors.toList())));
+                written.addAll(batch);
+            });
+        } catch (RuntimeException e) {
+            deleteRows(written.stream().map(Employee::getId).collect(Collectors.toList()));
+            releaseEmails(claimed);
+            toInsert.forEach(employee -> employee.setId(null));
+            if (e instanceof DuplicateKeyException) {
+                throw duplicateEmail("one of " + toInsert.size() + " emails", (DuplicateKeyException) e);
+            }
+            throw e;
+        }
+
+        toInsert.forEach(employee -> employee.setVersion(0L));
+        return toInsert;
+    }
+
+    private void insert(Employee employee) {
+        requireEmail(employee);
+        long id = shards.nextId();
+        claimEmail(employee.getEmail(), id);
+        try {
+            shards.jdbc(shards.shardForId(id)).update("insert into employees (" + COLUMNS + ") values (?, ?, ?, ?, 0)",
+                    id, employee.getFirstName(), employee.getLastName(), employee.getEmail());
+        } catch (RuntimeException e) {
+            releaseEmail(employee.getEmail(), id);
+            throw e;
+        }
+        employee.setId(id);
+        employee.setVersion(0L);
+    }
+
+    // like a merge of a detached entity: checked against its version when it has one
+    private void update(Employee employee) {
+        requireEmail(employee);
+        Long id = employee.getId();
+        int shard = shards.shardForId(id);
+        Optional<Employee> current = findById(id);
+        if (current.isEmpty()) {
+            throw new OptimisticLockingFailureException("Employee was deleted concurrently: " + id);
+        }
+
+        String currentEmail = current.get().getEmail();
+        boolean emailChanged = !currentEmail.equals(employee.getEmail());
+        if (emailChanged) {
+            claimEmail(employee.getEmail(), id);
+        }
+
+        long version = employee.getVersion() == null ? current.get().getVersion() : employee.getVersion();
+        int updated;
+        try {
+            updated = shards.jdbc(shard).update("update employees set first_name = ?, last_name = ?, email = ?, "
+                            + "version = version + 1 where id = ? and version = ?",
+                    employee.getFirstName(), employee.getLastName(), employee.getEmail(), id, version);
+        } catch (RuntimeException e) {
+            if (emailChanged) {
+                releaseEmail(employee.getEmail(), id);
+            }
+            throw e;
+        }
+        if (updated == 0) {
+            if (emailChanged) {
+                releaseEmail(employee.getEmail(), id);
+            }
+            throw new OptimisticLockingFailureException("Employee was modified concurrently: " + id);
+        }
+        if (emailChanged) {
+            releaseEmail(currentEmail, id);
+        }
+        employee.setVersion(version + 1);
+    }
+
+    @Override
+    public int patch(Long id, EmployeePatch patch) {
+        int shard = shards.shardForId(id);
+        String currentEmail = patch.getEmail() == null ? null : findById(id).map(Employee::getEmail).orElse(null);
+        boolean emailChanged = currentEmail != null && !currentEmail.equals(patch.getEmail());
+        if (emailChanged) {
+            claimEmail(patch.getEmail(), id);
+        }
+
+        List<Object> args = new ArrayList<>();
+        String sql = "update employees set " + setChangedColumns(patch, args) + " where id = ?";
+        args.add(id);
+        if (patch.getVersion() != null) {
+            sql += " and version = ?";
+            args.add(patch.getVersion());
+        }
+        int updated;
+        try {
+            updated = shards.jdbc(shard).update(sql, args.toArray());
+        } catch (RuntimeException e) {
+            if (emailChanged) {
+                releaseEmail(patch.getEmail(), id);
+            }
+            throw e;
+        }
+        if (emailChanged) {
+            releaseEmail(updated == 1 ? currentEmail : patch.getEmail(), id);
+        }
+        return updated;
+    }
+
+    // one statement per shard; an email change goes through patch() per id for its claim
+    @Override
+    public int patchAll(Collection<Long> ids, EmployeePatch patch) {
+        if (patch.getEmail() != null) {
+            int updated = 0;
+            for (Long id : ids) {
+                Optional<Employee> current = findById(id);
+                if (current.isPresent()) {
+                    updated += patch(id, new EmployeePatch(patch.getFirstName(), patch.getLastName(),
+                            patch.getEmail(), current.get().getVersion()));
+                }
+            }
+            return updated;
+        }
+
+        Map<Integer, List<Long>> byShard = byIdShard(ids);
+        return shards.onShards(byShard.keySet(), shard -> {
+            List<Object> args = new ArrayList<>();
+            String set = setChangedColumns(patch, args);
+            Map<String, Object> params = new HashMap<>();
+            params.put("ids", byShard.get(shard));
+            for (int i = 0; i < args.size(); i++) {
+                params.put("p" + i, args.get(i));
+            }
+            return List.of(shards.named(shard).update("update employees set " + named(set) + " where id in (:ids)", params));
+        }).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private static String setChangedColumns(EmployeePatch patch, List<Object> args) {
+        StringBuilder set = new StringBuilder();
+        if (patch.getFirstName() != null) {
+            set.append("first_name = ?, ");
+            args.add(patch.getFirstName());
+        }
+        if (patch.getLastName() != null) {
+            set.append("last_name = ?, ");
+            args.add(patch.getLastName());
+        }
+        if (patch.getEmail() != null) {
+            set.append("email = ?, ");
+            args.add(patch.getEmail());
+        }
+        return set.append("version = version + 1").toString();
+    }
+
+    // the ? of setChangedColumns as :p0, :p1, ... for NamedParameterJdbcTemplate
+    private static String named(String sql) {
+        StringBuilder named = new StringBuilder();
+        int parameter = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                named.append(":p").append(parameter++);
+            } else {
+                named.append(c);
+            }
+        }
+        return named.toString();
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        if (deleteByIdIn(List.of(id)) == 0) {
+            throw new EmptyResultDataAccessException("No employee with id " + id + " exists", 1);
+        }
+    }
+
+    @Override
+    public int deleteByIdIn(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Map<Integer, List<Long>> byShard = byIdShard(ids);
+        List<Employee> deleted = shards.onShards(byShard.keySet(), shard -> {
+            Map<String, Object> params = Map.of("ids", byShard.get(shard));
+            List<Employee> rows = shards.named(shard).query("select " + COLUMNS + " from employees where id in (:ids)", params, EMPLOYEE);
+            shards.named(shard).update("delete from employees where id in (:ids)", params);
+            return rows;
+        });
+        releaseEmails(deleted);
+        return deleted.size();
+    }
+
+    private void deleteRows(Collection<Long> ids) {
+        if (!ids.isEmpty()) {
+            Map<Integer, List<Long>> byShard = byIdShard(ids);
+            byShard.forEach((shard, shardIds) ->
+                    shards.named(shard).update("delete from employees where id in (:ids)", Map.of("ids", shardIds)));
+        }
+    }
+
+    public void deleteAll() {
+        shards.onEachShard(shard -> {
+            shards.jdbc(shard).update("delete from employees");
+            shards.jdbc(shard).update("delete from employee_emails");
+            return List.of();
+        });
+    }
+
+    @Override
+    public void flush() {
+        // every call above is written right away
+    }
+
+    // email claims
+
+    private void claimEmail(String email, long id) {
+        try {
+            shards.jdbc(shards.shardForEmail(email)).update(
+                    "insert into employee_emails (email, employee_id, claimed_at) values (?, ?, ?)",
+                    email, id, Timestamp.from(Instant.now()));
+        } catch (DuplicateKeyException e) {
+            if (!takeOverAbandonedClaim(email, id)) {
+                throw duplicateEmail(email, e);
+            }
+        }
+    }
+
+    private boolean takeOverAbandonedClaim(String email, long id) {
+        int shard = shards.shardForEmail(email);
+        List<Object[]> claims = shards.jdbc(shard).query("select employee_id, claimed_at from employee_emails where email = ?",
+                (rs, row) -> new Object[]{rs.getLong(1), rs.getTimestamp(2)}, email);
+        if (claims.isEmpty()) {
+            // released in the meantime, try once more
+            return shards.jdbc(shard).update("insert into employee_emails (email, employee_id, claimed_at) "
+                    + "select ?, ?, ? where not exists (select 1 from employee_emails where email = ?)",
+                    email, id, Timestamp.from(Instant.now()), email) == 1;
+        }
+
+        long owner = (Long) claims.get(0)[0];
+        Timestamp claimedAt = (Timestamp) claims.get(0)[1];
+        if (claimedAt.toInstant().isAfter(Instant.now().minus(CLAIM_GRACE_PERIOD))
+                || findById(owner).filter(e -> email.equals(e.getEmail())).isPresent()) {
+            return false;
+        }
+        return shards.jdbc(shard).update("update employee_emails set employee_id = ?, claimed_at = ? where email = ? and employee_id = ?",
+                id, Timestamp.from(Instant.now()), email, owner) == 1;
+    }
+
+    private void releaseEmail(String email, long id) {
+        shards.jdbc(shards.shardForEmail(email)).update("delete from employee_emails where email = ? and employee_id = ?", email, id);
+    }
+
+    private void releaseEmails(Collection<? extends Employee> employees) {
+        employees.stream()
+                .collect(Collectors.groupingBy(e -> shards.shardForEmail(e.getEmail())))
+                .forEach((shard, batch) -> shards.jdbc(shard).batchUpdate(
+                        "delete from employee_emails where email = ? and employee_id = ?",
+                        batch.stream().map(e -> new Object[]{e.getEmail(), e.getId()}).collect(Collectors.toList())));
+    }
+
+    private static void requireEmail(Employee employee) {
+        if (employee.getEmail() == null) {
+            throw new DataIntegrityViolationException("Employee email must not be null");
+        }
+    }
+
+    private static DataIntegrityViolationException duplicateEmail(String email, DuplicateKeyException cause) {
+        SQLException sqlException = cause.getMostSpecificCause() instanceof SQLException
+                ? (SQLException) cause.getMostSpecificCause()
+                : new SQLException(cause.getMessage());
+        return new DataIntegrityViolationException("Employee already exists with given email: " + email,
+                new ConstraintViolationException("Duplicate email " + email, sqlException, Employee.EMAIL_CONSTRAINT));
+    }
+
+    // point reads
+
+    public Optional<Employee> findById(Long id) {
+        return shards.jdbc(shards.shardForId(id))
+                .query("select " + COLUMNS + " from employees where id = ?", EMPLOYEE, id)
+                .stream().findFirst();
+    }
+
+    @Override
+    public Optional<EmployeeView> findViewById(Long id) {
+        return shards.jdbc(shards.shardForId(id))
+                .query("select " + COLUMNS + " from employees where id = ?", VIEW, id)
+                .stream().findFirst();
+    }
+
+    @Override
+    public List<EmployeeView> findViewsByIdIn(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Integer, List<Long>> byShard = byIdShard(ids);
+        return shards.onShards(byShard.keySet(), shard -> shards.named(shard).query(
+                "select " + COLUMNS + " from employees where id in (:ids)", Map.of("ids", byShard.get(shard)), VIEW));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return findViewById(id).isPresent();
+    }
+
+    // the claim names the id, the row is checked too in case the claim belongs to an insert in flight
+    public Optional<Employee> findByEmail(String email) {
+        return shards.jdbc(shards.shardForEmail(email))
+                .queryForList("select employee_id from employee_emails where email = ?", Long.class, email)
+                .stream().findFirst()
+                .flatMap(this::findById)
+                .filter(employee -> email.equals(employee.getEmail()));
+    }
+
+    @Override
+    public List<String> findExistingEmails(Collection<String> emails) {
+        Map<Integer, List<String>> byShard = emails.stream().collect(Collectors.groupingBy(shards::shardForEmail));
+        return shards.onShards(byShard.keySet(), shard -> shards.named(shard).queryForList(
+                "select email from employee_emails where email in (:emails)", Map.of("emails", byShard.get(shard)), String.class));
+    }
+
+    @Override
+    public List<Employee> findAllById(Iterable<Long> ids) {
+        List<Long> list = new ArrayList<>();
+        ids.forEach(list::add);
+        if (list.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Integer, List<Long>> byShard = byIdShard(list);
+        return shards.onShards(byShard.keySet(), shard -> shards.named(shard).query(
+                "select " + COLUMNS + " from employees where id in (:ids)", Map.of("ids", byShard.get(shard)), EMPLOYEE));
+    }
+
+    // fan-out reads, merged by id
+
+    @Override
+    public List<EmployeeView> findAllViews() {
+        return sorted(shards.onEachShard(shard -> shards.jdbc(shard).query("select " + COLUMNS + " from employees", VIEW)),
+                EmployeeView::getId);
+    }
+
+    public long count() {
+        return shards.onEachShard(shard -> List.of(shards.jdbc(shard).queryForObject("select count(*) from employees", Long.class)))
+                .stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public List<EmployeeView> findViewsByIdGreaterThan(Long id, Pageable pageable) {
+        return page(pageable, EmployeeView::getId, VIEW, "id > ?", id);
+    }
+
+    @Override
+    public List<EmployeeView> findViewsByFirstNameAndLastName(String firstName, String lastName, Pageable pageable) {
+        return page(pageable, EmployeeView::getId, VIEW, "first_name = ? and last_name = ?", firstName, lastName);
+    }
+
+    @Override
+    public List<Long> findIdsByEmailEndingWith(String suffix) {
+        String pattern = "%" + suffix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        List<Long> ids = shards.onEachShard(shard -> shards.jdbc(shard).queryForList(
+                "select id from employees where email like ? escape '\\'", Long.class, pattern));
+        ids.sort(Comparator.naturalOrder());
+        return ids;
+    }
+
+    // pages of findViewsByIdGreaterThan, nothing is held open between them
+    @Override
+    public Stream<EmployeeView> streamAll() {
+        Iterator<EmployeeView> rows = new Iterator<>() {
+
+            private List<EmployeeView> page = findViewsByIdGreaterThan(0L, Pageable.ofSize(STREAM_PAGE_SIZE));
+
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == page.size() && page.size() == STREAM_PAGE_SIZE) {
+                    page = findViewsByIdGreaterThan(page.get(page.size() - 1).getId(), Pageable.ofSize(STREAM_PAGE_SIZE));
+                    next = 0;
+                }
+                return next < page.size();
+            }
+
+            @Override
+            public EmployeeView next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(next++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // every shard returns its first offset + size rows in id order, the merge skips offset and keeps size
+    private <T> List<T> page(Pageable pageable, Function<T, Long> id, RowMapper<T> mapper, String where, Object... args) {
+        long limit = pageable.getOffset() + pageable.getPageSize();
+        List<T> rows = sorted(shards.onEachShard(shard -> shards.jdbc(shard).query(
+                "select " + COLUMNS + " from employees where " + where + " order by id limit " + limit, mapper, args)), id);
+        return rows.stream()
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .collect(Collectors.toList());
+    }
+
+    private static <T> List<T> sorted(List<T> rows, Function<T, Long> id) {
+        rows.sort(Comparator.comparing(id));
+        return rows;
+    }
+
+    private Map<Integer, List<Long>> byIdShard(Collection<Long> ids) {
+        return ids.stream().collect(Collectors.groupingBy(shards::shardForId));
+    }
+
+}
@@ -0,0 +1,282 @@
+package net.javaguides.springboottesting.snapshot;
+
+import net.javaguides.springboottesting.dto.EmployeeView;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// Binary layout of an employees snapshot, big-endian:
+//
+//   header   magic "EMPSNAP" + format version byte
+//   block    int rows, int payload length, int CRC32C of the payload, payload
+//   ...
+//   trailer  int -1, long total rows, int block count
+//
+// A payload holds its rows back to back: long id, long version (-1 for none), then first name,
+// last name and email, each as an unsigned short length and that many bytes of UTF-8.
+//
+// Writer fills one block in memory and writes it with its header through the FileChannel. Reader
+// maps the file in windows of up to a gigabyte; verify() checks every block's checksum and the
+// trailer without decoding a row, read() decodes the rows a block at a time. A file that was cut
+// short, has a flipped bit or isn't a snapshot fails with SnapshotCorruptedException.
+final class EmployeeSnapshotFile {
+
+    static final byte[] MAGIC = {'E', 'M', 'P', 'S', 'N', 'A', 'P', 1};
+
+    static final int BLOCK_SIZE = 1 << 20;
+
+    private static final int BLOCK_HEADER = 3 * Integer.BYTES;
+
+    private static final int TRAILER = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private static final int END = -1;
+
+    private static final long NO_VERSION = -1;
+
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private EmployeeSnapshotFile() {
+    }
+
+    static class SnapshotCorruptedException extends IOException {
+
+        SnapshotCorruptedException(Path file, String message) {
+            super(file + " is not a valid employee snapshot: " + message);
+        }
+    }
+
+    static class Writer implements AutoCloseable {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+
+        private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+
+        private final CRC32C crc = new CRC32C();
+
+        private int blockRows;
+
+        private int blocks;
+
+        private long rows;
+
+        Writer(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            writeFully(ByteBuffer.wrap(MAGIC));
+        }
+
+        void write(long id, Long version, String firstName, String lastName, String email) throws IOException {
+            byte[] first = utf8(firstName);
+            byte[] last = utf8(lastName);
+            byte[] mail = utf8(email);
+            int length = 2 * Long.BYTES + 3 * Short.BYTES + first.length + last.length + mail.length;
+            if (block.remaining() < length) {
+                flushBlock();
+            }
+            block.putLong(id);
+            block.putLong(version != null ? version : NO_VERSION);
+            putString(first);
+            putString(last);
+            putString(mail);
+            blockRows++;
+            rows++;
+        }
+
+        long rows() {
+            return rows;
+        }
+
+        // writes the trailer and forces the file to disk
+        void finish() throws IOException {
+            flushBlock();
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+            trailer.putInt(END).putLong(rows).putInt(blocks).flip();
+            writeFully(trailer);
+            channel.force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockRows == 0) {
+                return;
+            }
+            block.flip();
+            crc.reset();
+            crc.update(block.duplicate());
+            header.clear();
+            header.putInt(blockRows).putInt(block.remaining()).putInt((int) crc.getValue()).flip();
+            writeFully(header);
+            writeFully(block);
+            block.clear();
+            blockRows = 0;
+            blocks++;
+        }
+
+        private void putString(byte[] bytes) {
+            block.putShort((short) bytes.length);
+            block.put(bytes);
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private static byte[] utf8(String value) {
+            byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            if (bytes.length > MAX_STRING_BYTES) {
+                throw new IllegalArgumentException("Value of " + bytes.length + " bytes doesn't fit a snapshot");
+            }
+            return bytes;
+        }
+    }
+
+    static class Reader implements AutoCloseable {
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private final long size;
+
+        private MappedByteBuffer window;
+
+        private long windowStart;
+
+        private byte[] stringBuffer = new byte[256];
+
+        Reader(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = channel.size();
+            ByteBuffer magic = region(0, MAGIC.length);
+            for (byte expected : MAGIC) {
+                if (magic.get() != expected) {
+                    throw new SnapshotCorruptedException(file, "unknown header");
+                }
+            }
+        }
+
+        // the number of rows, once every block's checksum and the trailer were found intact
+        long verify() throws IOException {
+            CRC32C crc = new CRC32C();
+            return walk((payload, rows, checksum) -> {
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    throw new SnapshotCorruptedException(file, "checksum mismatch");
+                }
+            });
+        }
+
+        // the rows block by block, in file order, which is id order; call verify() first, read()
+        // only checks the structure
+        long read(Consumer<List<EmployeeView>> consumer) throws IOException {
+            return walk((payload, rows, checksum) -> {
+                List<EmployeeView> employees = new ArrayList<>(rows);
+                try {
+                    for (int i = 0; i < rows; i++) {
+                        long id = payload.getLong();
+                        long version = payload.getLong();
+                        employees.add(new EmployeeView(id, getString(payload), getString(payload), getString(payload),
+                                version == NO_VERSION ? null : version));
+                    }
+                } catch (BufferUnderflowException e) {
+                    throw new SnapshotCorruptedException(file, "block shorter than its rows");
+                }
+                if (payload.hasRemaining()) {
+                    throw new SnapshotCorruptedException(file, "block longer than its rows");
+                }
+                consumer.accept(employees);
+            });
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private interface BlockVisitor {
+            void visit(ByteBuffer payload, int rows, int checksum) throws IOException;
+        }
+
+        private long walk(BlockVisitor visitor) throws IOException {
+            long position = MAGIC.length;
+            long rows = 0;
+            int blocks = 0;
+            while (true) {
+                if (position + Integer.BYTES > size) {
+                    throw new SnapshotCorruptedException(file, "cut short, no trailer");
+                }
+                int blockRows = region(position, Integer.BYTES).getInt();
+                if (blockRows == END) {
+                    if (position + TRAILER != size) {
+                        throw new SnapshotCorruptedException(file, "trailer not at the end of the file");
+                    }
+                    ByteBuffer trailer = region(position + Integer.BYTES, TRAILER - Integer.BYTES);
+                    if (trailer.getLong() != rows || trailer.getInt() != blocks) {
+                        throw new SnapshotCorruptedException(file, "row or block count doesn't match the trailer");
+                    }
+                    return rows;
+                }
+                if (position + BLOCK_HEADER > size) {
+                    throw new SnapshotCorruptedException(file, "cut short in a block header");
+                }
+                ByteBuffer header = region(position, BLOCK_HEADER);
+                header.getInt();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (blockRows <= 0 || length <= 0 || length > BLOCK_SIZE || position + BLOCK_HEADER + length > size) {
+                    throw new SnapshotCorruptedException(file, "invalid block header");
+                }
+                visitor.visit(region(position + BLOCK_HEADER, length), blockRows, checksum);
+                position += BLOCK_HEADER + length;
+                rows += blockRows;
+                blocks++;
+            }
+        }
+
+        // a buffer over [position, position + length), remapping the window when it doesn't cover it
+        private ByteBuffer region(long position, int length) throws IOException {
+            if (position + length > size) {
+                throw new SnapshotCorruptedException(file, "cut short");
+            }
+            if (window == null || position < windowStart || position + length > windowStart + window.capacity()) {
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+            }
+            ByteBuffer region = window.duplicate();
+            region.position((int) (position - windowStart));
+            region.limit((int) (position - windowStart) + length);
+            return region.slice();
+        }
+
+        private String getString(ByteBuffer payload) {
+            int length = Short.toUnsignedInt(payload.getShort());
+            if (length > stringBuffer.length) {
+                stringBuffer = new byte[Math.max(length, stringBuffer.length * 2)];
+            }
+            payload.get(stringBuffer, 0, length);
+            return new String(stringBuffer, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,253 @@
+package net.javaguides.springboottesting.snapshot;
+
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.datasource.DataSourceRouting;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.sharding.EmployeeShards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Binary snapshots of the employees table (see EmployeeSnapshotFile) for seeding an environment
+// and for warm starts.
+//
+// export() streams the table over JDBC in id order into a temporary file next to the target and
+// moves it into place once complete, so a crash never leaves half a snapshot under the name.
+// load() first checks every checksum of the mapped file, then inserts block by block with JDBC
+// batches, one transaction per block, and moves employees_seq past the highest id. Neither goes
+// through JPA or EmployeeService: there are no EmployeeChangedEvents and no outbox rows, so
+// consumers of the change stream have to reload.
+//
+// load() is meant for an empty table before the application takes requests, which is where
+// start() below calls it: the search index and the column store fill themselves once the
+// application is ready, and a block of ids Hibernate already handed out could collide with the
+// loaded ones. A load that fails halfway deletes the ids up to the highest one it read, which
+// nothing else can have written while the table was empty and the web servers weren't started.
+//
+// With employees.snapshot.path set the snapshot is loaded on startup when the file exists and
+// the table is empty, and written again on shutdown. Both run in a lifecycle phase below the web
+// servers', so the load is done before Tomcat or the reactive server accept a request and the
+// export only starts once they stopped.
+@Component
+public class EmployeeSnapshots implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(EmployeeSnapshots.class);
+
+    // Tomcat starts in phase Integer.MAX_VALUE - 1, ReactiveEmployeeServer in DEFAULT_PHASE
+    private static final int PHASE = 0;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final int EXPORT_FETCH_SIZE = 1000;
+
+    private static final String INSERT =
+            "insert into employees (id, version, first_name, last_name, email) values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transaction;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final EmployeeCache employeeCache;
+
+    private final ObjectProvider<EmployeeShards> shards;
+
+    private final String path;
+
+    private final boolean primeCache;
+
+    private final long cacheSize;
+
+    private volatile boolean running;
+
+    public EmployeeSnapshots(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                             EmployeeCache employeeCache, ObjectProvider<EmployeeShards> shards,
+                             @Value("${employees.snapshot.path:}") String path,
+                             @Value("${employees.snapshot.prime-cache:false}") boolean primeCache,
+                             @Value("${employees.cache.maximum-size:10000}") long cacheSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.employeeCache = employeeCache;
+        this.shards = shards;
+        this.path = path;
+        this.primeCache = primeCache;
+        this.cacheSize = cacheSize;
+    }
+
+    @Override
+    public void start() {
+        if (!path.isEmpty() && Files.exists(Paths.get(path))) {
+            if (count() > 0) {
+                log.warn("Snapshot {} not loaded, the employees table isn't empty", path);
+            } else {
+                try {
+                    load(Paths.get(path), primeCache);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (!path.isEmpty()) {
+            try {
+                export(Paths.get(path));
+            } catch (IOException | RuntimeException e) {
+                log.error("Snapshot export to {} failed", path, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    // the number of employees written, all as of one read-only transaction
+    public long export(Path file) throws IOException {
+        requireUnsharded();
+        long start = System.nanoTime();
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            long rows;
+            try (EmployeeSnapshotFile.Writer writer = new EmployeeSnapshotFile.Writer(temporary)) {
+                readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                    // a forward-only cursor, so the table is never held in memory
+                    PreparedStatement statement = connection.prepareStatement(
+                            "select id, version, first_name, last_name, email from employees order by id");
+                    statement.setFetchSize(EXPORT_FETCH_SIZE);
+                    return statement;
+                }, resultSet -> {
+                    try {
+                        long version = resultSet.getLong(2);
+                        writer.write(resultSet.getLong(1), resultSet.wasNull() ? null : version,
+                                resultSet.getString(3), resultSet.getString(4), resultSet.getString(5));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+                writer.finish();
+                rows = writer.rows();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Exported {} employees to {} in {} ms", rows, file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return rows;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // the number of employees loaded; the table has to be empty
+    public long load(Path file, boolean primeCache) throws IOException {
+        requireUnsharded();
+        long start = System.nanoTime();
+        try (EmployeeSnapshotFile.Reader reader = new EmployeeSnapshotFile.Reader(file)) {
+            long rows = reader.verify();
+            if (count() > 0) {
+                throw new IllegalStateException("Snapshots only load into an empty employees table");
+            }
+
+            Deque<EmployeeView> newest = new ArrayDeque<>();
+            // highest id read so far, set before its block is inserted
+            AtomicLong maxId = new AtomicLong(Long.MIN_VALUE);
+            DataSourceRouting.onPrimary(() -> {
+                try {
+                    reader.read(employees -> {
+                        employees.forEach(employee -> maxId.accumulateAndGet(employee.getId(), Math::max));
+                        insert(employees);
+                        if (primeCache) {
+                            keepNewest(newest, employees);
+                        }
+                    });
+                    if (rows > 0) {
+                        // a sequence value hands out the ids from itself up (see Employee)
+                        jdbcTemplate.execute("alter sequence employees_seq restart with " + (maxId.get() + 1));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // blocks before the failed one are committed, the failed one was rolled back
+                    if (maxId.get() != Long.MIN_VALUE) {
+                        jdbcTemplate.update("delete from employees where id <= ?", maxId.get());
+                    }
+                    throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+                }
+                return null;
+            });
+
+            // ids that were cached before the table was emptied; the stamp is taken after, since
+            // invalidateAll() moves it and would drop every put below
+            employeeCache.invalidateAll();
+            long stamp = employeeCache.stamp();
+            newest.forEach(employee -> employeeCache.put(employee, stamp));
+            log.info("Loaded {} employees from {} in {} ms", rows, file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return rows;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void insert(List<EmployeeView> employees) {
+        transaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT, employees, BATCH_SIZE, (statement, employee) -> {
+            statement.setLong(1, employee.getId());
+            statement.setObject(2, employee.getVersion());
+            statement.setString(3, employee.getFirstName());
+            statement.setString(4, employee.getLastName());
+            statement.setString(5, employee.getEmail());
+        }));
+    }
+
+    // the highest ids are the most recently created, the likeliest to be read
+    private void keepNewest(Deque<EmployeeView> newest, List<EmployeeView> employees) {
+        for (EmployeeView employee : employees) {
+            newest.addLast(employee);
+            if (newest.size() > cacheSize) {
+                newest.removeFirst();
+            }
+        }
+    }
+
+    private long count() {
+        return DataSourceRouting.onPrimary(() -> jdbcTemplate.queryForObject("select count(*) from employees", Long.class));
+    }
+
+    private void requireUnsharded() {
+        if (shards.getIfAvailable() != null) {
+            throw new IllegalStateException("Snapshots cover the employees table of spring.datasource, not sharded employees");
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package net.javaguides.springboottesting.startup;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+// Training run for the AppCDS archive of the faststart build profile: once the application is
+// ready it sends one read request through the whole stack (controller, service, repository,
+// Jackson) and exits, so the JVM started with -XX:ArchiveClassesAtExit records the classes of a
+// startup plus a first request. Only reads, it may run against any database.
+@Component
+@ConditionalOnProperty(name = "employees.startup.training-run", havingValue = "true")
+public class TrainingRun implements ApplicationListener<ApplicationReadyEvent> {
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        int port = ((WebServerApplicationContext) event.getApplicationContext()).getWebServer().getPort();
+        try {
+            HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/employees?limit=1")).build(),
+                    HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            throw new IllegalStateException("Training request failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+
+}
@@ -0,0 +1,69 @@
+package net.javaguides.springboottesting.admission;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveConcurrencyLimitTests {
+
+    private AdaptiveConcurrencyLimit limit;
+
+    @BeforeEach
+    public void setup(){
+        limit = new AdaptiveConcurrencyLimit(20, 4, 200);
+    }
+
+    @DisplayName("JUnit test for a fully used limit at steady latency")
+    @Test
+    public void givenSteadyLatencyAtTheLimit_whenSampled_thenLimitGrows(){
+        // given - precondition of setup
+        int initial = limit.getLimit();
+
+        // when - action or the behaviour that we are going test
+        windows(10, 5);
+
+        // then - verify the output
+        assertThat(limit.getLimit()).isGreaterThan(initial);
+    }
+
+    @DisplayName("JUnit test for latency rising under the same load")
+    @Test
+    public void givenRisingLatency_whenSampled_thenLimitShrinks(){
+        // given - precondition of setup
+        windows(10, 5);
+        int before = limit.getLimit();
+
+        // when - action or the behaviour that we are going test
+        windows(10, 50);
+
+        // then - verify the output
+        assertThat(limit.getLimit()).isLessThan(before);
+    }
+
+    @DisplayName("JUnit test for a load that never comes near the limit")
+    @Test
+    public void givenFewRequestsInFlight_whenSampled_thenLimitStays(){
+        // given - precondition of setup
+        int initial = limit.getLimit();
+
+        // when - action or the behaviour that we are going test
+        for (int i = 0; i < 10 * AdaptiveConcurrencyLimit.SAMPLES_PER_WINDOW; i++) {
+            limit.onSample(TimeUnit.MILLISECONDS.toNanos(5), 1);
+        }
+
+        // then - verify the output
+        assertThat(limit.getLimit()).isEqualTo(initial);
+    }
+
+    // windows of samples taken with the whole limit in flight
+    private void windows(int count, long rttMillis) {
+        for (int i = 0; i < count * AdaptiveConcurrencyLimit.SAMPLES_PER_WINDOW; i++) {
+            limit.onSample(TimeUnit.MILLISECONDS.toNanos(rttMillis), limit.getLimit());
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+package net.javaguides.springboottesting.admission;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmployeeAdmissionFilterTests {
+
+    private EmployeeAdmissionFilter filter;
+
+    private MeterRegistry registry;
+
+    @BeforeEach
+    public void setup(){
+        // a fixed limit of two, one of them kept for writes
+        filter = new EmployeeAdmissionFilter(2, 2, 2, 0.5);
+        registry = new SimpleMeterRegistry();
+        filter.bindTo(registry);
+    }
+
+    @DisplayName("JUnit test for a second read that would take the share kept for writes")
+    @Test
+    public void givenReadInFlight_whenSecondRead_thenTooManyRequests() throws Exception {
+        // given - precondition of setup
+        List<MockHttpServletResponse> responses = new ArrayList<>();
+
+        // when - action or the behaviour that we are going test
+        filter.doFilter(request("GET", "/api/employees"), new MockHttpServletResponse(), (request, response) -> {
+            responses.add(send("GET", "/api/employees/1", (r, s) -> { }));
+            responses.add(send("POST", "/api/employees", (r, s) -> { }));
+        });
+
+        // then - verify the output
+        assertThat(responses.get(0).getStatus()).isEqualTo(429);
+        assertThat(responses.get(0).getHeader("Retry-After")).isEqualTo("1");
+        assertThat(responses.get(1).getStatus()).isEqualTo(200);
+        assertThat(registry.get("employees.admission.rejected").tag("lane", "read").tag("status", "429").counter().count())
+                .isEqualTo(1);
+        assertThat(filter.inFlight()).isZero();
+    }
+
+    @DisplayName("JUnit test for a request when the whole limit is in flight")
+    @Test
+    public void givenLimitInFlight_whenRequest_thenServiceUnavailable() throws Exception {
+        // given - precondition of setup
+        List<MockHttpServletResponse> responses = new ArrayList<>();
+
+        // when - action or the behaviour that we are going test
+        filter.doFilter(request("GET", "/api/employees"), new MockHttpServletResponse(), (request, response) ->
+                send("DELETE", "/api/employees/1", (r, s) -> responses.add(send("PUT", "/api/employees/2", (r2, s2) -> { }))));
+
+        // then - verify the output
+        assertThat(responses.get(0).getStatus()).isEqualTo(503);
+        assertThat(registry.get("employees.admission.rejected").tag("lane", "write").tag("status", "503").counter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("employees.admission.limit").gauge().value()).isEqualTo(2);
+    }
+
+    @DisplayName("JUnit test for writes that may use the whole limit")
+    @Test
+    public void givenWriteInFlight_whenSecondWrite_thenAdmitted() throws Exception {
+        // given - precondition of setup
+        List<MockHttpServletResponse> responses = new ArrayList<>();
+
+        // when - action or the behaviour that we are going test
+        filter.doFilter(request("POST", "/api/employees"), new MockHttpServletResponse(), (request, response) ->
+                responses.add(send("POST", "/api/employees", (r, s) -> { })));
+
+        // then - verify the output
+        assertThat(responses.get(0).getStatus()).isEqualTo(200);
+    }
+
+    @DisplayName("JUnit test for an async request that keeps its permit until it completes")
+    @Test
+    public void givenAsyncRequest_whenDispatchReturns_thenPermitHeldUntilComplete() throws Exception {
+        // given - precondition of setup
+        MockHttpServletRequest request = request("GET", "/api/employees/1");
+        request.setAsyncSupported(true);
+
+        // when - action or the behaviour that we are going test
+        filter.doFilter(request, new MockHttpServletResponse(), (r, s) -> r.startAsync());
+
+        // then - verify the output
+        assertThat(filter.inFlight()).isEqualTo(1);
+        assertThat(registry.get("employees.admission.in.flight").tag("lane", "read").gauge().value()).isEqualTo(1);
+        ((MockAsyncContext) request.getAsyncContext()).complete();
+        assertThat(filter.inFlight()).isZero();
+    }
+
+    @DisplayName("JUnit test for the change stream, which is not limited")
+    @Test
+    public void givenChangeStream_whenFiltered_thenNotCounted() throws Exception {
+        // given - precondition of setup
+        int[] inFlight = new int[1];
+
+        // when - action or the behaviour that we are going test
+        send("GET", "/api/employees/changes", (r, s) -> inFlight[0] = filter.inFlight());
+
+        // then - verify the output
+        assertThat(inFlight[0]).isZero();
+    }
+
+    private MockHttpServletResponse send(String method, String uri, FilterChain chain) throws IOException, ServletException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(method, uri), response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String uri) {
+        return new MockHttpServletRequest(method, uri);
+    }
+
+}
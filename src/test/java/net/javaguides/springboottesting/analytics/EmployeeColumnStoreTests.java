@@ -0,0 +1,130 @@
+package net.javaguides.springboottesting.analytics;
+
+import net.javaguides.springboottesting.dto.EmployeeStats;
+import net.javaguides.springboottesting.event.EmployeeChangeApplier;
+import net.javaguides.springboottesting.event.EmployeeChangedEvent;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class EmployeeColumnStoreTests {
+
+    @Mock
+    private EmployeeService employeeService;
+
+    @Mock
+    private EmployeeRepository employeeRepository;
+
+    private EmployeeColumnStore columnStore;
+
+    @BeforeEach
+    public void setup(){
+        columnStore = new EmployeeColumnStore(employeeService, new EmployeeChangeApplier(employeeRepository));
+        columnStore.put(employee(1L, "Bruno", "Martins", "bruno@acme.com"));
+        columnStore.put(employee(2L, "Ana", "Martins", "ana@ACME.com"));
+        columnStore.put(employee(3L, "Marta", "Souza", "marta@other.org"));
+        columnStore.put(employee(4L, "Bruno", "Lima", "bruno.lima@acme.com"));
+    }
+
+    @DisplayName("JUnit test for counts by email domain and by last name")
+    @Test
+    public void givenEmployees_whenStats_thenMostFrequentFirst(){
+        // given - precondition of setup
+
+        // when - action or the behaviour that we are going test
+        EmployeeStats domains = columnStore.stats(EmployeeColumnStore.Column.EMAIL_DOMAIN, 10);
+        EmployeeStats lastNames = columnStore.stats(EmployeeColumnStore.Column.LAST_NAME, 2);
+
+        // then - verify the output
+        assertThat(domains.getEmployees()).isEqualTo(4);
+        assertThat(domains.getGroups()).extracting(EmployeeStats.Group::getValue, EmployeeStats.Group::getCount)
+                .containsExactly(tuple("acme.com", 3), tuple("other.org", 1));
+        assertThat(lastNames.getDistinct()).isEqualTo(3);
+        assertThat(lastNames.getGroups()).extracting(EmployeeStats.Group::getValue, EmployeeStats.Group::getCount)
+                .containsExactly(tuple("Martins", 2), tuple("Lima", 1));
+        assertThat(lastNames.getFrequencies()).extracting(EmployeeStats.Frequency::getMinCount, EmployeeStats.Frequency::getMaxCount,
+                        EmployeeStats.Frequency::getValues)
+                .containsExactly(tuple(1, 1, 2), tuple(2, 2, 1));
+    }
+
+    @DisplayName("JUnit test for keeping the counts in sync with change events")
+    @Test
+    public void givenChangeEvents_whenStats_thenCountsFollowChanges(){
+        // given - precondition of setup
+        given(employeeRepository.findAllById(List.of(3L, 9L)))
+                .willReturn(List.of(employee(3L, "Marta", "Martins", "marta@acme.com").toBuilder().version(1L).build()));
+
+        // when - action or the behaviour that we are going test
+        columnStore.onEmployeeChanged(EmployeeChangedEvent.deleted(List.of(1L)));
+        columnStore.onEmployeeChanged(EmployeeChangedEvent.modified(List.of(3L, 9L)));
+        columnStore.onEmployeeChanged(EmployeeChangedEvent.saved(List.of(employee(5L, "Rita", "Souza", "rita@other.org"))));
+
+        // then - verify the output
+        assertThat(columnStore.stats(EmployeeColumnStore.Column.LAST_NAME, 10).getGroups())
+                .extracting(EmployeeStats.Group::getValue, EmployeeStats.Group::getCount)
+                .containsExactly(tuple("Martins", 2), tuple("Lima", 1), tuple("Souza", 1));
+        assertThat(columnStore.stats(EmployeeColumnStore.Column.EMAIL_DOMAIN, 10).getGroups())
+                .extracting(EmployeeStats.Group::getValue, EmployeeStats.Group::getCount)
+                .containsExactly(tuple("acme.com", 3), tuple("other.org", 1));
+        assertThat(columnStore.size()).isEqualTo(4);
+    }
+
+    @DisplayName("JUnit test for an older version arriving after a newer one")
+    @Test
+    public void givenOlderVersion_whenPut_thenIgnored(){
+        // given - precondition of setup
+        columnStore.put(employee(1L, "Bruno", "Lima", "bruno@acme.com").toBuilder().version(2L).build());
+
+        // when - action or the behaviour that we are going test
+        columnStore.put(employee(1L, "Bruno", "Martins", "bruno@acme.com").toBuilder().version(1L).build());
+
+        // then - verify the output
+        assertThat(columnStore.stats(EmployeeColumnStore.Column.LAST_NAME, 1).getGroups())
+                .extracting(EmployeeStats.Group::getValue, EmployeeStats.Group::getCount)
+                .containsExactly(tuple("Lima", 2));
+    }
+
+    @DisplayName("JUnit test for counting more rows than one fork-join task takes")
+    @Test
+    public void givenManyRows_whenStats_thenParallelCountsAddUp(){
+        // given - precondition of setup
+        int rows = 3 * EmployeeColumnStore.SEQUENTIAL_THRESHOLD;
+        for (long id = 100; id < 100 + rows; id++) {
+            columnStore.put(employee(id, "First", "Last" + id % 7, "employee" + id + "@bulk" + id % 3 + ".net"));
+        }
+
+        // when - action or the behaviour that we are going test
+        EmployeeStats lastNames = columnStore.stats(EmployeeColumnStore.Column.LAST_NAME, 100);
+        EmployeeStats firstNames = columnStore.stats(EmployeeColumnStore.Column.FIRST_NAME, 1);
+
+        // then - verify the output
+        assertThat(lastNames.getEmployees()).isEqualTo(rows + 4);
+        assertThat(lastNames.getGroups().stream().mapToInt(EmployeeStats.Group::getCount).sum()).isEqualTo(rows + 4);
+        assertThat(firstNames.getGroups()).extracting(EmployeeStats.Group::getValue, EmployeeStats.Group::getCount)
+                .containsExactly(tuple("First", rows));
+    }
+
+    private static Employee employee(Long id, String firstName, String lastName, String email) {
+        return Employee.builder()
+                .id(id)
+                .firstName(firstName)
+                .lastName(lastName)
+                .email(email)
+                .version(0L)
+                .build();
+    }
+
+}
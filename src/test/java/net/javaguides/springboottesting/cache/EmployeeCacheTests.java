@@ -0,0 +1,172 @@
+package net.javaguides.springboottesting.cache;
+
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmployeeCacheTests {
+
+    private EmployeeCache employeeCache;
+
+    private Employee employee;
+
+    @BeforeEach
+    public void setup(){
+        employeeCache = new EmployeeCache(100, Duration.ofMinutes(1));
+        employee = Employee.builder()
+                .id(1L)
+                .firstName("Bruno")
+                .lastName("Martins")
+                .email("bruno@bruno")
+                .build();
+    }
+
+    @DisplayName("JUnit test for put and get by id and email")
+    @Test
+    public void givenEmployee_whenPut_thenFoundByIdAndEmail(){
+        // given - precondition of setup
+        employeeCache.put(employee, employeeCache.stamp());
+
+        // when - action or the behaviour that we are going test
+        Employee cached = employeeCache.get(1L).get();
+
+        // then - verify the output
+        assertThat(cached.getEmail()).isEqualTo("bruno@bruno");
+        assertThat(employeeCache.getIdByEmail("bruno@bruno")).contains(1L);
+    }
+
+    @DisplayName("JUnit test for a load that raced with an invalidation")
+    @Test
+    public void givenInvalidationDuringLoad_whenPut_thenValueIsNotCached(){
+        // given - a reader takes its stamp, then a writer invalidates before the reader puts
+        long stamp = employeeCache.stamp();
+        employeeCache.invalidate(1L);
+
+        // when - action or the behaviour that we are going test
+        employeeCache.put(employee, stamp);
+
+        // then - verify the output
+        assertThat(employeeCache.get(1L)).isEmpty();
+        assertThat(employeeCache.getIdByEmail("bruno@bruno")).isEmpty();
+    }
+
+    @DisplayName("JUnit test for a load that raced with an invalidation of another id")
+    @Test
+    public void givenOtherIdInvalidatedDuringLoad_whenPut_thenValueIsCached(){
+        // given - a reader takes its stamp, then a writer invalidates a different employee
+        long stamp = employeeCache.stamp();
+        employeeCache.invalidate(2L, 3L);
+
+        // when - action or the behaviour that we are going test
+        employeeCache.put(employee, stamp);
+
+        // then - verify the output
+        assertThat(employeeCache.get(1L)).isPresent();
+        assertThat(employeeCache.invalidatedSince(1L, stamp)).isFalse();
+        assertThat(employeeCache.invalidatedSince(2L, stamp)).isTrue();
+    }
+
+    @DisplayName("JUnit test for a load that raced with clearing the whole cache")
+    @Test
+    public void givenInvalidateAllDuringLoad_whenPut_thenValueIsNotCached(){
+        // given - precondition of setup
+        long stamp = employeeCache.stamp();
+        employeeCache.invalidateAll();
+
+        // when - action or the behaviour that we are going test
+        employeeCache.put(employee, stamp);
+
+        // then - verify the output
+        assertThat(employeeCache.get(1L)).isEmpty();
+        assertThat(employeeCache.invalidatedSince(1L, stamp)).isTrue();
+    }
+
+    @DisplayName("JUnit test for an email index entry whose employee changed email")
+    @Test
+    public void givenEmployeeWithNewEmail_whenGetIdByOldEmail_thenEmpty(){
+        // given - precondition of setup
+        employeeCache.put(employee, employeeCache.stamp());
+        employeeCache.put(employee.toBuilder().email("martins@martins").build(), employeeCache.stamp());
+
+        // when - action or the behaviour that we are going test
+        // then - verify the output
+        assertThat(employeeCache.getIdByEmail("bruno@bruno")).isEmpty();
+        assertThat(employeeCache.getIdByEmail("martins@martins")).contains(1L);
+    }
+
+    @DisplayName("JUnit test for hit and miss counters")
+    @Test
+    public void givenHitsAndMisses_whenStats_thenCounted(){
+        // given - precondition of setup
+        employeeCache.put(employee, employeeCache.stamp());
+
+        // when - action or the behaviour that we are going test
+        employeeCache.get(1L);
+        employeeCache.get(2L);
+
+        // then - verify the output
+        assertThat(employeeCache.stats().hitCount()).isEqualTo(1);
+        assertThat(employeeCache.stats().missCount()).isEqualTo(1);
+    }
+
+    @DisplayName("JUnit test for a write on one node invalidating the near cache of another")
+    @Test
+    public void givenTwoNodes_whenOneWrites_thenOtherNodeDropsItsCopy(){
+        // given - two instances with their own near cache, one shared tier and one bus
+        SharedEmployeeCache sharedTier = new InMemorySharedEmployeeCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        LocalEmployeeInvalidationBus bus = new LocalEmployeeInvalidationBus();
+        EmployeeCache nodeA = new EmployeeCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1), sharedTier, bus);
+        EmployeeCache nodeB = new EmployeeCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1), sharedTier, bus);
+        nodeB.put(view(1L), nodeB.stamp());
+
+        // when - node A writes version 2
+        nodeA.invalidate(1L, 2L);
+
+        // then - verify the output
+        assertThat(nodeB.getView(1L)).isEmpty();
+        assertThat(sharedTier.get(1L)).isEmpty();
+    }
+
+    @DisplayName("JUnit test for a node putting a row it read before another node's write")
+    @Test
+    public void givenReadBeforeWriteOnOtherNode_whenPut_thenStaleRowIsNotShared(){
+        // given - node B reads version 1, then node A writes version 2 before B's put
+        SharedEmployeeCache sharedTier = new InMemorySharedEmployeeCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        LocalEmployeeInvalidationBus bus = new LocalEmployeeInvalidationBus();
+        EmployeeCache nodeA = new EmployeeCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1), sharedTier, bus);
+        EmployeeCache nodeB = new EmployeeCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1), sharedTier, bus);
+        long stamp = nodeB.stamp();
+        nodeA.invalidate(1L, 2L);
+
+        // when - action or the behaviour that we are going test
+        nodeB.put(view(1L), stamp);
+        sharedTier.put(view(1L));
+        nodeA.put(view(2L), nodeA.stamp());
+
+        // then - version 1 was fenced off, version 2 reaches node B through the shared tier
+        assertThat(nodeB.getView(1L).get().getVersion()).isEqualTo(2L);
+    }
+
+    @DisplayName("JUnit test for a read that asks for at least the version it wrote")
+    @Test
+    public void givenOlderCachedVersion_whenGetViewWithMinVersion_thenEmpty(){
+        // given - precondition of setup
+        employeeCache.put(view(1L), employeeCache.stamp());
+
+        // when - action or the behaviour that we are going test
+        // then - verify the output
+        assertThat(employeeCache.getView(1L, 2L)).isEmpty();
+        assertThat(employeeCache.getView(1L, 1L)).isPresent();
+    }
+
+    private EmployeeView view(long version) {
+        return EmployeeView.of(employee.toBuilder().version(version).build());
+    }
+
+}
@@ -0,0 +1,40 @@
+package net.javaguides.springboottesting.cache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MulticastEmployeeInvalidationBusTests {
+
+    @DisplayName("JUnit test for a bulk invalidation split into datagrams")
+    @Test
+    public void givenManyIds_whenEncodeAndDecode_thenSameIdsInSeveralDatagrams(){
+        // given - precondition of setup
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 1200; id++) {
+            ids.add(id);
+        }
+        EmployeeInvalidation invalidation = new EmployeeInvalidation(UUID.randomUUID(), ids, EmployeeInvalidation.UNKNOWN_VERSION);
+
+        // when - action or the behaviour that we are going test
+        List<byte[]> datagrams = MulticastEmployeeInvalidationBus.encode(invalidation);
+
+        // then - verify the output
+        assertThat(datagrams).hasSize(3);
+        List<Long> decoded = new ArrayList<>();
+        for (byte[] datagram : datagrams) {
+            EmployeeInvalidation part = MulticastEmployeeInvalidationBus.decode(datagram, datagram.length);
+            assertThat(part.getOrigin()).isEqualTo(invalidation.getOrigin());
+            assertThat(part.getVersion()).isEqualTo(EmployeeInvalidation.UNKNOWN_VERSION);
+            decoded.addAll(part.getIds());
+        }
+        assertThat(decoded).isEqualTo(ids);
+        assertThat(MulticastEmployeeInvalidationBus.decode(new byte[]{7, 1, 2}, 3)).isNull();
+    }
+
+}
@@ -0,0 +1,104 @@
+package net.javaguides.springboottesting.compression;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// MockHttpServletResponse doesn't take write listeners, the container's stream is stood in for here
+public class CompressingResponseWrapperTests {
+
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    private final NonBlockingOutputStream containerStream = new NonBlockingOutputStream();
+
+    private CompressingResponseWrapper compressing;
+
+    @BeforeEach
+    public void setup(){
+        response.setContentType("application/json");
+        compressing = new CompressingResponseWrapper(new HttpServletResponseWrapper(response) {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return containerStream;
+            }
+        }, ResponseCompressionFilter.ContentEncoding.GZIP, 16, contentType -> true);
+    }
+
+    @DisplayName("JUnit test for a non-blocking writer getting the response uncompressed")
+    @Test
+    public void givenHeldBytes_whenSetWriteListener_thenPlainAndDelegated() throws Exception {
+        // given - precondition of setup
+        ServletOutputStream body = compressing.getOutputStream();
+        body.write("[{\"id\":1}".getBytes(StandardCharsets.UTF_8));
+        WriteListener listener = new WriteListener() {
+            @Override
+            public void onWritePossible() {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+        };
+
+        // when - action or the behaviour that we are going test
+        body.setWriteListener(listener);
+        body.write(",{\"id\":2},{\"id\":3},{\"id\":4}]".getBytes(StandardCharsets.UTF_8));
+        containerStream.ready = false;
+
+        // then - verify the output
+        assertThat(containerStream.listener).isSameAs(listener);
+        assertThat(containerStream.bytes.toString(StandardCharsets.UTF_8)).isEqualTo("[{\"id\":1},{\"id\":2},{\"id\":3},{\"id\":4}]");
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(body.isReady()).isFalse();
+    }
+
+    @DisplayName("JUnit test for setting a write listener once the body is being compressed")
+    @Test
+    public void givenCompressedBody_whenSetWriteListener_thenThrowsIllegalStateException() throws Exception {
+        // given - precondition of setup
+        ServletOutputStream body = compressing.getOutputStream();
+        body.write("[{\"id\":1},{\"id\":2},{\"id\":3}]".getBytes(StandardCharsets.UTF_8));
+
+        // when - action or the behaviour that we are going test
+        assertThrows(IllegalStateException.class, () -> body.setWriteListener(null));
+
+        // then - verify the output
+        assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(containerStream.listener).isNull();
+    }
+
+    private static class NonBlockingOutputStream extends ServletOutputStream {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private WriteListener listener;
+
+        private boolean ready = true;
+
+        @Override
+        public void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            this.listener = listener;
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package net.javaguides.springboottesting.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.luben.zstd.ZstdInputStream;
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class EmployeeControllerFormatTests {
+
+    private static final int EMPLOYEES = 200;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private EmployeeCache employeeCache;
+
+    @BeforeEach
+    public void setup(){
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < EMPLOYEES; i++) {
+            employees.add(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno" + i + "@bruno").build());
+        }
+        employeeRepository.saveAll(employees);
+    }
+
+    @AfterEach
+    public void cleanup(){
+        employeeRepository.deleteAll();
+        employeeCache.invalidateAll();
+    }
+
+    @DisplayName("JUnit test for exporting employees as a Smile stream")
+    @Test
+    public void givenSmileAccept_whenExport_thenSmileStream() throws Exception {
+        // given - precondition of setup
+        HttpRequest request = get("/api/employees/export", EmployeeController.APPLICATION_SMILE_VALUE, null);
+
+        // when - action or the behaviour that we are going test
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        // then - verify the output
+        assertThat(response.headers().firstValue("Content-Type")).contains(EmployeeController.APPLICATION_SMILE_VALUE);
+        assertThat(readAll(new ObjectMapper(new SmileFactory()), response.body())).hasSize(EMPLOYEES);
+    }
+
+    @DisplayName("JUnit test for exporting employees as a gzip compressed CBOR sequence")
+    @Test
+    public void givenCborAcceptAndGzip_whenExport_thenCompressedCborSequence() throws Exception {
+        // given - precondition of setup
+        HttpRequest request = get("/api/employees/export", EmployeeController.APPLICATION_CBOR_SEQ_VALUE, "gzip");
+
+        // when - action or the behaviour that we are going test
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+        // then - verify the output
+        assertThat(response.headers().firstValue("Content-Encoding")).contains("gzip");
+        try (InputStream body = new GZIPInputStream(response.body())) {
+            List<JsonNode> employees = readAll(new ObjectMapper(new CBORFactory()), body.readAllBytes());
+            assertThat(employees).hasSize(EMPLOYEES);
+            assertThat(employees.get(0).get("email").asText()).isEqualTo("bruno0@bruno");
+        }
+    }
+
+    @DisplayName("JUnit test for a page of employees negotiated as CBOR")
+    @Test
+    public void givenCborAccept_whenGetEmployees_thenCborPage() throws Exception {
+        // given - precondition of setup
+        HttpRequest request = get("/api/employees?limit=10", "application/cbor", null);
+
+        // when - action or the behaviour that we are going test
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        // then - verify the output
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.headers().firstValue("Content-Type")).contains("application/cbor");
+        JsonNode page = new ObjectMapper(new CBORFactory()).readTree(response.body());
+        assertThat(page.get("content")).hasSize(10);
+        assertThat(page.get("nextCursor").isTextual()).isTrue();
+    }
+
+    @DisplayName("JUnit test for a large page compressed with zstd when the client prefers it")
+    @Test
+    public void givenZstdPreferred_whenGetEmployees_thenZstdCompressed() throws Exception {
+        // given - precondition of setup
+        HttpRequest request = get("/api/employees?limit=100", "application/json", "gzip;q=0.5, zstd");
+
+        // when - action or the behaviour that we are going test
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+        // then - verify the output
+        assertThat(response.headers().firstValue("Content-Encoding")).contains("zstd");
+        assertThat(response.headers().firstValue("Content-Length")).isEmpty();
+        try (InputStream body = new ZstdInputStream(response.body())) {
+            assertThat(new ObjectMapper().readTree(body).get("content")).hasSize(100);
+        }
+    }
+
+    @DisplayName("JUnit test for small responses staying uncompressed")
+    @Test
+    public void givenSmallResponse_whenGetWithGzip_thenNotCompressed() throws Exception {
+        // given - precondition of setup
+        HttpRequest request = get("/api/employees?limit=1", "application/json", "gzip");
+
+        // when - action or the behaviour that we are going test
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        // then - verify the output
+        assertThat(response.headers().firstValue("Content-Encoding")).isEmpty();
+        assertThat(response.headers().firstValue("Content-Length")).contains(String.valueOf(response.body().length()));
+        assertThat(response.body()).contains("bruno0@bruno");
+    }
+
+    private HttpRequest get(String path, String accept, String acceptEncoding) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Accept", accept);
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return request.build();
+    }
+
+    private static List<JsonNode> readAll(ObjectMapper mapper, byte[] body) throws IOException {
+        return mapper.readerFor(JsonNode.class).<JsonNode>readValues(new ByteArrayInputStream(body)).readAll();
+    }
+
+}
@@ -0,0 +1,129 @@
+package net.javaguides.springboottesting.datasource;
+
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// two local H2 databases: the primary gets its schema from Hibernate, the replica from
+// replica-schema.sql, and nothing copies rows between them, so each read shows where it went
+@SpringBootTest(properties = "employees.datasource.replicas.urls=" + ReplicaRoutingDataSourceTests.REPLICA_URL)
+public class ReplicaRoutingDataSourceTests {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:replica-schema.sql'";
+
+    private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private EmployeeCache employeeCache;
+
+    @AfterEach
+    public void cleanup(){
+        employeeRepository.deleteAll();
+        replica.update("delete from employees");
+        employeeCache.invalidateAll();
+    }
+
+    @DisplayName("JUnit test for readOnly reads going to the replica and writes to the primary")
+    @Test
+    public void givenRowsOnEachDatabase_whenReadOnlyRead_thenReplicaAnswers(){
+        // given - precondition of setup
+        employeeService.saveEmployee(employee("primary@primary"));
+        replica.update("insert into employees values (1000, 'Bruno', 'Martins', 'replica@replica', 0)");
+
+        // when - action or the behaviour that we are going test
+        List<EmployeeView> employees = employeeService.getAllEmployees();
+
+        // then - verify the output
+        assertThat(employees).extracting(EmployeeView::getEmail).containsExactly("replica@replica");
+    }
+
+    @DisplayName("JUnit test for a read pinned to the primary")
+    @Test
+    public void givenPinnedThread_whenReadOnlyRead_thenPrimaryAnswers(){
+        // given - precondition of setup
+        employeeService.saveEmployee(employee("primary@primary"));
+        replica.update("insert into employees values (1000, 'Bruno', 'Martins', 'replica@replica', 0)");
+
+        // when - action or the behaviour that we are going test
+        List<EmployeeView> employees = DataSourceRouting.onPrimary(() -> employeeService.getAllEmployees());
+
+        // then - verify the output
+        assertThat(employees).extracting(EmployeeView::getEmail).containsExactly("primary@primary");
+    }
+
+    @DisplayName("JUnit test for a read of a version the replica doesn't have yet")
+    @Test
+    public void givenLaggingReplica_whenGetWithMinVersion_thenPrimaryAnswers(){
+        // given - the primary is at version 1, the replica still has version 0
+        Employee saved = employeeService.saveEmployee(employee("primary@primary"));
+        saved.setFirstName("Lucas");
+        long version = employeeService.updateEmployee(saved).getVersion();
+        replica.update("insert into employees values (?, 'Bruno', 'Martins', 'primary@primary', 0)", saved.getId());
+
+        // when - action or the behaviour that we are going test
+        EmployeeView stale = employeeService.getEmployeeViewById(saved.getId()).get();
+        EmployeeView fresh = employeeService.getEmployeeViewById(saved.getId(), version).get();
+
+        // then - verify the output
+        assertThat(stale.getVersion()).isEqualTo(0L);
+        assertThat(fresh.getFirstName()).isEqualTo("Lucas");
+        assertThat(employeeCache.getView(saved.getId()).get().getVersion()).isEqualTo(version);
+    }
+
+    @DisplayName("JUnit test for a replica that refuses connections")
+    @Test
+    public void givenReplicaDown_whenReadOnlyConnection_thenPrimaryAndReplicaOutOfRotation() throws SQLException, IOException {
+        // given - precondition of setup
+        DataSource primary = new DriverManagerDataSource("jdbc:h2:mem:failover", "sa", "");
+        DataSource down = new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/down", "sa", "");
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, Map.of("replica-0", down), Duration.ofMinutes(1));
+        routing.afterPropertiesSet();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        // when - action or the behaviour that we are going test
+        try (Connection connection = routing.getConnection()) {
+
+            // then - verify the output
+            assertThat(connection.getMetaData().getURL()).isEqualTo("jdbc:h2:mem:failover");
+            assertThat(routing.healthyReplicas()).isZero();
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+            routing.destroy();
+        }
+    }
+
+    private static Employee employee(String email) {
+        return Employee.builder()
+                .firstName("Bruno")
+                .lastName("Martins")
+                .email(email)
+                .build();
+    }
+
+}
@@ -0,0 +1,139 @@
+package net.javaguides.springboottesting.ingest;
+
+import net.javaguides.springboottesting.dto.EmployeeBatchResult;
+import net.javaguides.springboottesting.dto.EmployeeIngestStatus;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class EmployeeIngestPipelineTests {
+
+    @Mock
+    private EmployeeService employeeService;
+
+    private EmployeeIngestPipeline ingestPipeline;
+
+    @AfterEach
+    public void cleanup() throws InterruptedException {
+        ingestPipeline.stop();
+    }
+
+    @DisplayName("JUnit test for creates written as one batch")
+    @Test
+    public void givenSubmissions_whenFlushSizeReached_thenOneBatchAndFinalStatuses() throws InterruptedException {
+        // given - precondition of setup
+        ingestPipeline = start(10, 3, Duration.ofSeconds(10));
+        given(employeeService.saveEmployees(anyList())).willReturn(List.of(
+                result(0, 1L, "bruno@bruno", EmployeeBatchResult.Status.CREATED),
+                result(1, null, "bruno@bruno", EmployeeBatchResult.Status.DUPLICATE),
+                result(2, 2L, "lucas@lucas", EmployeeBatchResult.Status.CREATED)));
+
+        // when - action or the behaviour that we are going test
+        EmployeeIngestStatus first = ingestPipeline.submit(employee("bruno@bruno"));
+        EmployeeIngestStatus second = ingestPipeline.submit(employee("bruno@bruno"));
+        EmployeeIngestStatus third = ingestPipeline.submit(employee("lucas@lucas"));
+
+        // then - verify the output
+        assertThat(first.getState()).isEqualTo(EmployeeIngestStatus.State.QUEUED);
+        assertThat(awaitDone(third.getTrackingId()).getId()).isEqualTo(2L);
+        assertThat(awaitDone(first.getTrackingId()).getState()).isEqualTo(EmployeeIngestStatus.State.CREATED);
+        assertThat(awaitDone(second.getTrackingId()).getState()).isEqualTo(EmployeeIngestStatus.State.DUPLICATE);
+        verify(employeeService, times(1)).saveEmployees(anyList());
+    }
+
+    @DisplayName("JUnit test for a full queue")
+    @Test
+    public void givenFullQueue_whenSubmit_thenTooManyRequests() throws InterruptedException {
+        // given - the writer is stuck on the first batch and the queue holds one more
+        ingestPipeline = start(1, 1, Duration.ofMillis(1));
+        CountDownLatch release = new CountDownLatch(1);
+        given(employeeService.saveEmployees(anyList())).willAnswer(invocation -> {
+            release.await();
+            return List.of(result(0, 1L, "bruno@bruno", EmployeeBatchResult.Status.CREATED));
+        });
+        ingestPipeline.submit(employee("bruno@bruno"));
+        verify(employeeService, timeout(5000)).saveEmployees(anyList());
+        ingestPipeline.submit(employee("lucas@lucas"));
+
+        // when - action or the behaviour that we are going test
+        ResponseStatusException exception = Assertions.assertThrows(ResponseStatusException.class, () -> {
+            ingestPipeline.submit(employee("ana@ana"));
+        });
+
+        // then - verify the output
+        assertThat(exception.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        release.countDown();
+    }
+
+    @DisplayName("JUnit test for a batch that can't be written")
+    @Test
+    public void givenDatabaseFailure_whenFlush_thenStatusFailed() throws InterruptedException {
+        // given - precondition of setup
+        ingestPipeline = start(10, 1, Duration.ofMillis(1));
+        given(employeeService.saveEmployees(anyList())).willThrow(new DataAccessResourceFailureException("database down"));
+
+        // when - action or the behaviour that we are going test
+        EmployeeIngestStatus status = ingestPipeline.submit(employee("bruno@bruno"));
+
+        // then - verify the output
+        EmployeeIngestStatus done = awaitDone(status.getTrackingId());
+        assertThat(done.getState()).isEqualTo(EmployeeIngestStatus.State.FAILED);
+        assertThat(done.getMessage()).isEqualTo("database down");
+    }
+
+    private EmployeeIngestPipeline start(int queueCapacity, int flushSize, Duration flushInterval) {
+        EmployeeIngestPipeline pipeline = new EmployeeIngestPipeline(employeeService, queueCapacity, flushSize,
+                flushInterval, Duration.ofMinutes(1), 1000);
+        pipeline.start();
+        return pipeline;
+    }
+
+    private EmployeeIngestStatus awaitDone(String trackingId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        EmployeeIngestStatus status = ingestPipeline.getStatus(trackingId).get();
+        while (status.getState() == EmployeeIngestStatus.State.QUEUED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            status = ingestPipeline.getStatus(trackingId).get();
+        }
+        return status;
+    }
+
+    private static Employee employee(String email) {
+        return Employee.builder()
+                .firstName("Bruno")
+                .lastName("Martins")
+                .email(email)
+                .build();
+    }
+
+    private static EmployeeBatchResult result(long index, Long id, String email, EmployeeBatchResult.Status status) {
+        return EmployeeBatchResult.builder()
+                .index(index)
+                .id(id)
+                .email(email)
+                .status(status)
+                .build();
+    }
+
+}
@@ -0,0 +1,89 @@
+package net.javaguides.springboottesting.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class EmployeeServiceMetricsTests {
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private EmployeeCache employeeCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    public void cleanup(){
+        employeeRepository.deleteAll();
+        employeeCache.invalidateAll();
+    }
+
+    @DisplayName("JUnit test for the SQL statement count of getEmployeeById")
+    @Test
+    public void givenEmployee_whenGetEmployeeByIdTwice_thenOnlyTheMissRunsSql(){
+        // given - precondition of setup
+        Employee employee = employeeRepository.save(Employee.builder()
+                .firstName("Bruno")
+                .lastName("Martins")
+                .email("bruno@metrics")
+                .build());
+
+        // when - action or the behaviour that we are going test
+        double before = statements("getEmployeeById");
+        employeeService.getEmployeeById(employee.getId());
+        double afterMiss = statements("getEmployeeById");
+        employeeService.getEmployeeById(employee.getId());
+        double afterHit = statements("getEmployeeById");
+
+        // then - verify the output
+        assertThat(afterMiss - before).isEqualTo(1);
+        assertThat(afterHit - afterMiss).isEqualTo(0);
+        assertThat(meterRegistry.get("employees.service").tag("method", "getEmployeeById").timer().count()).isGreaterThanOrEqualTo(2);
+    }
+
+    @DisplayName("JUnit test for the SQL statement count of saveEmployee")
+    @Test
+    public void givenNewEmployee_whenSaveEmployee_thenNoSelectBeforeTheInsert(){
+        // given - warm up the pooled sequence so the next insert doesn't fetch ids
+        employeeService.saveEmployee(Employee.builder()
+                .firstName("Lucas")
+                .lastName("Oliveira")
+                .email("lucas@metrics")
+                .build());
+
+        // when - action or the behaviour that we are going test
+        double before = statements("saveEmployee");
+        employeeService.saveEmployee(Employee.builder()
+                .firstName("Bruno")
+                .lastName("Martins")
+                .email("bruno@metrics")
+                .build());
+
+        // then - verify the output
+        assertThat(statements("saveEmployee") - before).isEqualTo(1);
+    }
+
+    // total statements recorded so far, the meter only exists after the first call
+    private double statements(String method) {
+        DistributionSummary summary = meterRegistry.find("employees.service.sql.statements").tag("method", method).summary();
+        return summary == null ? 0 : summary.totalAmount();
+    }
+
+}
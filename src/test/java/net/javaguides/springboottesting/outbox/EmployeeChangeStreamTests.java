@@ -0,0 +1,199 @@
+package net.javaguides.springboottesting.outbox;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.exception.ResourceConflictException;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// positions keep growing across the tests sharing this context, so every test starts from the
+// position the outbox is at when it begins
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class EmployeeChangeStreamTests {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private EmployeeOutbox outbox;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private EmployeeCache employeeCache;
+
+    private long start;
+
+    @BeforeEach
+    public void setup(){
+        while (outbox.publishPending(EmployeeChangeRelay.BATCH_SIZE) > 0) {
+            // numbers whatever earlier tests left behind
+        }
+        start = outbox.lastPosition();
+    }
+
+    @AfterEach
+    public void cleanup(){
+        employeeRepository.deleteAll();
+        employeeCache.invalidateAll();
+    }
+
+    @DisplayName("JUnit test for streaming a create, an update and a delete in order")
+    @Test
+    public void givenWrites_whenStreamChanges_thenEventsInOrder() throws Exception {
+        // given - precondition of setup
+        Employee employee = employeeService.saveEmployee(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno@bruno").build());
+        employee.setLastName("Silva");
+        employeeService.updateEmployee(employee);
+        employeeService.deleteEmployee(employee.getId());
+
+        // when - action or the behaviour that we are going test
+        List<Event> events = readEvents("/api/employees/changes?since=" + start, null, 3);
+
+        // then - verify the output
+        assertThat(events).extracting(event -> event.name).containsExactly("created", "updated", "deleted");
+        assertThat(events).extracting(event -> event.id).containsExactly(start + 1, start + 2, start + 3);
+        assertThat(events.get(1).data.get("employee").get("lastName").asText()).isEqualTo("Silva");
+        assertThat(events.get(1).data.get("employee").get("version").asLong()).isEqualTo(1);
+        assertThat(events.get(2).data.get("id").asLong()).isEqualTo(employee.getId());
+        assertThat(events.get(2).data.has("employee")).isFalse();
+    }
+
+    @DisplayName("JUnit test for a write that rolled back leaving no change behind")
+    @Test
+    public void givenDuplicateEmail_whenStreamChanges_thenOnlyCommittedWrites() throws Exception {
+        // given - precondition of setup
+        employeeService.saveEmployee(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno@bruno").build());
+        assertThrows(ResourceConflictException.class, () -> employeeService.saveEmployee(
+                Employee.builder().firstName("Other").lastName("Martins").email("bruno@bruno").build()));
+        employeeService.saveEmployee(Employee.builder().firstName("Ana").lastName("Martins").email("ana@bruno").build());
+
+        // when - action or the behaviour that we are going test
+        List<Event> events = readEvents("/api/employees/changes?since=" + start, null, 2);
+
+        // then - verify the output
+        assertThat(events).extracting(event -> event.data.get("employee").get("email").asText())
+                .containsExactly("bruno@bruno", "ana@bruno");
+        assertThat(events.get(1).id).isEqualTo(start + 2);
+    }
+
+    @DisplayName("JUnit test for resuming a stream after the Last-Event-ID")
+    @Test
+    public void givenLastEventId_whenStreamChanges_thenResumesAfterIt() throws Exception {
+        // given - precondition of setup
+        for (int i = 0; i < 3; i++) {
+            employeeService.saveEmployee(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno" + i + "@bruno").build());
+        }
+
+        // when - action or the behaviour that we are going test
+        List<Event> events = readEvents("/api/employees/changes?since=" + start, String.valueOf(start + 1), 2);
+
+        // then - verify the output
+        assertThat(events).extracting(event -> event.data.get("employee").get("email").asText())
+                .containsExactly("bruno1@bruno", "bruno2@bruno");
+    }
+
+    @DisplayName("JUnit test for a position that has been pruned")
+    @Test
+    public void givenPrunedPosition_whenStreamChanges_thenGone() throws Exception {
+        // given - precondition of setup
+        employeeService.saveEmployee(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno@bruno").build());
+        while (outbox.publishPending(EmployeeChangeRelay.BATCH_SIZE) > 0) {
+            // the relay may not have come round yet
+        }
+        outbox.prune(start + 1);
+
+        // when - action or the behaviour that we are going test
+        HttpResponse<String> response = client.send(request("/api/employees/changes?since=" + start, null),
+                HttpResponse.BodyHandlers.ofString());
+
+        // then - verify the output
+        assertThat(response.statusCode()).isEqualTo(410);
+        assertThat(outbox.read(start, 10)).isEmpty();
+    }
+
+    private List<Event> readEvents(String path, String lastEventId, int count) throws Exception {
+        HttpResponse<Stream<String>> response = client.send(request(path, lastEventId), HttpResponse.BodyHandlers.ofLines());
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.headers().firstValue("Content-Type")).hasValueSatisfying(type -> assertThat(type).startsWith("text/event-stream"));
+
+        CompletableFuture<List<Event>> events = CompletableFuture.supplyAsync(() -> {
+            List<Event> read = new ArrayList<>();
+            Iterator<String> lines = response.body().iterator();
+            Event event = new Event();
+            while (read.size() < count && lines.hasNext()) {
+                String line = lines.next();
+                if (line.startsWith("id:")) {
+                    event.id = Long.parseLong(line.substring(3));
+                } else if (line.startsWith("event:")) {
+                    event.name = line.substring(6);
+                } else if (line.startsWith("data:")) {
+                    try {
+                        event.data = objectMapper.readTree(line.substring(5));
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                } else if (line.isEmpty() && event.name != null) {
+                    read.add(event);
+                    event = new Event();
+                }
+            }
+            return read;
+        });
+        try {
+            return events.get(10, TimeUnit.SECONDS);
+        } finally {
+            response.body().close();
+        }
+    }
+
+    private HttpRequest request(String path, String lastEventId) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Accept", "text/event-stream");
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return request.build();
+    }
+
+    private static class Event {
+
+        private long id;
+
+        private String name;
+
+        private JsonNode data;
+    }
+
+}
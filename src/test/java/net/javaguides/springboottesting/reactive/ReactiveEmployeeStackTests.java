@@ -0,0 +1,227 @@
+package net.javaguides.springboottesting.reactive;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.dto.EmployeeChange;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.outbox.EmployeeOutbox;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import net.javaguides.springboottesting.service.ReactiveEmployeeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {"employees.reactive.enabled=true", "employees.reactive.port=0"})
+public class ReactiveEmployeeStackTests {
+
+    @Autowired
+    private ReactiveEmployeeServer server;
+
+    @Autowired
+    private ReactiveEmployeeService employeeService;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private EmployeeCache employeeCache;
+
+    @Autowired
+    private EmployeeOutbox outbox;
+
+    private WebTestClient client;
+
+    @BeforeEach
+    public void setup(){
+        client = WebTestClient.bindToServer().baseUrl("http://localhost:" + server.getPort() + "/api/employees").build();
+    }
+
+    @AfterEach
+    public void cleanup(){
+        employeeRepository.deleteAll();
+        employeeCache.invalidateAll();
+    }
+
+    @DisplayName("JUnit test for creating an employee and reading it back through the reactive routes")
+    @Test
+    public void givenEmployee_whenCreateAndGet_thenSameEmployee(){
+        // given - precondition of setup
+        Employee employee = Employee.builder().firstName("Bruno").lastName("Martins").email("bruno@bruno").build();
+
+        // when - action or the behaviour that we are going test
+        JsonNode created = client.post().contentType(MediaType.APPLICATION_JSON).bodyValue(employee).exchange()
+                .expectStatus().isCreated()
+                .expectBody(JsonNode.class).returnResult().getResponseBody();
+
+        // then - verify the output
+        assertThat(created.get("version").asLong()).isZero();
+        client.get().uri("/{id}", created.get("id").asLong()).exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.email").isEqualTo("bruno@bruno")
+                .jsonPath("$.version").isEqualTo(0);
+        assertThat(employeeRepository.findById(created.get("id").asLong())).isPresent();
+    }
+
+    @DisplayName("JUnit test for an email that the JPA stack already stored")
+    @Test
+    public void givenExistingEmail_whenCreate_thenConflict(){
+        // given - precondition of setup
+        employeeRepository.save(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno@bruno").build());
+
+        // when - action or the behaviour that we are going test
+        WebTestClient.ResponseSpec response = client.post().contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Employee.builder().firstName("Other").lastName("Martins").email("bruno@bruno").build())
+                .exchange();
+
+        // then - verify the output
+        response.expectStatus().isEqualTo(409);
+        assertThat(employeeRepository.count()).isEqualTo(1);
+    }
+
+    @DisplayName("JUnit test for updates with a stale version and for a missing employee")
+    @Test
+    public void givenStaleVersion_whenUpdate_thenConflict(){
+        // given - precondition of setup
+        Employee employee = employeeRepository.save(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno@bruno").build());
+        client.put().uri("/{id}", employee.getId()).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(employee.toBuilder().lastName("Silva").build()).exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.version").isEqualTo(1);
+
+        // when - action or the behaviour that we are going test
+        WebTestClient.ResponseSpec stale = client.put().uri("/{id}", employee.getId()).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(employee.toBuilder().lastName("Costa").build()).exchange();
+        WebTestClient.ResponseSpec missing = client.put().uri("/{id}", employee.getId() + 1000).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(employee.toBuilder().version(null).build()).exchange();
+
+        // then - verify the output
+        stale.expectStatus().isEqualTo(409);
+        missing.expectStatus().isNotFound();
+        assertThat(employeeRepository.findById(employee.getId())).hasValueSatisfying(saved -> {
+            assertThat(saved.getLastName()).isEqualTo("Silva");
+            assertThat(saved.getVersion()).isEqualTo(1);
+        });
+    }
+
+    @DisplayName("JUnit test for deleting an employee through the reactive routes")
+    @Test
+    public void givenEmployee_whenDelete_thenGone(){
+        // given - precondition of setup
+        Employee employee = employeeRepository.save(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno@bruno").build());
+        client.get().uri("/{id}", employee.getId()).exchange().expectStatus().isOk();
+
+        // when - action or the behaviour that we are going test
+        client.delete().uri("/{id}", employee.getId()).exchange().expectStatus().isNoContent();
+
+        // then - verify the output
+        client.get().uri("/{id}", employee.getId()).exchange().expectStatus().isNotFound();
+        client.delete().uri("/{id}", employee.getId()).exchange().expectStatus().isNotFound();
+    }
+
+    @DisplayName("JUnit test for streaming more employees than one page as NDJSON")
+    @Test
+    public void givenManyEmployees_whenStreamAsNdjson_thenAllInIdOrder(){
+        // given - precondition of setup
+        // three pages of ReactiveEmployeeServiceImpl.STREAM_PAGE_SIZE
+        int count = 1001;
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            employees.add(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno" + i + "@bruno").build());
+        }
+        employeeRepository.saveAll(employees);
+
+        // when - action or the behaviour that we are going test
+        Flux<JsonNode> stream = client.get().accept(MediaType.APPLICATION_NDJSON).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(JsonNode.class).getResponseBody();
+
+        // then - verify the output
+        List<Long> ids = stream.map(employee -> employee.get("id").asLong()).collectList().block();
+        assertThat(ids).hasSize(count).isSorted().doesNotHaveDuplicates();
+    }
+
+    @DisplayName("JUnit test for a listing that only reads as far as the subscriber asks")
+    @Test
+    public void givenLimitedDemand_whenGetEmployees_thenOnlyRequestedRows(){
+        // given - precondition of setup
+        for (int i = 0; i < 3; i++) {
+            employeeRepository.save(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno" + i + "@bruno").build());
+        }
+
+        // when - action or the behaviour that we are going test
+        Flux<EmployeeView> employees = employeeService.getEmployees(null);
+
+        // then - verify the output
+        StepVerifier.create(employees, 1)
+                .assertNext(employee -> assertThat(employee.getEmail()).isEqualTo("bruno0@bruno"))
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenRequest(2)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @DisplayName("JUnit test for a reactive write recorded once in the change outbox")
+    @Test
+    public void givenReactiveWrites_whenReadOutbox_thenOneChangeEach(){
+        // given - precondition of setup
+        long start = outbox.lastPosition();
+        Employee saved = employeeService.saveEmployee(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno@bruno").build()).block();
+        employeeService.deleteEmployee(saved.getId()).block();
+
+        // when - action or the behaviour that we are going test
+        while (outbox.publishPending(100) > 0) {
+            // the relay may have numbered them already
+        }
+        List<EmployeeChange> changes = outbox.read(start, 100).stream()
+                .filter(change -> saved.getId().equals(change.getId()))
+                .collect(Collectors.toList());
+
+        // then - verify the output
+        assertThat(changes).extracting(EmployeeChange::getType)
+                .containsExactly(EmployeeChange.Type.CREATED, EmployeeChange.Type.DELETED);
+        assertThat(changes.get(0).getEmployee().getVersion()).isZero();
+    }
+
+    @DisplayName("JUnit test for both stacks taking ids from the shared sequence in turns")
+    @Test
+    public void givenCreatesOnBothStacks_whenInterleaved_thenDistinctIds(){
+        // given - precondition of setup
+        List<Long> ids = new ArrayList<>();
+
+        // when - action or the behaviour that we are going test
+        // more than one allocation block per stack and round, so every round fetches new values
+        for (int round = 0; round < 3; round++) {
+            List<Employee> employees = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                employees.add(Employee.builder().firstName("Jpa").lastName("Martins").email("jpa" + round + "-" + i + "@acme.com").build());
+            }
+            employeeRepository.saveAll(employees).forEach(employee -> ids.add(employee.getId()));
+            for (int i = 0; i < 60; i++) {
+                ids.add(employeeService.saveEmployee(Employee.builder().firstName("Reactive").lastName("Martins")
+                        .email("reactive" + round + "-" + i + "@acme.com").build()).block().getId());
+            }
+        }
+
+        // then - verify the output
+        assertThat(ids).doesNotHaveDuplicates().hasSize(360);
+        assertThat(employeeRepository.count()).isEqualTo(360);
+    }
+
+}
@@ -1,17 +1,25 @@
 package net.javaguides.springboottesting.repository;
 
+import net.javaguides.springboottesting.dto.EmployeePatch;
+import net.javaguides.springboottesting.dto.EmployeeView;
 import net.javaguides.springboottesting.model.Employee;
 import net.javaguides.springboottesting.repository.EmployeeRepository;
 import static org.assertj.core.api.Assertions.assertThat;
 
+import org.hibernate.Session;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import javax.persistence.EntityManager;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @DataJpaTest
 public class EmployeeRepositoryTests {
@@ -19,6 +27,9 @@ public class EmployeeRepositoryTests {
     @Autowired
     private EmployeeRepository employeeRepository;
 
+    @Autowired
+    private EntityManager entityManager;
+
     private Employee employee;
 
     @BeforeEach
@@ -261,4 +272,222 @@ public class EmployeeRepositoryTests {
         assertThat(employeeDB).isNotNull();
     }
 
+    // JUnit test for the set-based email check used by the bulk create path
+    @DisplayName("JUnit test for find existing emails")
+    @Test
+    public void givenEmails_whenFindExistingEmails_thenReturnOnlyTakenEmails(){
+        // given - precondition of setup
+        employeeRepository.save(employee);
+
+        // when - action or the behaviour that we are going test
+        List<String> existingEmails = employeeRepository.findExistingEmails(List.of(employee.getEmail(), "lucas@lucas"));
+
+        // then - verify the output
+        assertThat(existingEmails).containsExactly(employee.getEmail());
+    }
+
+    // JUnit test for keyset pagination
+    @DisplayName("JUnit test for keyset pagination by id")
+    @Test
+    public void givenEmployeeList_whenFindByIdGreaterThan_thenReturnNextPage(){
+        // given - precondition of setup
+        Employee employee2 = Employee.builder()
+                .firstName("Lucas")
+                .lastName("Oliveira")
+                .email("lucas@lucas")
+                .build();
+        Employee employee3 = Employee.builder()
+                .firstName("Ana")
+                .lastName("Souza")
+                .email("ana@ana")
+                .build();
+        employeeRepository.saveAll(List.of(employee, employee2, employee3));
+
+        // when - action or the behaviour that we are going test
+        List<Employee> firstPage = employeeRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 2));
+        List<Employee> secondPage = employeeRepository.findByIdGreaterThanOrderByIdAsc(firstPage.get(1).getId(), PageRequest.of(0, 2));
+
+        // then - verify the output
+        assertThat(firstPage).extracting(Employee::getEmail).containsExactly("bruno@bruno", "lucas@lucas");
+        assertThat(secondPage).extracting(Employee::getEmail).containsExactly("ana@ana");
+    }
+
+    // JUnit test for streaming all employees
+    @DisplayName("JUnit test for streaming all employees")
+    @Test
+    public void givenEmployeeList_whenStreamAll_thenReturnEmployeesInIdOrder(){
+        // given - precondition of setup
+        Employee employee2 = Employee.builder()
+                .firstName("Lucas")
+                .lastName("Oliveira")
+                .email("lucas@lucas")
+                .build();
+        employeeRepository.saveAll(List.of(employee, employee2));
+
+        // when - action or the behaviour that we are going test
+        List<String> emails;
+        try (Stream<EmployeeView> employees = employeeRepository.streamAll()) {
+            emails = employees.map(EmployeeView::getEmail).collect(Collectors.toList());
+        }
+
+        // then - verify the output
+        assertThat(emails).containsExactly("bruno@bruno", "lucas@lucas");
+    }
+
+    // JUnit test for the query plan of the first/last name lookups
+    @DisplayName("JUnit test for the name lookups using the last/first name index")
+    @Test
+    public void givenFirstNameAndLastName_whenExplainNameQuery_thenPlanUsesIndex(){
+        // given - precondition of setup
+        employeeRepository.save(employee);
+
+        // when - action or the behaviour that we are going test
+        String plan = (String) entityManager
+                .createNativeQuery("explain select * from employees e where e.first_name = 'Bruno' and e.last_name = 'Oliveira'")
+                .getSingleResult();
+
+        // then - verify the output
+        assertThat(plan).containsIgnoringCase("idx_employees_last_name_first_name");
+        assertThat(plan).doesNotContainIgnoringCase("tableScan");
+    }
+
+    // JUnit test for the bounded name lookups
+    @DisplayName("JUnit test for the bounded name lookups with a shared name")
+    @Test
+    public void givenEmployeesWithSameName_whenFindByFirstNameAndLastName_thenReturnBoundedList(){
+        // given - precondition of setup
+        Employee employee2 = Employee.builder()
+                .firstName("Bruno")
+                .lastName("Oliveira")
+                .email("bruno2@bruno")
+                .build();
+        Employee employee3 = Employee.builder()
+                .firstName("Bruno")
+                .lastName("Oliveira")
+                .email("bruno3@bruno")
+                .build();
+        employeeRepository.saveAll(List.of(employee, employee2, employee3));
+
+        // when - action or the behaviour that we are going test
+        List<Employee> employees = employeeRepository.findByFirstNameAndLastNameOrderByIdAsc("Bruno", "Oliveira", PageRequest.of(0, 2));
+        Optional<Employee> first = employeeRepository.findFirstByFirstNameAndLastNameOrderByIdAsc("Bruno", "Oliveira");
+
+        // then - verify the output
+        assertThat(employees).extracting(Employee::getEmail).containsExactly("bruno@bruno", "bruno2@bruno");
+        assertThat(first.get().getEmail()).isEqualTo("bruno@bruno");
+    }
+
+    // JUnit test for the versioned partial update
+    @DisplayName("JUnit test for patch employee with the current version")
+    @Test
+    public void givenCurrentVersion_whenPatch_thenOnlySentFieldsChangeAndVersionIncrements(){
+        // given - precondition of setup
+        employeeRepository.saveAndFlush(employee);
+        entityManager.clear();
+
+        // when - action or the behaviour that we are going test
+        int updated = employeeRepository.patch(employee.getId(), EmployeePatch.builder()
+                .lastName("Martins")
+                .version(employee.getVersion())
+                .build());
+        Employee employeeDB = employeeRepository.findById(employee.getId()).get();
+
+        // then - verify the output
+        assertThat(updated).isEqualTo(1);
+        assertThat(employeeDB.getLastName()).isEqualTo("Martins");
+        assertThat(employeeDB.getFirstName()).isEqualTo("Bruno");
+        assertThat(employeeDB.getVersion()).isEqualTo(employee.getVersion() + 1);
+    }
+
+    // JUnit test for the versioned partial update with a stale version
+    @DisplayName("JUnit test for patch employee with a stale version")
+    @Test
+    public void givenStaleVersion_whenPatch_thenNothingIsUpdated(){
+        // given - precondition of setup
+        employeeRepository.saveAndFlush(employee);
+        entityManager.clear();
+
+        // when - action or the behaviour that we are going test
+        int updated = employeeRepository.patch(employee.getId(), EmployeePatch.builder()
+                .lastName("Martins")
+                .version(employee.getVersion() + 1)
+                .build());
+
+        // then - verify the output
+        assertThat(updated).isEqualTo(0);
+        assertThat(employeeRepository.findById(employee.getId()).get().getLastName()).isEqualTo("Oliveira");
+    }
+
+    // JUnit test for the set-based bulk operations
+    @DisplayName("JUnit test for bulk delete and update by ids")
+    @Test
+    public void givenEmployeeList_whenDeleteByIdInAndPatchAll_thenOnlyListedRowsChange(){
+        // given - precondition of setup
+        Employee employee2 = Employee.builder()
+                .firstName("Lucas")
+                .lastName("Oliveira")
+                .email("lucas@lucas")
+                .build();
+        Employee employee3 = Employee.builder()
+                .firstName("Ana")
+                .lastName("Souza")
+                .email("ana@ana")
+                .build();
+        employeeRepository.saveAllAndFlush(List.of(employee, employee2, employee3));
+
+        // when - action or the behaviour that we are going test
+        int deleted = employeeRepository.deleteByIdIn(List.of(employee.getId(), employee2.getId()));
+        int updated = employeeRepository.patchAll(List.of(employee3.getId()), EmployeePatch.builder().lastName("Martins").build());
+        entityManager.clear();
+
+        // then - verify the output
+        assertThat(deleted).isEqualTo(2);
+        assertThat(updated).isEqualTo(1);
+        assertThat(employeeRepository.findAll()).extracting(Employee::getLastName).containsExactly("Martins");
+    }
+
+    // JUnit test for finding ids by email domain
+    @DisplayName("JUnit test for find ids by email domain")
+    @Test
+    public void givenEmployeeList_whenFindIdsByEmailEndingWith_thenReturnOnlyThatDomain(){
+        // given - precondition of setup
+        Employee employee2 = Employee.builder()
+                .firstName("Lucas")
+                .lastName("Oliveira")
+                .email("lucas@example.com")
+                .build();
+        Employee employee3 = Employee.builder()
+                .firstName("Ana")
+                .lastName("Souza")
+                .email("ana@example_com")
+                .build();
+        employeeRepository.saveAll(List.of(employee, employee2, employee3));
+
+        // when - action or the behaviour that we are going test
+        List<Long> ids = employeeRepository.findIdsByEmailEndingWith("@example.com");
+        List<Long> escapedIds = employeeRepository.findIdsByEmailEndingWith("@example_com");
+
+        // then - verify the output
+        assertThat(ids).containsExactly(employee2.getId());
+        assertThat(escapedIds).containsExactly(employee3.getId());
+    }
+
+    // JUnit test for the read-only projections
+    @DisplayName("JUnit test for reading employees as views without managed entities")
+    @Test
+    public void givenEmployeeObject_whenFindViews_thenNoEntityIsManaged(){
+        // given - precondition of setup
+        employeeRepository.saveAndFlush(employee);
+        entityManager.clear();
+
+        // when - action or the behaviour that we are going test
+        Optional<EmployeeView> view = employeeRepository.findViewById(employee.getId());
+        List<EmployeeView> page = employeeRepository.findViewsByIdGreaterThan(0L, PageRequest.of(0, 10));
+
+        // then - verify the output
+        assertThat(view).contains(EmployeeView.of(employee));
+        assertThat(page).containsExactly(EmployeeView.of(employee));
+        assertThat(entityManager.unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+    }
+
 }
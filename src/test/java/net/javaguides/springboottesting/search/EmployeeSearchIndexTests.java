@@ -0,0 +1,123 @@
+package net.javaguides.springboottesting.search;
+
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.event.EmployeeChangeApplier;
+import net.javaguides.springboottesting.event.EmployeeChangedEvent;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class EmployeeSearchIndexTests {
+
+    @Mock
+    private EmployeeService employeeService;
+
+    @Mock
+    private EmployeeRepository employeeRepository;
+
+    private EmployeeSearchIndex searchIndex;
+
+    @BeforeEach
+    public void setup(){
+        searchIndex = new EmployeeSearchIndex(employeeService, new EmployeeChangeApplier(employeeRepository));
+        searchIndex.index(employee(1L, "Bruno", "Martins", "bruno.martins@acme.com"));
+        searchIndex.index(employee(2L, "Brunella", "Souza", "brunella@acme.com"));
+        searchIndex.index(employee(3L, "Ana", "Bruno", "ana@other.org"));
+        searchIndex.index(employee(4L, "Marta", "Oliveira", "marta@acme.com"));
+    }
+
+    @DisplayName("JUnit test for a prefix search ranking exact matches first")
+    @Test
+    public void givenPrefix_whenSearch_thenExactMatchesRankFirst(){
+        // given - precondition of setup
+
+        // when - action or the behaviour that we are going test
+        List<EmployeeView> exact = searchIndex.search("bruno", 10);
+        List<EmployeeView> prefix = searchIndex.search("BRU", 10);
+
+        // then - verify the output
+        assertThat(exact).extracting(EmployeeView::getId).containsExactly(3L, 1L);
+        assertThat(prefix).extracting(EmployeeView::getId).containsExactlyInAnyOrder(1L, 2L, 3L);
+    }
+
+    @DisplayName("JUnit test for a search with a typo and a search over two names")
+    @Test
+    public void givenTypoOrTwoNames_whenSearch_thenMatchingEmployees(){
+        // given - precondition of setup
+
+        // when - action or the behaviour that we are going test
+        List<EmployeeView> typo = searchIndex.search("mratins", 10);
+        List<EmployeeView> fullName = searchIndex.search("bruno mar", 10);
+        List<EmployeeView> email = searchIndex.search("bruno.martins@ac", 10);
+
+        // then - verify the output
+        assertThat(typo).extracting(EmployeeView::getId).containsExactly(1L);
+        assertThat(fullName).extracting(EmployeeView::getId).containsExactly(1L);
+        assertThat(email).extracting(EmployeeView::getId).containsExactly(1L);
+    }
+
+    @DisplayName("JUnit test for keeping the index in sync with change events")
+    @Test
+    public void givenChangeEvents_whenSearch_thenIndexFollowsChanges(){
+        // given - precondition of setup
+        given(employeeRepository.findAllById(List.of(4L, 5L)))
+                .willReturn(List.of(employee(4L, "Marta", "Lima", "marta@acme.com")));
+
+        // when - action or the behaviour that we are going test
+        searchIndex.onEmployeeChanged(EmployeeChangedEvent.deleted(List.of(1L)));
+        searchIndex.onEmployeeChanged(EmployeeChangedEvent.modified(List.of(4L, 5L)));
+
+        // then - verify the output
+        assertThat(searchIndex.search("martins", 10)).isEmpty();
+        assertThat(searchIndex.search("oliveira", 10)).isEmpty();
+        assertThat(searchIndex.search("lima", 10)).extracting(EmployeeView::getId).containsExactly(4L);
+        assertThat(searchIndex.size()).isEqualTo(3);
+    }
+
+    @DisplayName("JUnit test for an older version arriving after a newer one")
+    @Test
+    public void givenOlderVersion_whenIndex_thenIgnored(){
+        // given - precondition of setup
+        searchIndex.index(employee(1L, "Bruno", "Lima", "bruno.martins@acme.com").toBuilder().version(2L).build());
+
+        // when - action or the behaviour that we are going test
+        searchIndex.index(employee(1L, "Bruno", "Martins", "bruno.martins@acme.com").toBuilder().version(1L).build());
+
+        // then - verify the output
+        assertThat(searchIndex.search("lima", 10)).extracting(EmployeeView::getId).containsExactly(1L);
+    }
+
+    @DisplayName("JUnit test for the one edit distance check")
+    @Test
+    public void givenTermPairs_whenIsOneEditAway_thenOnlySingleEditsMatch(){
+        assertThat(EmployeeSearchIndex.isOneEditAway("martins", "matins")).isTrue();
+        assertThat(EmployeeSearchIndex.isOneEditAway("martins", "marrins")).isTrue();
+        assertThat(EmployeeSearchIndex.isOneEditAway("martins", "mratins")).isTrue();
+        assertThat(EmployeeSearchIndex.isOneEditAway("martins", "martinsa")).isTrue();
+        assertThat(EmployeeSearchIndex.isOneEditAway("martins", "mratisn")).isFalse();
+        assertThat(EmployeeSearchIndex.isOneEditAway("martins", "martins")).isFalse();
+    }
+
+    private static Employee employee(Long id, String firstName, String lastName, String email) {
+        return Employee.builder()
+                .id(id)
+                .firstName(firstName)
+                .lastName(lastName)
+                .email(email)
+                .version(0L)
+                .build();
+    }
+
+}
@@ -0,0 +1,118 @@
+package net.javaguides.springboottesting.service;
+
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.dto.EmployeeBatchResult;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.exception.ResourceConflictException;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.reset;
+
+@SpringBootTest
+public class EmployeeServiceConcurrencyTests {
+
+    private static final int CREATES = 2000;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @SpyBean
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private EmployeeCache employeeCache;
+
+    @AfterEach
+    public void cleanup(){
+        // before anything else, so the stubbed check doesn't reach the next test
+        reset(employeeRepository);
+        employeeRepository.deleteAll();
+        employeeCache.invalidateAll();
+    }
+
+    @DisplayName("JUnit test for parallel saveEmployee calls with the same email")
+    @Test
+    public void givenParallelCreatesWithSameEmail_whenSaveEmployee_thenExactlyOneRowSurvives() throws Exception {
+        // given - precondition of setup
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+
+        // when - action or the behaviour that we are going test
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < CREATES; i++) {
+            int n = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    employeeService.saveEmployee(Employee.builder()
+                            .firstName("Bruno" + n)
+                            .lastName("Martins")
+                            .email("bruno@bruno")
+                            .build());
+                    created.incrementAndGet();
+                } catch (ResourceConflictException e) {
+                    conflicts.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        // then - verify the output
+        assertThat(created.get()).isEqualTo(1);
+        assertThat(conflicts.get()).isEqualTo(CREATES - 1);
+        assertThat(employeeRepository.findExistingEmails(List.of("bruno@bruno"))).hasSize(1);
+        assertThat(employeeRepository.count()).isEqualTo(1);
+    }
+
+    @DisplayName("JUnit test for saveEmployees when an email is taken between the check and the insert")
+    @Test
+    public void givenEmailTakenAfterCheck_whenSaveEmployees_thenOnlyThatRowIsDuplicate(){
+        // given - precondition of setup
+        employeeService.saveEmployee(Employee.builder().firstName("Ana").lastName("Souza").email("ana@acme.com").build());
+        employeeCache.invalidateAll();
+        // the check misses it, as it would a row a concurrent writer inserted just after it
+        willReturn(List.of()).given(employeeRepository).findExistingEmails(any());
+
+        // when - action or the behaviour that we are going test
+        List<EmployeeBatchResult> results = employeeService.saveEmployees(List.of(
+                Employee.builder().firstName("Bruno").lastName("Martins").email("bruno@acme.com").build(),
+                Employee.builder().firstName("Ana").lastName("Lima").email("ana@acme.com").build(),
+                Employee.builder().firstName("Marta").lastName("Souza").email("marta@acme.com").build()));
+
+        // then - verify the output
+        assertThat(results).extracting(EmployeeBatchResult::getStatus).containsExactly(
+                EmployeeBatchResult.Status.CREATED, EmployeeBatchResult.Status.DUPLICATE, EmployeeBatchResult.Status.CREATED);
+        assertThat(List.of(results.get(0).getId(), results.get(2).getId())).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(employeeRepository.findViewById(results.get(0).getId())).map(EmployeeView::getEmail).contains("bruno@acme.com");
+        assertThat(employeeRepository.findViewById(results.get(2).getId())).map(EmployeeView::getEmail).contains("marta@acme.com");
+        assertThat(employeeRepository.count()).isEqualTo(3);
+    }
+
+}
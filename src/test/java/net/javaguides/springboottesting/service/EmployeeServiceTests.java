@@ -1,11 +1,19 @@
 package net.javaguides.springboottesting.service;
 
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.dto.EmployeeBatchResult;
+import net.javaguides.springboottesting.dto.EmployeePatch;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.event.EmployeeChangedEvent;
+import net.javaguides.springboottesting.exception.InvalidRequestException;
+import net.javaguides.springboottesting.exception.ResourceConflictException;
 import net.javaguides.springboottesting.exception.ResourceNotFoundException;
 import net.javaguides.springboottesting.model.Employee;
 import net.javaguides.springboottesting.repository.EmployeeRepository;
 import net.javaguides.springboottesting.service.impl.EmployeeServiceImpl;
 import static org.assertj.core.api.Assertions.assertThat;
 
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -13,6 +21,9 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.willDoNothing;
 import static org.mockito.Mockito.*;
@@ -20,8 +31,18 @@ import static org.mockito.Mockito.*;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -32,6 +53,16 @@ public class EmployeeServiceTests {
     @Mock
     private EmployeeRepository employeeRepository;
 
+    @Spy
+    private EmployeeCache employeeCache = new EmployeeCache(100, Duration.ofMinutes(1));
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    // runs the callbacks in place, commit and rollback do nothing
+    @Spy
+    private TransactionTemplate transactions = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
     @InjectMocks
     private EmployeeServiceImpl employeeService;
 
@@ -53,12 +84,8 @@ public class EmployeeServiceTests {
     public void givenEmployeeObject_whenSaveEmployee_thenReturnEmployeeObject(){
         // given - precondition of setup
 
-        // returning empty so then it will be possible to test the saveEmployee method
-        given(employeeRepository.findByEmail(employee.getEmail()))
-                .willReturn(Optional.empty());
-
-        //testing the save method
-        given(employeeRepository.save(employee))
+        //testing the save method, the email check is left to the unique index
+        given(employeeRepository.saveAndFlush(employee))
                 .willReturn(employee);
 
         // when - action or the behaviour that we are going test
@@ -66,6 +93,7 @@ public class EmployeeServiceTests {
 
         // then - verify the output
         assertThat(savedEmployee.getFirstName()).isEqualTo("Bruno");
+        verify(employeeRepository, never()).findByEmail(any());
     }
 
     // JUnit test for saveEmployee method
@@ -73,20 +101,72 @@ public class EmployeeServiceTests {
     @Test
     public void givenExistingEmail_whenSaveEmployee_thenThrowsException(){
         // given - precondition of setup
-        // returning empty so then it will be possible to test the saveEmployee method
-        given(employeeRepository.findByEmail(employee.getEmail()))
-                .willReturn(Optional.of(employee));
-
-        //testing the save method ... nesse caso nao preciso testar o save pois o findByEmail retornou um employee, portanto nao irei salvar novamente no banco com o mesmo email, irei apenas jogar a excecao
-        //given(employeeRepository.save(employee)).willReturn(employee);
+        // the insert hits the unique index on employees.email
+        given(employeeRepository.saveAndFlush(employee))
+                .willThrow(new DataIntegrityViolationException("duplicate email",
+                        new ConstraintViolationException("duplicate email", null, "PUBLIC.UK_EMPLOYEES_EMAIL_INDEX_4")));
 
         // when - action or the behaviour that we are going test
-        Assertions.assertThrows(ResourceNotFoundException.class, () -> {
+        Assertions.assertThrows(ResourceConflictException.class, () -> {
             employeeService.saveEmployee(employee);
         });
 
         // then
-        verify(employeeRepository, never()).save(any(Employee.class));
+        verify(employeeRepository, never()).findByEmail(any());
+    }
+
+    // JUnit test for saveEmployee method
+    @DisplayName("JUnit test for saveEmployee method with another constraint violation")
+    @Test
+    public void givenOtherConstraintViolation_whenSaveEmployee_thenRethrowsException(){
+        // given - precondition of setup
+        given(employeeRepository.saveAndFlush(employee))
+                .willThrow(new DataIntegrityViolationException("null first name",
+                        new ConstraintViolationException("null first name", null, null)));
+
+        // when - action or the behaviour that we are going test
+        // then
+        Assertions.assertThrows(DataIntegrityViolationException.class, () -> {
+            employeeService.saveEmployee(employee);
+        });
+    }
+
+    // JUnit test for saveEmployees method
+    @DisplayName("JUnit test for saveEmployees method with duplicated and invalid rows")
+    @Test
+    public void givenEmployeesChunk_whenSaveEmployees_thenReturnResultPerRow(){
+        // given - precondition of setup
+        Employee existing = Employee.builder()
+                .firstName("Lucas")
+                .lastName("Oliveira")
+                .email("lucas@lucas")
+                .build();
+        Employee repeated = Employee.builder()
+                .firstName("Bruno")
+                .lastName("Oliveira")
+                .email("bruno@bruno")
+                .build();
+        Employee invalid = Employee.builder()
+                .firstName("Ana")
+                .lastName("Souza")
+                .build();
+
+        given(employeeRepository.findExistingEmails(anyCollection()))
+                .willReturn(List.of("lucas@lucas"));
+
+        // when - action or the behaviour that we are going test
+        List<EmployeeBatchResult> results = employeeService.saveEmployees(List.of(employee, existing, repeated, invalid));
+
+        // then - verify the output
+        assertThat(results).extracting(EmployeeBatchResult::getStatus).containsExactly(
+                EmployeeBatchResult.Status.CREATED,
+                EmployeeBatchResult.Status.DUPLICATE,
+                EmployeeBatchResult.Status.DUPLICATE,
+                EmployeeBatchResult.Status.INVALID);
+        assertThat(results).extracting(EmployeeBatchResult::getIndex).containsExactly(0L, 1L, 2L, 3L);
+        verify(employeeRepository, times(1)).findExistingEmails(anyCollection());
+        verify(employeeRepository, times(1)).saveAll(List.of(employee));
+        verify(employeeRepository, never()).findByEmail(any());
     }
 
     // JUnit test for testing getAllEmployees method - positive scenario
@@ -102,12 +182,12 @@ public class EmployeeServiceTests {
                 .email("lucas@lucas")
                 .build();
 
-        given(employeeRepository.findAll())
-                .willReturn(List.of(employee, employee1));
+        given(employeeRepository.findAllViews())
+                .willReturn(List.of(EmployeeView.of(employee), EmployeeView.of(employee1)));
 
         // when - action or the behaviour that we are going test
 
-        List<Employee> employeeListReturned = employeeService.getAllEmployees();
+        List<EmployeeView> employeeListReturned = employeeService.getAllEmployees();
 
         // then - verify the output
         assertThat(employeeListReturned.size()).isEqualTo(2);
@@ -126,25 +206,56 @@ public class EmployeeServiceTests {
                 .email("lucas@lucas")
                 .build();
 
-        given(employeeRepository.findAll())
+        given(employeeRepository.findAllViews())
                 .willReturn(Collections.emptyList());
 
         // when - action or the behaviour that we are going test
 
-        List<Employee> employeeListReturned = employeeService.getAllEmployees();
+        List<EmployeeView> employeeListReturned = employeeService.getAllEmployees();
 
         // then - verify the output
         assertThat(employeeListReturned).isEmpty();
         assertThat(employeeListReturned.size()).isEqualTo(0);
     }
 
+    // JUnit test for getEmployeesAfter method
+    @DisplayName("JUnit test for getEmployeesAfter method starting from the first page")
+    @Test
+    public void givenNoCursor_whenGetEmployeesAfter_thenSeekFromTheStart(){
+        // given - precondition of setup
+        given(employeeRepository.findViewsByIdGreaterThan(0L, PageRequest.of(0, 10)))
+                .willReturn(List.of(EmployeeView.of(employee)));
+
+        // when - action or the behaviour that we are going test
+        List<EmployeeView> employees = employeeService.getEmployeesAfter(null, 10);
+
+        // then - verify the output
+        assertThat(employees).containsExactly(EmployeeView.of(employee));
+        verify(employeeRepository, never()).findAll();
+    }
+
+    // JUnit test for getEmployeesByName method
+    @DisplayName("JUnit test for getEmployeesByName method")
+    @Test
+    public void givenFirstNameAndLastName_whenGetEmployeesByName_thenReturnBoundedList(){
+        // given - precondition of setup
+        given(employeeRepository.findViewsByFirstNameAndLastName("Bruno", "Martins", PageRequest.of(0, 5)))
+                .willReturn(List.of(EmployeeView.of(employee)));
+
+        // when - action or the behaviour that we are going test
+        List<EmployeeView> employees = employeeService.getEmployeesByName("Bruno", "Martins", 5);
+
+        // then - verify the output
+        assertThat(employees).containsExactly(EmployeeView.of(employee));
+    }
+
     // JUnit test for get employee by id
     @Test
     @DisplayName("JUnit test for get employee by id")
     public void givenEmployeeId_whenGetEmployeeById_thenReturnEmployeeObject(){
         //given
-        given(employeeRepository.findById(1L))
-                .willReturn(Optional.of(employee));
+        given(employeeRepository.findViewById(1L))
+                .willReturn(Optional.of(EmployeeView.of(employee)));
 
         //when
         Employee employeeReturned = employeeService.getEmployeeById(employee.getId()).get();
@@ -154,6 +265,77 @@ public class EmployeeServiceTests {
 
     }
 
+    // JUnit test for get employee by id served from the cache
+    @Test
+    @DisplayName("JUnit test for get employee by id served from the cache")
+    public void givenCachedEmployee_whenGetEmployeeById_thenRepositoryCalledOnce(){
+        //given
+        given(employeeRepository.findViewById(1L))
+                .willReturn(Optional.of(EmployeeView.of(employee)));
+
+        //when
+        employeeService.getEmployeeById(1L);
+        Employee employeeReturned = employeeService.getEmployeeById(1L).get();
+
+        //then
+        assertThat(employeeReturned.getFirstName()).isEqualTo("Bruno");
+        assertThat(employeeReturned).isNotSameAs(employee);
+        verify(employeeRepository, times(1)).findViewById(1L);
+        assertThat(employeeCache.stats().hitCount()).isEqualTo(1);
+    }
+
+    // JUnit test for get employee view by id served from the cache
+    @Test
+    @DisplayName("JUnit test for get employee view by id served from the cache")
+    public void givenCachedEmployee_whenGetEmployeeViewById_thenSameViewWithoutEntityLoad(){
+        //given
+        given(employeeRepository.findViewById(1L))
+                .willReturn(Optional.of(EmployeeView.of(employee)));
+
+        //when
+        EmployeeView first = employeeService.getEmployeeViewById(1L).get();
+        EmployeeView second = employeeService.getEmployeeViewById(1L).get();
+
+        //then
+        assertThat(second).isSameAs(first);
+        assertThat(second.getEmail()).isEqualTo("bruno@bruno");
+        verify(employeeRepository, times(1)).findViewById(1L);
+        verify(employeeRepository, never()).findById(any());
+    }
+
+    // JUnit test for saveEmployee method rejecting a cached email
+    @Test
+    @DisplayName("JUnit test for saveEmployee method rejecting an email known to the cache")
+    public void givenCachedEmail_whenSaveEmployee_thenThrowsExceptionWithoutQuery(){
+        //given
+        employeeCache.put(employee, employeeCache.stamp());
+
+        //when
+        Assertions.assertThrows(ResourceConflictException.class, () -> {
+            employeeService.saveEmployee(employee);
+        });
+
+        //then
+        verify(employeeRepository, never()).saveAndFlush(any(Employee.class));
+    }
+
+    // JUnit test for updateEmployee method evicting the cached employee
+    @Test
+    @DisplayName("JUnit test for updateEmployee method evicting the cached employee and its email")
+    public void givenCachedEmployee_whenUpdateEmployee_thenCacheInvalidated(){
+        // given - precondition of setup
+        employeeCache.put(employee, employeeCache.stamp());
+        Employee updated = employee.toBuilder().email("martins@martins.com").build();
+        given(employeeRepository.save(updated)).willReturn(updated);
+
+        // when - action or the behaviour that we are going test
+        employeeService.updateEmployee(updated);
+
+        // then - verify the output
+        assertThat(employeeCache.get(employee.getId())).isEmpty();
+        assertThat(employeeCache.getIdByEmail("bruno@bruno")).isEmpty();
+    }
+
     // JUnit test for updateEmployee method
     @Test
     @DisplayName("JUnit test for updateEmployee method")
@@ -169,6 +351,107 @@ public class EmployeeServiceTests {
         assertThat(employeeUpdated.getEmail()).isEqualTo("martins@martins.com");
     }
 
+    // JUnit test for patchEmployee method
+    @Test
+    @DisplayName("JUnit test for patchEmployee method")
+    public void givenCurrentVersion_whenPatchEmployee_thenReturnNextVersion(){
+        // given - precondition of setup
+        EmployeePatch patch = EmployeePatch.builder().lastName("Oliveira").version(3L).build();
+        given(employeeRepository.patch(1L, patch)).willReturn(1);
+        employeeCache.put(employee, employeeCache.stamp());
+
+        // when - action or the behaviour that we are going test
+        long version = employeeService.patchEmployee(1L, patch);
+
+        // then - verify the output
+        assertThat(version).isEqualTo(4L);
+        assertThat(employeeCache.get(1L)).isEmpty();
+        verify(employeeRepository, never()).findById(any());
+    }
+
+    // JUnit test for patchEmployee method with a stale version
+    @Test
+    @DisplayName("JUnit test for patchEmployee method with a stale version")
+    public void givenStaleVersion_whenPatchEmployee_thenThrowsConflict(){
+        // given - precondition of setup
+        EmployeePatch patch = EmployeePatch.builder().lastName("Oliveira").version(3L).build();
+        given(employeeRepository.patch(1L, patch)).willReturn(0);
+        given(employeeRepository.existsById(1L)).willReturn(true);
+
+        // when - action or the behaviour that we are going test
+        // then - verify the output
+        Assertions.assertThrows(ResourceConflictException.class, () -> {
+            employeeService.patchEmployee(1L, patch);
+        });
+    }
+
+    // JUnit test for patchEmployee method with an unknown id
+    @Test
+    @DisplayName("JUnit test for patchEmployee method with an unknown id")
+    public void givenUnknownId_whenPatchEmployee_thenThrowsNotFound(){
+        // given - precondition of setup
+        EmployeePatch patch = EmployeePatch.builder().lastName("Oliveira").version(3L).build();
+        given(employeeRepository.patch(1L, patch)).willReturn(0);
+        given(employeeRepository.existsById(1L)).willReturn(false);
+
+        // when - action or the behaviour that we are going test
+        // then - verify the output
+        Assertions.assertThrows(ResourceNotFoundException.class, () -> {
+            employeeService.patchEmployee(1L, patch);
+        });
+    }
+
+    // JUnit test for replaceEmployee method
+    @Test
+    @DisplayName("JUnit test for replaceEmployee method without a version")
+    public void givenNoVersion_whenReplaceEmployee_thenUnversionedUpdateWithoutLoading(){
+        // given - precondition of setup
+        given(employeeRepository.patch(eq(1L), argThat(patch -> patch.getVersion() == null && "bruno@bruno".equals(patch.getEmail()))))
+                .willReturn(1);
+        given(employeeRepository.findViewById(1L))
+                .willReturn(Optional.of(new EmployeeView(1L, "Bruno", "Martins", "bruno@bruno", 8L)));
+
+        // when - action or the behaviour that we are going test
+        Employee replaced = employeeService.replaceEmployee(1L, employee);
+
+        // then - verify the output
+        assertThat(replaced.getVersion()).isEqualTo(8L);
+        assertThat(replaced.getLastName()).isEqualTo("Martins");
+        verify(employeeRepository, never()).findById(any());
+        verify(employeeRepository, never()).save(any());
+    }
+
+    // JUnit test for replaceEmployee method with a stale version
+    @Test
+    @DisplayName("JUnit test for replaceEmployee method with a stale version")
+    public void givenStaleVersion_whenReplaceEmployee_thenThrowsConflict(){
+        // given - precondition of setup
+        employee.setVersion(3L);
+        given(employeeRepository.patch(eq(1L), argThat(patch -> Long.valueOf(3L).equals(patch.getVersion())))).willReturn(0);
+        given(employeeRepository.existsById(1L)).willReturn(true);
+
+        // when - action or the behaviour that we are going test
+        // then - verify the output
+        Assertions.assertThrows(ResourceConflictException.class, () -> {
+            employeeService.replaceEmployee(1L, employee);
+        });
+    }
+
+    // JUnit test for updateEmployee method with a stale version
+    @Test
+    @DisplayName("JUnit test for updateEmployee method with a stale version")
+    public void givenStaleVersion_whenUpdateEmployee_thenThrowsConflict(){
+        // given - precondition of setup
+        given(employeeRepository.save(employee))
+                .willThrow(new ObjectOptimisticLockingFailureException(Employee.class, 1L));
+
+        // when - action or the behaviour that we are going test
+        // then - verify the output
+        Assertions.assertThrows(ResourceConflictException.class, () -> {
+            employeeService.updateEmployee(employee);
+        });
+    }
+
     // JUnit test for deleteEmployee method
     @Test
     @DisplayName("JUnit test for deleteEmployee method")
@@ -183,6 +466,61 @@ public class EmployeeServiceTests {
 
         // then - verify the output
         verify(employeeRepository, times(1)).deleteById(employeeId);
+        verify(employeeCache, times(1)).invalidate(employeeId);
+        verify(eventPublisher, times(1)).publishEvent(any(EmployeeChangedEvent.class));
+    }
+
+    // JUnit test for deleteEmployees method
+    @Test
+    @DisplayName("JUnit test for deleteEmployees method splitting the ids in chunks")
+    public void givenManyIds_whenDeleteEmployees_thenOneStatementPerChunk(){
+        // given - precondition of setup
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 2500; id++) {
+            ids.add(id);
+        }
+        given(employeeRepository.deleteByIdIn(anyCollection())).willAnswer(invocation -> invocation.<Collection<?>>getArgument(0).size());
+        employeeCache.put(employee, employeeCache.stamp());
+
+        // when - action or the behaviour that we are going test
+        int deleted = employeeService.deleteEmployees(ids);
+
+        // then - verify the output
+        assertThat(deleted).isEqualTo(2500);
+        verify(employeeRepository, times(3)).deleteByIdIn(anyCollection());
+        verify(employeeRepository, never()).deleteById(any());
+        assertThat(employeeCache.get(1L)).isEmpty();
+    }
+
+    // JUnit test for deleteEmployeesByEmailDomain method
+    @Test
+    @DisplayName("JUnit test for deleteEmployeesByEmailDomain method")
+    public void givenEmailDomain_whenDeleteEmployeesByEmailDomain_thenDeleteMatchingIds(){
+        // given - precondition of setup
+        given(employeeRepository.findIdsByEmailEndingWith("@bruno")).willReturn(List.of(1L));
+        given(employeeRepository.deleteByIdIn(List.of(1L))).willReturn(1);
+
+        // when - action or the behaviour that we are going test
+        int deleted = employeeService.deleteEmployeesByEmailDomain("bruno");
+
+        // then - verify the output
+        assertThat(deleted).isEqualTo(1);
+    }
+
+    // JUnit test for updateEmployees method
+    @Test
+    @DisplayName("JUnit test for updateEmployees method setting one email on many employees")
+    public void givenEmailChangeForManyIds_whenUpdateEmployees_thenThrowsBadRequest(){
+        // given - precondition of setup
+        EmployeePatch changes = EmployeePatch.builder().email("same@email").build();
+
+        // when - action or the behaviour that we are going test
+        Assertions.assertThrows(InvalidRequestException.class, () -> {
+            employeeService.updateEmployees(List.of(1L, 2L), changes);
+        });
+
+        // then - verify the output
+        verify(employeeRepository, never()).patchAll(anyCollection(), any());
     }
 
 }
@@ -0,0 +1,189 @@
+package net.javaguides.springboottesting.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+// the repository blocks until release is counted down, so the lookups pile up behind it
+public class EmployeeLoaderTests {
+
+    private final EmployeeRepository employeeRepository = mock(EmployeeRepository.class);
+
+    private final EmployeeCache employeeCache = new EmployeeCache(100, Duration.ofMinutes(1));
+
+    private final EmployeeLoader employeeLoader = new EmployeeLoader(employeeRepository, employeeCache, 100, 2);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(16);
+
+    @BeforeEach
+    public void setup(){
+        employeeLoader.bindTo(registry);
+        given(employeeRepository.findViewById(anyLong())).willAnswer(invocation -> {
+            release.await();
+            return Optional.of(view(invocation.getArgument(0)));
+        });
+        given(employeeRepository.findViewsByIdIn(anyCollection())).willAnswer(invocation -> {
+            release.await();
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(EmployeeLoaderTests::view).collect(Collectors.toList());
+        });
+    }
+
+    @AfterEach
+    public void cleanup(){
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @DisplayName("JUnit test for concurrent lookups of one id sharing a single query")
+    @Test
+    public void givenConcurrentLookupsOfSameId_whenLoad_thenOneQuery() throws Exception {
+        // given - precondition of setup
+        List<Future<Optional<EmployeeView>>> lookups = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lookups.add(executor.submit(() -> employeeLoader.load(1L)));
+        }
+        awaitRequests(10);
+
+        // when - action or the behaviour that we are going test
+        release.countDown();
+
+        // then - verify the output
+        for (Future<Optional<EmployeeView>> lookup : lookups) {
+            assertThat(lookup.get(10, TimeUnit.SECONDS)).contains(view(1L));
+        }
+        verify(employeeRepository, times(1)).findViewById(1L);
+        assertThat(registry.get("employees.loader.joined").functionCounter().count()).isEqualTo(9);
+        assertThat(registry.get("employees.loader.coalescing.ratio").gauge().value()).isEqualTo(10);
+        assertThat(employeeCache.getView(1L)).contains(view(1L));
+    }
+
+    @DisplayName("JUnit test for distinct ids waiting for a free query slot going out as one batch")
+    @Test
+    public void givenBusyQuerySlots_whenLoadDistinctIds_thenOneBatchQuery() throws Exception {
+        // given - precondition of setup
+        List<Future<Optional<EmployeeView>>> lookups = new ArrayList<>();
+        lookups.add(executor.submit(() -> employeeLoader.load(1L)));
+        lookups.add(executor.submit(() -> employeeLoader.load(2L)));
+        awaitRequests(2);
+        for (long id = 3; id <= 7; id++) {
+            long n = id;
+            lookups.add(executor.submit(() -> employeeLoader.load(n)));
+        }
+        awaitRequests(7);
+
+        // when - action or the behaviour that we are going test
+        release.countDown();
+
+        // then - verify the output
+        for (int i = 0; i < lookups.size(); i++) {
+            assertThat(lookups.get(i).get(10, TimeUnit.SECONDS)).contains(view(i + 1L));
+        }
+        verify(employeeRepository, times(1)).findViewsByIdIn(Set.of(3L, 4L, 5L, 6L, 7L));
+        assertThat(registry.get("employees.loader.queries").functionCounter().count()).isEqualTo(3);
+    }
+
+    @DisplayName("JUnit test for a caller returning once its own lookup is done while others still queue")
+    @Test
+    public void givenQueuedLookups_whenOwnLookupDone_thenCallerReturnsWithoutRunningTheRest() throws Exception {
+        // given - precondition of setup
+        EmployeeLoader singleSlotLoader = new EmployeeLoader(employeeRepository, employeeCache, 1, 1);
+        SimpleMeterRegistry singleSlotRegistry = new SimpleMeterRegistry();
+        singleSlotLoader.bindTo(singleSlotRegistry);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        // stubbed this way round, findViewById() would block on the answer from setup()
+        willAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            (id == 1L ? releaseFirst : release).await();
+            return Optional.of(view(id));
+        }).given(employeeRepository).findViewById(anyLong());
+        Future<Optional<EmployeeView>> first = executor.submit(() -> singleSlotLoader.load(1L));
+        awaitRequests(singleSlotRegistry, 1);
+        List<Future<Optional<EmployeeView>>> queued = new ArrayList<>();
+        for (long id = 2; id <= 4; id++) {
+            long n = id;
+            queued.add(executor.submit(() -> singleSlotLoader.load(n)));
+        }
+        awaitRequests(singleSlotRegistry, 4);
+
+        // when - action or the behaviour that we are going test
+        releaseFirst.countDown();
+
+        // then - verify the output
+        assertThat(first.get(10, TimeUnit.SECONDS)).contains(view(1L));
+        assertThat(queued).noneMatch(Future::isDone);
+        release.countDown();
+        for (int i = 0; i < queued.size(); i++) {
+            assertThat(queued.get(i).get(10, TimeUnit.SECONDS)).contains(view(i + 2L));
+        }
+    }
+
+    @DisplayName("JUnit test for a lookup after an invalidation not joining the older query")
+    @Test
+    public void givenInvalidationDuringLoad_whenLoadSameId_thenOwnQuery() throws Exception {
+        // given - precondition of setup
+        Future<Optional<EmployeeView>> before = executor.submit(() -> employeeLoader.load(1L));
+        awaitRequests(1);
+        employeeCache.invalidate(1L);
+
+        // when - action or the behaviour that we are going test
+        Future<Optional<EmployeeView>> after = executor.submit(() -> employeeLoader.load(1L));
+        awaitRequests(2);
+        release.countDown();
+
+        // then - verify the output
+        assertThat(before.get(10, TimeUnit.SECONDS)).isPresent();
+        assertThat(after.get(10, TimeUnit.SECONDS)).isPresent();
+        verify(employeeRepository, times(2)).findViewById(1L);
+        assertThat(registry.get("employees.loader.joined").functionCounter().count()).isZero();
+    }
+
+    // requests are counted before a lookup joins or queues, give the threads a moment after that
+    private void awaitRequests(int requests) throws InterruptedException {
+        awaitRequests(registry, requests);
+    }
+
+    private static void awaitRequests(SimpleMeterRegistry registry, int requests) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (registry.get("employees.loader.requests").functionCounter().count() < requests && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+    }
+
+    private static EmployeeView view(Long id) {
+        return new EmployeeView(id, "Bruno", "Martins", "bruno" + id + "@bruno", 0L);
+    }
+
+}
@@ -0,0 +1,196 @@
+package net.javaguides.springboottesting.sharding;
+
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.dto.EmployeeBatchResult;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.exception.ResourceConflictException;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// three local H2 databases as shards, read back directly to see where each row went
+@SpringBootTest(properties = "employees.sharding.urls=" + ShardedEmployeeRepositoryTests.SHARD_URLS)
+public class ShardedEmployeeRepositoryTests {
+
+    static final String SHARD_URLS = "jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1,"
+            + "jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1,"
+            + "jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1";
+
+    private final List<JdbcTemplate> shards = List.of(shard(0), shard(1), shard(2));
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private ShardedEmployeeRepository employeeRepository;
+
+    @Autowired
+    private EmployeeCache employeeCache;
+
+    @Autowired
+    private EmployeeShards employeeShards;
+
+    @AfterEach
+    public void cleanup(){
+        employeeRepository.deleteAll();
+        employeeCache.invalidateAll();
+    }
+
+    @DisplayName("JUnit test for rows being stored on the shard their id routes to")
+    @Test
+    public void givenSavedEmployees_whenReadShards_thenEachRowOnItsIdShard(){
+        // given - precondition of setup
+        List<Employee> saved = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            saved.add(employeeService.saveEmployee(employee("Ramesh", "Fadatare", "ramesh" + i + "@gmail.com")));
+        }
+
+        // when - action or the behaviour that we are going test
+        List<List<Long>> idsPerShard = new ArrayList<>();
+        for (JdbcTemplate shard : shards) {
+            idsPerShard.add(shard.queryForList("select id from employees order by id", Long.class));
+        }
+
+        // then - verify the output
+        for (Employee employee : saved) {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                assertThat(idsPerShard.get(shard).contains(employee.getId())).isEqualTo(employee.getId() % 3 == shard);
+            }
+            assertThat(employeeRepository.findById(employee.getId())).isPresent();
+            assertThat(employeeRepository.findByEmail(employee.getEmail()).map(Employee::getId)).contains(employee.getId());
+        }
+        // new rows are spread round robin
+        assertThat(idsPerShard).allSatisfy(ids -> assertThat(ids).hasSize(2));
+    }
+
+    @DisplayName("JUnit test for a duplicate email whose rows would land on different shards")
+    @Test
+    public void givenEmailOnAnotherShard_whenSaveEmployee_thenConflict(){
+        // given - precondition of setup
+        Employee first = employeeService.saveEmployee(employee("Ramesh", "Fadatare", "ramesh@gmail.com"));
+        employeeCache.invalidateAll();
+
+        // when - action or the behaviour that we are going test
+        assertThatThrownBy(() -> employeeService.saveEmployee(employee("Tony", "Stark", "ramesh@gmail.com")))
+                .isInstanceOf(ResourceConflictException.class);
+
+        // then - verify the output
+        assertThat(employeeRepository.findAllViews()).extracting(EmployeeView::getId).containsExactly(first.getId());
+    }
+
+    @DisplayName("JUnit test for a batch racing a duplicate email falling back to row by row inserts")
+    @Test
+    public void givenDuplicateInBatch_whenSaveEmployees_thenOthersCreated(){
+        // given - precondition of setup
+        employeeService.saveEmployee(employee("Ramesh", "Fadatare", "ramesh@gmail.com"));
+        // the claim is visible to the batch insert but not to the emails checked up front
+        int claimShard = employeeShards.shardForEmail("late@gmail.com");
+        shards.get(claimShard).update("insert into employee_emails values ('late@gmail.com', 1, current_timestamp)");
+
+        // when - action or the behaviour that we are going test
+        List<EmployeeBatchResult> results = employeeService.saveEmployees(List.of(
+                employee("Tony", "Stark", "tony@gmail.com"),
+                employee("John", "Cena", "late@gmail.com"),
+                employee("Bruce", "Wayne", "bruce@gmail.com")));
+
+        // then - verify the output
+        assertThat(results).extracting(EmployeeBatchResult::getStatus).containsExactly(
+                EmployeeBatchResult.Status.CREATED, EmployeeBatchResult.Status.DUPLICATE, EmployeeBatchResult.Status.CREATED);
+        assertThat(employeeRepository.count()).isEqualTo(3);
+    }
+
+    @DisplayName("JUnit test for an email change releasing the old email")
+    @Test
+    public void givenChangedEmail_whenSaveWithOldEmail_thenCreated(){
+        // given - precondition of setup
+        Employee employee = employeeService.saveEmployee(employee("Ramesh", "Fadatare", "ramesh@gmail.com"));
+        employee.setEmail("ram@gmail.com");
+        employeeService.updateEmployee(employee);
+
+        // when - action or the behaviour that we are going test
+        Employee other = employeeService.saveEmployee(employee("Ramesh", "Other", "ramesh@gmail.com"));
+
+        // then - verify the output
+        assertThat(other.getId()).isNotNull();
+        assertThat(employeeRepository.findByEmail("ram@gmail.com").map(Employee::getId)).contains(employee.getId());
+        assertThatThrownBy(() -> employeeService.saveEmployee(employee("Tony", "Stark", "ram@gmail.com")))
+                .isInstanceOf(ResourceConflictException.class);
+    }
+
+    @DisplayName("JUnit test for fan-out queries merging the shards in id order")
+    @Test
+    public void givenEmployeesOnAllShards_whenPageByName_thenMergedInIdOrder(){
+        // given - precondition of setup
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            ids.add(employeeService.saveEmployee(employee("John", "Cena", "john" + i + "@gmail.com")).getId());
+        }
+        employeeService.saveEmployee(employee("Tony", "Stark", "tony@gmail.com"));
+        // each shard has its own sequence, ids are unique but not in insertion order
+        ids.sort(Comparator.naturalOrder());
+
+        // when - action or the behaviour that we are going test
+        List<EmployeeView> page = employeeRepository.findViewsByFirstNameAndLastName("John", "Cena", PageRequest.of(1, 3));
+        List<EmployeeView> after = employeeService.getEmployeesAfter(ids.get(2), 3);
+
+        // then - verify the output
+        assertThat(page).extracting(EmployeeView::getId).containsExactlyElementsOf(ids.subList(3, 6));
+        assertThat(after).extracting(EmployeeView::getId).containsExactlyElementsOf(ids.subList(3, 6));
+        assertThat(employeeService.getAllEmployees()).hasSize(8);
+        assertThat(employeeRepository.count()).isEqualTo(8);
+    }
+
+    @DisplayName("JUnit test for shard ids being taken from their sequences in blocks")
+    @Test
+    public void givenManyNewIds_whenNextId_thenEachSequenceIsReadOncePerBlock(){
+        // given - precondition of setup
+        int size = employeeShards.size();
+        long step = (long) size * EmployeeShards.ID_BLOCK_SIZE;
+        List<Long> before = new ArrayList<>();
+        for (JdbcTemplate shard : shards) {
+            before.add(shard.queryForObject("select next value for employees_seq", Long.class));
+        }
+
+        // when - action or the behaviour that we are going test
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 2 * size * EmployeeShards.ID_BLOCK_SIZE; i++) {
+            ids.add(employeeShards.nextId());
+        }
+
+        // then - verify the output
+        assertThat(ids).doesNotHaveDuplicates();
+        for (int shard = 0; shard < size; shard++) {
+            long after = shards.get(shard).queryForObject("select next value for employees_seq", Long.class);
+            // round robin gives every shard two blocks' worth of ids: two reads, however much of
+            // an earlier block was left, plus the read above
+            assertThat(after - before.get(shard)).isEqualTo(3 * step);
+        }
+    }
+
+    private static JdbcTemplate shard(int shard) {
+        return new JdbcTemplate(new DriverManagerDataSource(SHARD_URLS.split(",")[shard], "sa", ""));
+    }
+
+    private static Employee employee(String firstName, String lastName, String email) {
+        return Employee.builder()
+                .firstName(firstName)
+                .lastName(lastName)
+                .email(email)
+                .build();
+    }
+
+}
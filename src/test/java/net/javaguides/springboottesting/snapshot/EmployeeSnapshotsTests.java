@@ -0,0 +1,182 @@
+package net.javaguides.springboottesting.snapshot;
+
+import net.javaguides.springboottesting.cache.EmployeeCache;
+import net.javaguides.springboottesting.dto.EmployeeView;
+import net.javaguides.springboottesting.model.Employee;
+import net.javaguides.springboottesting.repository.EmployeeRepository;
+import net.javaguides.springboottesting.service.EmployeeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+public class EmployeeSnapshotsTests {
+
+    @Autowired
+    private EmployeeSnapshots snapshots;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private EmployeeCache employeeCache;
+
+    @TempDir
+    Path directory;
+
+    private List<EmployeeView> employees;
+
+    @BeforeEach
+    public void setup(){
+        employeeService.saveEmployee(Employee.builder().firstName("Bruno").lastName("Martins").email("bruno@acme.com").build());
+        Employee employee = employeeService.saveEmployee(Employee.builder().firstName("Ana").lastName("Souza").email("ana@acme.com").build());
+        employeeService.saveEmployee(Employee.builder().firstName("Zoë").lastName("Çelik").email("zoe@other.org").build());
+        employee.setLastName("Lima");
+        employeeService.updateEmployee(employee);
+        employees = snapshotOfTable();
+    }
+
+    @AfterEach
+    public void cleanup(){
+        employeeRepository.deleteAll();
+        employeeCache.invalidateAll();
+    }
+
+    @DisplayName("JUnit test for exporting the table and loading it back into an empty one")
+    @Test
+    public void givenExport_whenLoadIntoEmptyTable_thenSameRows() throws Exception {
+        // given - precondition of setup
+        Path file = directory.resolve("employees.snap");
+        assertThat(snapshots.export(file)).isEqualTo(3);
+        employeeRepository.deleteAll();
+
+        // when - action or the behaviour that we are going test
+        long loaded = snapshots.load(file, true);
+
+        // then - verify the output
+        assertThat(loaded).isEqualTo(3);
+        assertThat(snapshotOfTable()).isEqualTo(employees);
+        assertThat(employeeService.getEmployeeViewById(employees.get(1).getId())).contains(employees.get(1));
+        Employee created = employeeService.saveEmployee(Employee.builder().firstName("Marta").lastName("Lima").email("marta@acme.com").build());
+        assertThat(created.getId()).isGreaterThan(employees.get(2).getId());
+    }
+
+    @DisplayName("JUnit test for loading a snapshot with prime-cache on")
+    @Test
+    public void givenExport_whenLoadWithPrimeCache_thenLoadedRowsAreCached() throws Exception {
+        // given - precondition of setup
+        Path file = directory.resolve("employees.snap");
+        snapshots.export(file);
+        employeeRepository.deleteAll();
+        employeeCache.invalidateAll();
+        long hits = employeeCache.stats().hitCount();
+
+        // when - action or the behaviour that we are going test
+        snapshots.load(file, true);
+
+        // then - verify the output
+        for (EmployeeView employee : employees) {
+            assertThat(employeeCache.getView(employee.getId())).contains(employee);
+        }
+        assertThat(employeeCache.stats().hitCount() - hits).isEqualTo(employees.size());
+    }
+
+    @DisplayName("JUnit test for loading a snapshot with a flipped byte")
+    @Test
+    public void givenCorruptedSnapshot_whenLoad_thenThrowsAndTableStaysEmpty() throws Exception {
+        // given - precondition of setup
+        Path file = directory.resolve("employees.snap");
+        snapshots.export(file);
+        employeeRepository.deleteAll();
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[EmployeeSnapshotFile.MAGIC.length + 20] ^= 0x01;
+        Files.write(file, bytes);
+
+        // when - action or the behaviour that we are going test
+        EmployeeSnapshotFile.SnapshotCorruptedException exception = assertThrows(
+                EmployeeSnapshotFile.SnapshotCorruptedException.class, () -> snapshots.load(file, false));
+
+        // then - verify the output
+        assertThat(exception.getMessage()).contains("checksum mismatch");
+        assertThat(employeeRepository.count()).isZero();
+    }
+
+    @DisplayName("JUnit test for loading a snapshot that was cut short")
+    @Test
+    public void givenTruncatedSnapshot_whenLoad_thenThrows() throws Exception {
+        // given - precondition of setup
+        Path file = directory.resolve("employees.snap");
+        snapshots.export(file);
+        employeeRepository.deleteAll();
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 6));
+
+        // when - action or the behaviour that we are going test
+        assertThrows(EmployeeSnapshotFile.SnapshotCorruptedException.class, () -> snapshots.load(file, false));
+
+        // then - verify the output
+        assertThat(employeeRepository.count()).isZero();
+    }
+
+    @DisplayName("JUnit test for a load that fails in its second block")
+    @Test
+    public void givenDuplicateEmailInSecondBlock_whenLoad_thenFirstBlockIsDeletedAgain() throws Exception {
+        // given - precondition of setup
+        employeeRepository.deleteAll();
+        Path file = directory.resolve("employees.snap");
+        String name = "N".repeat(200);
+        int rows = 2 * EmployeeSnapshotFile.BLOCK_SIZE / (2 * name.length());
+        try (EmployeeSnapshotFile.Writer writer = new EmployeeSnapshotFile.Writer(file)) {
+            for (int id = 1; id < rows; id++) {
+                writer.write(id, 0L, name, name, "user" + id + "@acme.com");
+            }
+            writer.write(rows, 0L, name, name, "user1@acme.com");
+            writer.finish();
+        }
+
+        // when - action or the behaviour that we are going test
+        assertThrows(DataIntegrityViolationException.class, () -> snapshots.load(file, false));
+
+        // then - verify the output
+        assertThat(employeeRepository.count()).isZero();
+    }
+
+    @DisplayName("JUnit test for loading a snapshot into a table that has employees")
+    @Test
+    public void givenEmployees_whenLoad_thenThrowsIllegalStateException() throws Exception {
+        // given - precondition of setup
+        Path file = directory.resolve("employees.snap");
+        snapshots.export(file);
+
+        // when - action or the behaviour that we are going test
+        assertThrows(IllegalStateException.class, () -> snapshots.load(file, false));
+
+        // then - verify the output
+        assertThat(snapshotOfTable()).isEqualTo(employees);
+    }
+
+    private List<EmployeeView> snapshotOfTable() {
+        return employeeRepository.findAll().stream()
+                .map(EmployeeView::of)
+                .sorted((a, b) -> Long.compare(a.getId(), b.getId()))
+                .collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,8 @@
+-- schema of the local replica in ReplicaRoutingDataSourceTests, run by H2 on every new connection
+create table if not exists employees (
+    id bigint primary key,
+    first_name varchar(255) not null,
+    last_name varchar(255) not null,
+    email varchar(255) not null,
+    version bigint
+);